@@ -0,0 +1,168 @@
+
+// AnimClip.java
+
+/* An animation of the images making up a 'n', 's', or 'g' image
+   file, as loaded by ImagesLoader, which takes seqDuration secs,
+   when updated every animPeriod ms. It can repeat, or stop at
+   its last image.
+
+   Rather than working out the image to show on every update,
+   from an animation time (with a modulo and a divide), that's
+   done once for every tick of the sequence, when the clip is
+   made, and stored in a frame table. So the image
+   for any number of ticks since the animation started is one
+   array lookup, and the clip never changes afterwards.
+
+   A clip can be shared by any number of sprites (ImagesLoader
+   keeps one for each image name and timing, see getClip()); each
+   only needs to remember the tick it started at (see AnimClock).
+
+   Like ImagesPlayer, the image shown after t ticks is the one at
+   the animation time (t*animPeriod) mod (seqDuration secs). A
+   repeating clip's frame table covers the ticks before the
+   times repeat, which is at most seqDuration*1000 ticks.
+   A non-repeating clip's table stops at the tick where the last
+   image is reached; the clip is finished from then on. (The time
+   isn't wrapped around for it, so the last image can't be
+   skipped, as it could be by an ImagesPlayer when animPeriod is
+   longer than an image's showing time.)
+*/
+
+import java.awt.image.*;
+
+
+public class AnimClip
+{
+  private String imName;
+  private int animPeriod;      // in ms
+  private double seqDuration;  // in secs
+  private boolean isRepeating;
+
+  private BufferedImage[] images;   // null if there are none
+  private int numImages;
+  private int[] frames;    // tick --> image position
+
+
+  public AnimClip(String nm, int ap, double d, boolean isr, ImagesLoader il)
+  {
+    imName = nm;
+    animPeriod = ap;
+    seqDuration = d;
+    isRepeating = isr;
+
+    if (seqDuration < 0.5) {
+      System.out.println("Warning: minimum sequence duration is 0.5 sec.");
+      seqDuration = 0.5;
+    }
+    if (animPeriod < 1)
+      animPeriod = 1;
+
+    if (!il.isLoaded(imName)) {
+      System.out.println(imName + " is not known by the ImagesLoader");
+      numImages = 0;
+      frames = new int[0];
+    }
+    else {
+      numImages = il.numImages(imName);
+      images = new BufferedImage[numImages];
+      for (int i=0; i < numImages; i++)
+        images[i] = il.getImage(imName, i);
+      makeFrames();
+    }
+  } // end of AnimClip()
+
+
+  private void makeFrames()
+  // fill the frame table with the image position for each tick
+  {
+    long seqTime = (long)(1000 * seqDuration);   // in ms
+    int showPeriod = (int) Math.max(1, seqTime / numImages);
+          // period each image is shown (in ms)
+
+    int numTicks;
+    if (isRepeating)    // until the animation times repeat
+      numTicks = (int) (seqTime / gcd(animPeriod, seqTime));
+    else {    // until the last image is reached
+      numTicks = 0;
+      while (((long)numTicks*animPeriod) / showPeriod < numImages-1)
+        numTicks++;
+    }
+
+    frames = new int[numTicks];
+    int posn;
+    for (int t=0; t < numTicks; t++) {
+      posn = (int) ((((long)t*animPeriod) % seqTime) / showPeriod);
+      frames[t] = (posn < numImages) ? posn : numImages-1;
+    }
+  }  // end of makeFrames()
+
+
+  private long gcd(long a, long b)
+  { while (b != 0) {
+      long r = a % b;
+      a = b;
+      b = r;
+    }
+    return a;
+  }  // end of gcd()
+
+
+
+  public int getPosition(long ticks)
+  /* The position of the image shown ticks ticks after the start,
+     or -1 if there are no images. */
+  {
+    if (numImages == 0)
+      return -1;
+    if (isRepeating)
+      return frames[ (int)(ticks % frames.length) ];
+    if ((ticks < 0) || (ticks >= frames.length))
+      return numImages-1;    // stopped at the last image
+    return frames[(int) ticks];
+  }  // end of getPosition()
+
+
+  public BufferedImage getImage(long ticks)
+  // the image shown ticks ticks after the start, or null
+  {
+    if (numImages == 0)
+      return null;
+    return images[ getPosition(ticks) ];
+  }
+
+
+  public boolean isFinished(long ticks)
+  // has a non-repeating clip reached its last image after ticks ticks?
+  {  return !isRepeating && (ticks >= frames.length);  }
+
+
+  public long getTicksTo(int imPosn)
+  /* The first tick at which image imPosn is shown (0 if it never
+     is), for starting part-way through. */
+  {
+    for (int t=0; t < frames.length; t++)
+      if (frames[t] == imPosn)
+        return t;
+    if (!isRepeating && (imPosn == numImages-1))
+      return frames.length;
+    return 0;
+  }  // end of getTicksTo()
+
+
+  public boolean matches(int ap, double d, boolean isr)
+  // was this clip made with these settings?
+  {  return (animPeriod == Math.max(ap, 1)) &&
+            (seqDuration == Math.max(d, 0.5)) && (isRepeating == isr);
+  }
+
+
+  public String getName()
+  {  return imName;  }
+
+  public int getNumImages()
+  {  return numImages;  }
+
+  public boolean isRepeating()
+  {  return isRepeating;  }
+
+} // end of AnimClip class
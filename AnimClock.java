@@ -0,0 +1,29 @@
+
+// AnimClock.java
+
+/* The game's animation clock: a count of the game updates, which
+   every animation is timed by. JackPanel calls tick() once per
+   update (not while the game is paused or over), just before the
+   sprites are updated.
+
+   An animated thing only needs to store the tick it started at,
+   and the AnimClip it's playing. Its current image is the clip's
+   image for (getTick() - start) ticks, so nothing has to be done
+   to each animation on each update.
+*/
+
+public class AnimClock
+{
+  private static long ticks = 0;
+
+
+  public static void tick()
+  // move all the animations on by one update
+  {  ticks++;  }
+
+
+  public static long getTick()
+  // the number of updates so far
+  {  return ticks;  }
+
+}  // end of AnimClock class
@@ -0,0 +1,178 @@
+// AssetPack.java
+
+/* An AssetPack is a single file holding all the game's assets
+   (the contents of Images/ and Sounds/), built by AssetPacker.
+
+   The pack file is memory-mapped once, and each asset is served
+   as a read-only ByteBuffer slice of the mapping, so no asset bytes
+   are copied before they reach the image, WAV, or MIDI decoders.
+   The slices are wrapped as streams by ByteBufferInputStream
+   and ByteBufferImageInputStream.
+
+   Assets are named by their relative path, e.g. "Images/tiles.gif",
+   which is the same name used with getResource() by the loaders.
+   A loader should ask contains() first, and fall back to
+   getResource() if the asset is not in the pack (or there is no pack).
+
+   File format (big endian):
+      int    MAGIC
+      int    VERSION
+      int    number of entries
+      entries: short path length, UTF-8 path, long offset, int length
+      data for all the entries
+
+   The default pack is PACK_FNM in the current directory, which
+   can be changed with the "jj.pack" system property.
+*/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+
+public class AssetPack
+{
+  public final static int MAGIC = 0x4A4A504B;   // "JJPK"
+  public final static int VERSION = 1;
+
+  public final static String PACK_FNM = "assets.pak";
+
+  private static AssetPack defaultPack = null;
+  private static boolean triedDefault = false;
+
+  private String packFnm;
+  private MappedByteBuffer mapBuf;   // the entire pack file
+  private HashMap index;
+     /* The key is the asset path, the object is a long[2]
+        holding {offset, length} */
+
+
+  public static synchronized AssetPack getDefault()
+  /* Return the default pack, or null if there isn't one.
+     The file is only opened and mapped the first time. */
+  {
+    if (!triedDefault) {
+      triedDefault = true;
+      String fnm = System.getProperty("jj.pack", PACK_FNM);
+      if (new File(fnm).exists()) {
+        try {
+          defaultPack = new AssetPack(fnm);
+        }
+        catch (IOException e)
+        { System.out.println("Could not open asset pack " + fnm + ": " + e);  }
+      }
+    }
+    return defaultPack;
+  }  // end of getDefault()
+
+
+
+  public AssetPack(String fnm) throws IOException
+  {
+    packFnm = fnm;
+    index = new HashMap();
+
+    RandomAccessFile raf = new RandomAccessFile(fnm, "r");
+    try {
+      FileChannel fc = raf.getChannel();
+      mapBuf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+    }
+    finally {
+      raf.close();    // the mapping stays valid after the close
+    }
+    readIndex();
+    System.out.println("Mapped asset pack " + fnm + ": " +
+                              index.size() + " assets");
+  }  // end of AssetPack()
+
+
+  private void readIndex() throws IOException
+  {
+    ByteBuffer buf = mapBuf.duplicate();
+    if (buf.getInt() != MAGIC)
+      throw new IOException(packFnm + " is not an asset pack");
+    int version = buf.getInt();
+    if (version != VERSION)
+      throw new IOException("Unsupported asset pack version " + version);
+
+    int numEntries = buf.getInt();
+    String path;
+    long offset;
+    int length;
+    for (int i=0; i < numEntries; i++) {
+      path = getUTF(buf);
+      offset = buf.getLong();
+      length = buf.getInt();
+      if ((offset < 0) || (offset+length > mapBuf.capacity()))
+        throw new IOException("Bad index entry for " + path);
+      index.put(path, new long[] {offset, length});
+    }
+  }  // end of readIndex()
+
+
+  private String getUTF(ByteBuffer buf) throws IOException
+  // read a path stored as a short length followed by UTF-8 bytes
+  {
+    int len = buf.getShort() & 0xFFFF;
+    byte[] bytes = new byte[len];
+    buf.get(bytes);
+    return new String(bytes, "UTF-8");
+  }  // end of getUTF()
+
+
+  // ------------------ access methods -------------------
+
+  public boolean contains(String path)
+  {  return index.containsKey(path);  }
+
+
+  public ByteBuffer getBuffer(String path)
+  /* Return a read-only slice of the mapping holding the
+     asset, or null if it's not in the pack. The slice shares
+     the mapped memory, so nothing is copied. */
+  {
+    long[] entry = (long[]) index.get(path);
+    if (entry == null)
+      return null;
+
+    ByteBuffer buf = mapBuf.asReadOnlyBuffer();
+    buf.position((int) entry[0]);
+    buf.limit((int) (entry[0] + entry[1]));
+    return buf.slice();
+  }  // end of getBuffer()
+
+
+  public InputStream getStream(String path)
+  /* The asset as a stream supporting mark/reset, as needed
+     by AudioSystem and MidiSystem. */
+  {
+    ByteBuffer buf = getBuffer(path);
+    if (buf == null)
+      return null;
+    return new ByteBufferInputStream(buf);
+  }  // end of getStream()
+
+
+  public ByteBufferImageInputStream getImageStream(String path)
+  // the asset as an ImageIO stream, which avoids ImageIO's own caching
+  {
+    ByteBuffer buf = getBuffer(path);
+    if (buf == null)
+      return null;
+    return new ByteBufferImageInputStream(buf);
+  }  // end of getImageStream()
+
+
+  public int getLength(String path)
+  { long[] entry = (long[]) index.get(path);
+    if (entry == null)
+      return -1;
+    return (int) entry[1];
+  }
+
+
+  public Set getPaths()
+  {  return Collections.unmodifiableSet( index.keySet() );  }
+
+}  // end of AssetPack class
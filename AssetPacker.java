@@ -0,0 +1,123 @@
+// AssetPacker.java
+
+/* Bundle the files in Images/ and Sounds/ into a single
+   AssetPack file, which is read by the game's loaders instead
+   of the separate resource files.
+
+   Usage:
+      java AssetPacker [ <pack file> ]
+
+   The pack file defaults to AssetPack.PACK_FNM ("assets.pak").
+   The pack must be rebuilt whenever an asset is changed.
+
+   See AssetPack for the file format.
+*/
+
+import java.io.*;
+import java.util.*;
+
+
+public class AssetPacker
+{
+  private final static String[] ASSET_DIRS = {"Images", "Sounds"};
+
+
+  public static void main(String args[])
+  {
+    String packFnm = (args.length > 0) ? args[0] : AssetPack.PACK_FNM;
+
+    ArrayList paths = new ArrayList();
+    for (int i=0; i < ASSET_DIRS.length; i++)
+      addFiles(ASSET_DIRS[i], paths);
+
+    if (paths.size() == 0) {
+      System.out.println("No assets found");
+      System.exit(1);
+    }
+
+    try {
+      writePack(packFnm, paths);
+    }
+    catch (IOException e)
+    { System.out.println("Error writing pack " + packFnm + ": " + e);
+      System.exit(1);
+    }
+  }  // end of main()
+
+
+  private static void addFiles(String dirName, ArrayList paths)
+  // add the paths of the files in dirName, in name order
+  {
+    File[] files = new File(dirName).listFiles();
+    if (files == null) {
+      System.out.println("No directory: " + dirName);
+      return;
+    }
+    Arrays.sort(files);
+    for (int i=0; i < files.length; i++)
+      if (files[i].isFile())
+        paths.add(dirName + "/" + files[i].getName());
+  }  // end of addFiles()
+
+
+  private static void writePack(String packFnm, ArrayList paths)
+                                              throws IOException
+  /* Write the header and index, followed by the data.
+     The size of the index is calculated first so that each
+     entry's data offset is known before any data is written. */
+  {
+    int numEntries = paths.size();
+    byte[][] nameBytes = new byte[numEntries][];
+    long[] lengths = new long[numEntries];
+
+    long headerSize = 12;   // magic, version, number of entries
+    for (int i=0; i < numEntries; i++) {
+      String path = (String) paths.get(i);
+      nameBytes[i] = path.getBytes("UTF-8");
+      lengths[i] = new File(path).length();
+      headerSize += 2 + nameBytes[i].length + 8 + 4;
+    }
+
+    DataOutputStream out = new DataOutputStream(
+             new BufferedOutputStream( new FileOutputStream(packFnm)));
+    try {
+      out.writeInt(AssetPack.MAGIC);
+      out.writeInt(AssetPack.VERSION);
+      out.writeInt(numEntries);
+
+      long offset = headerSize;
+      for (int i=0; i < numEntries; i++) {
+        out.writeShort(nameBytes[i].length);
+        out.write(nameBytes[i]);
+        out.writeLong(offset);
+        out.writeInt((int) lengths[i]);
+        offset += lengths[i];
+      }
+
+      for (int i=0; i < numEntries; i++) {
+        copyFile((String) paths.get(i), out);
+        System.out.println("-- " + paths.get(i) + " (" + lengths[i] + " bytes)");
+      }
+    }
+    finally {
+      out.close();
+    }
+    System.out.println("Wrote " + numEntries + " assets to " + packFnm);
+  }  // end of writePack()
+
+
+  private static void copyFile(String fnm, OutputStream out) throws IOException
+  {
+    InputStream in = new FileInputStream(fnm);
+    try {
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1)
+        out.write(buf, 0, n);
+    }
+    finally {
+      in.close();
+    }
+  }  // end of copyFile()
+
+}  // end of AssetPacker class
@@ -0,0 +1,27 @@
+// AudioBackend.java
+
+/* An AudioBackend decides how ClipsLoader and MidisLoader sounds
+   are actually played.
+
+     LineAudioBackend       each clip uses its own Clip lines
+     MixerAudioBackend      clips are mixed onto one line
+     NullAudioBackend       nothing is played
+     RecordingAudioBackend  nothing is played, but the requests
+                            are logged with their times
+
+   The last two don't open any sound devices (usesDevices()
+   returns false), which makes them suitable for headless runs,
+   simulations, and benchmarks.
+*/
+
+public interface AudioBackend
+{
+  SoundClip loadClip(String name, String fnm, int numVoices);
+    // load the sound in Sounds/fnm, to be played with numVoices voices
+
+  boolean usesDevices();
+    /* If false, MidisLoader doesn't open a sequencer, and loads
+       its MIDI files with loadClip() instead. */
+
+  void close();
+}
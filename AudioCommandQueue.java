@@ -0,0 +1,259 @@
+// AudioCommandQueue.java
+
+/* A queue of sound commands (play, loop, stop, pause, resume,
+   close) which are carried out by a worker thread, so that the
+   thread issuing them (e.g. the animation thread) never waits
+   inside the sound driver.
+
+   The queue is a fixed-size, lock-free ring buffer. Each slot has
+   a sequence number which tells producers when it's free to be
+   written and the worker when it's ready to be read, so any
+   number of threads can add commands without locking. The
+   command details are stored in parallel arrays, so adding a
+   command doesn't create any objects.
+
+   If the queue is full, the command is dropped, and counted as
+   an overflow. It isn't carried out by the calling thread, since
+   that would run it ahead of the commands still in the queue,
+   and make the caller wait inside the sound driver.
+
+   Once close() has been called, add() rejects every command (they
+   are counted, and not carried out), as the worker has stopped.
+   close() waits for any add() already under way to finish, so
+   none of the commands accepted before it are lost.
+
+   The worker parks when the queue is empty, and is unparked by
+   the next command.
+
+   For each kind of command, the worker records how many were
+   carried out, the time spent waiting in the queue, and the time
+   taken to execute. getReport() summarises them.
+*/
+
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+
+public class AudioCommandQueue implements Runnable
+{
+  // command types
+  public final static int PLAY = 0;
+  public final static int STOP = 1;
+  public final static int PAUSE = 2;
+  public final static int RESUME = 3;
+  public final static int CLOSE = 4;
+  private final static String[] CMD_NAMES =
+                     {"play", "stop", "pause", "resume", "close"};
+
+  private final static int CAPACITY = 256;    // must be a power of 2
+  private final static int MASK = CAPACITY-1;
+
+  // the ring buffer slots
+  private AtomicLongArray sequences;
+  private int[] cmdTypes;
+  private SoundClip[] cmdClips;
+  private boolean[] cmdLoops;
+  private int[] cmdPriorities;
+  private long[] cmdTimes;     // when each command was added (ns)
+
+  private AtomicLong tail;     // next position for a producer
+  private long head = 0;       // next position for the worker
+
+  private Thread worker;
+  private volatile boolean running;
+  private volatile boolean isWaiting = false;   // is the worker parked?
+
+  // statistics, indexed by command type (written by the worker only)
+  private long[] counts, waitTotals, waitMaxs, execTotals, execMaxs;
+  private AtomicLong overflows;
+  private AtomicLong rejects;     // commands added after close()
+
+  private volatile boolean isClosed = false;
+  private AtomicInteger numAdding;   // the add()s under way
+
+
+  public AudioCommandQueue()
+  {
+    sequences = new AtomicLongArray(CAPACITY);
+    for (int i=0; i < CAPACITY; i++)
+      sequences.set(i, i);
+    cmdTypes = new int[CAPACITY];
+    cmdClips = new SoundClip[CAPACITY];
+    cmdLoops = new boolean[CAPACITY];
+    cmdPriorities = new int[CAPACITY];
+    cmdTimes = new long[CAPACITY];
+    tail = new AtomicLong(0);
+
+    int numTypes = CMD_NAMES.length;
+    counts = new long[numTypes];
+    waitTotals = new long[numTypes];
+    waitMaxs = new long[numTypes];
+    execTotals = new long[numTypes];
+    execMaxs = new long[numTypes];
+    overflows = new AtomicLong(0);
+    rejects = new AtomicLong(0);
+    numAdding = new AtomicInteger(0);
+
+    running = true;
+    worker = new Thread(this, "AudioCommands");
+    worker.setPriority(Thread.MAX_PRIORITY-1);
+    worker.setDaemon(true);
+    worker.start();
+  }  // end of AudioCommandQueue()
+
+
+  public void add(int type, SoundClip clip, boolean toLoop, int priority)
+  /* Add a command to the queue. It's dropped if the queue is full,
+     or has been closed. */
+  {
+    numAdding.incrementAndGet();
+    if (isClosed) {
+      numAdding.decrementAndGet();
+      rejects.incrementAndGet();
+      return;
+    }
+
+    long now = System.nanoTime();
+    long posn;
+    int idx;
+    while (true) {
+      posn = tail.get();
+      idx = (int) (posn & MASK);
+      long seq = sequences.get(idx);
+      if (seq == posn) {     // the slot is free
+        if (tail.compareAndSet(posn, posn+1))
+          break;
+      }
+      else if (seq < posn) {   // the queue is full
+        numAdding.decrementAndGet();
+        overflows.incrementAndGet();
+        return;
+      }
+      // else another producer claimed the slot; try again
+    }
+
+    cmdTypes[idx] = type;
+    cmdClips[idx] = clip;
+    cmdLoops[idx] = toLoop;
+    cmdPriorities[idx] = priority;
+    cmdTimes[idx] = now;
+    sequences.set(idx, posn+1);    // publish the slot to the worker
+    numAdding.decrementAndGet();
+
+    if (isWaiting)
+      LockSupport.unpark(worker);
+  }  // end of add()
+
+
+  public void run()
+  {
+    while (running) {
+      if (!runNext()) {   // nothing to do
+        isWaiting = true;
+        if (!hasNext())     // check again, in case of a missed unpark
+          LockSupport.parkNanos(10000000L);   // 10 ms at most
+        isWaiting = false;
+      }
+    }
+    while (runNext());    // finish off what's left
+  }  // end of run()
+
+
+  private boolean hasNext()
+  {  return (sequences.get((int) (head & MASK)) == head+1);  }
+
+
+  private boolean runNext()
+  // carry out the next command, if there is one
+  {
+    int idx = (int) (head & MASK);
+    if (sequences.get(idx) != head+1)
+      return false;
+
+    int type = cmdTypes[idx];
+    SoundClip clip = cmdClips[idx];
+    boolean toLoop = cmdLoops[idx];
+    int priority = cmdPriorities[idx];
+    long addTime = cmdTimes[idx];
+    cmdClips[idx] = null;
+    sequences.set(idx, head+CAPACITY);   // free the slot for reuse
+    head++;
+
+    long startTime = System.nanoTime();
+    execute(type, clip, toLoop, priority);
+    long endTime = System.nanoTime();
+    record(type, startTime-addTime, endTime-startTime);
+    return true;
+  }  // end of runNext()
+
+
+  private void execute(int type, SoundClip clip, boolean toLoop, int priority)
+  {
+    try {
+      switch (type) {
+        case PLAY:   clip.play(toLoop, priority);  break;
+        case STOP:   clip.stop();    break;
+        case PAUSE:  clip.pause();   break;
+        case RESUME: clip.resume();  break;
+        case CLOSE:  clip.close();   break;
+        default:
+          System.out.println("Unknown audio command: " + type);
+          break;
+      }
+    }
+    catch (Exception e)    // don't let one bad sound kill the worker
+    { System.out.println("Audio command " + CMD_NAMES[type] + " failed for " +
+                                       clip.getName() + ": " + e);  }
+  }  // end of execute()
+
+
+  private void record(int type, long waitTime, long execTime)
+  { counts[type]++;
+    waitTotals[type] += waitTime;
+    if (waitTime > waitMaxs[type])
+      waitMaxs[type] = waitTime;
+    execTotals[type] += execTime;
+    if (execTime > execMaxs[type])
+      execMaxs[type] = execTime;
+  }  // end of record()
+
+
+  public void close()
+  /* Stop the worker, after it has run the remaining commands.
+     Later commands are rejected. */
+  { isClosed = true;
+    while (numAdding.get() > 0)   // let the add()s under way finish
+      Thread.yield();
+    running = false;
+    LockSupport.unpark(worker);
+    try {
+      worker.join(1000);
+    }
+    catch (InterruptedException e) {}
+  }  // end of close()
+
+
+  public String getReport()
+  /* The number of each kind of command, with their average and
+     maximum queue waiting and execution times in ms. */
+  {
+    StringBuffer sb = new StringBuffer("Audio commands:");
+    for (int i=0; i < CMD_NAMES.length; i++) {
+      if (counts[i] == 0)
+        continue;
+      sb.append("\n  " + CMD_NAMES[i] + ": " + counts[i] +
+           "; wait avg " + toMillis(waitTotals[i]/counts[i]) +
+           " max " + toMillis(waitMaxs[i]) +
+           "; exec avg " + toMillis(execTotals[i]/counts[i]) +
+           " max " + toMillis(execMaxs[i]) + " ms");
+    }
+    sb.append("\n  overflows: " + overflows.get() +
+              "; rejected after close: " + rejects.get());
+    return sb.toString();
+  }  // end of getReport()
+
+
+  private String toMillis(long nanos)
+  {  return "" + (nanos/10000)/100.0;  }   // 2 dp
+
+}  // end of AudioCommandQueue class
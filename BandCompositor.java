@@ -0,0 +1,101 @@
+
+// BandCompositor.java
+
+/* Carry out a frame's DrawList with a RasterBlitter using several
+   threads. The destination image is split into horizontal bands,
+   of equal height, and each band is drawn by a task on a
+   fork-join pool. A band's task goes through the whole draw list
+   in order, but draws only the rows which fall inside its band,
+   so the bands never write to the same pixels, and the drawing
+   order is kept inside each band.
+
+   composite() waits until every band has been drawn before it
+   returns, so the caller can go on to draw over the frame, or
+   show it, straight away.
+
+   The tasks are made once, and reinitialized for each frame, so
+   compositing a frame doesn't allocate anything. The pool's
+   threads are daemons, so they don't keep the game running.
+*/
+
+import java.util.concurrent.*;
+
+
+public class BandCompositor
+{
+  private ForkJoinPool pool;
+  private RasterBlitter blitter;
+  private BandTask[] bands;
+  private FrameTask frameTask;
+  private DrawList drawList;    // the list being composited
+
+
+  public BandCompositor(RasterBlitter b, int height, int numBands)
+  /* Split the height rows of b's image into numBands bands,
+     drawn using one thread per band at most. */
+  {
+    blitter = b;
+    if (numBands < 1)
+      numBands = 1;
+    if (numBands > height)
+      numBands = height;
+    pool = new ForkJoinPool(numBands);
+
+    bands = new BandTask[numBands];
+    for (int i=0; i < numBands; i++)
+      bands[i] = new BandTask( (i*height)/numBands, ((i+1)*height)/numBands );
+    frameTask = new FrameTask();
+  }  // end of BandCompositor()
+
+
+  public int getNumBands()
+  {  return bands.length;  }
+
+
+  public void composite(DrawList list)
+  // draw all of list, and clear it ready for the next frame
+  {
+    drawList = list;
+    if (bands.length == 1)     // no need for other threads
+      blitter.drawList(list, bands[0].y1, bands[0].y2);
+    else {
+      frameTask.reinitialize();
+      pool.invoke(frameTask);    // returns when all the bands are done
+    }
+    list.clear();
+  }  // end of composite()
+
+
+  public void close()
+  {  pool.shutdown();  }
+
+
+
+  // ---------------------- the tasks --------------------------
+
+  private class FrameTask extends RecursiveAction
+  // start all the band tasks, and wait for them to finish
+  {
+    protected void compute()
+    { for (int i=0; i < bands.length; i++)
+        bands[i].reinitialize();
+      invokeAll(bands);
+    }
+  }  // end of FrameTask class
+
+
+  private class BandTask extends RecursiveAction
+  // draw the rows [y1, y2) of the draw list
+  {
+    private int y1, y2;
+
+    public BandTask(int y1, int y2)
+    { this.y1 = y1;
+      this.y2 = y2;
+    }
+
+    protected void compute()
+    {  blitter.drawList(drawList, y1, y2);  }
+  }  // end of BandTask class
+
+}  // end of BandCompositor class
@@ -0,0 +1,883 @@
+
+// Benchmarks.java
+
+/* Microbenchmarks for the collision tests, scrolling, rendering,
+   image loading and game update code. Run them with:
+
+     java Benchmarks [options] [<name prefix>]*
+
+   Options:
+     -l              list the benchmark names
+     -f <forks>      number of separate JVMs for each benchmark
+                     (default FORKS; 0 runs them in this JVM)
+     -wi <n>         warmup iterations (default WARMUP_ITERS)
+     -i <n>          measured iterations (default MEASURE_ITERS)
+     -r <ms>         length of an iteration (default ITER_MS)
+     -o <fnm>        JSON results file (default RESULTS_FNM)
+     -b <fnm>        baseline JSON results file to compare with
+     -t <fraction>   allowed slow-down against the baseline
+                     (default TOLERANCE)
+
+   Every benchmark runs its operation in a loop for about ITER_MS,
+   and reports the average time per operation (ns/op). The first
+   iterations warm up the JIT and aren't counted. Each fork is a
+   new JVM, so the results don't depend on which benchmarks ran
+   before. The random data (e.g. the coordinates checked against
+   the bricks maps) uses a fixed seed, so every run tests the
+   same things.
+
+   These loops have none of JMH's protection against the JIT's
+   optimizations: there are no Blackholes, so only the sum of each
+   run's results is kept (in sink), which doesn't stop a result
+   which is never used from being eliminated as dead code, and the
+   inputs aren't hidden from the JIT, so calculations on constants
+   can be folded away. So the same benchmarks are also run by JMH,
+   from the Maven build (jmh/): its runner, GameBenchmarks, calls
+   setUp() and runOps() for each, and writeJSON() and compare()
+   with the results, so it takes the same options and writes the
+   same JSON. Use it for the real measurements and regression
+   checks; this runner needs nothing but the game's classes.
+
+   The results are written as JSON, in a layout like JMH's.
+   If a baseline file is given, any benchmark which is more than
+   TOLERANCE slower than in the baseline is reported, and the
+   exit code is 1, so a build can be failed by a regression.
+
+   The JVM is headless unless java.awt.headless is set: the
+   rendering is done into an offscreen BufferedImage. No sounds
+   are played (NullAudioBackend is used).
+*/
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.*;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.regex.*;
+
+
+public class Benchmarks
+{
+  private final static String[] NAMES = {
+    "bricks.insideBrick.small", "bricks.insideBrick.huge",
+    "bricks.checkBrickTop.small", "bricks.checkBrickTop.huge",
+    "bricks.checkBrickBase.small", "bricks.checkBrickBase.huge",
+    "bricks.findFloor.small", "bricks.findFloor.huge",
+    "bricks.hitsBrick.small", "bricks.hitsBrick.huge",
+    "bricks.sweepBox.small", "bricks.sweepBox.huge",
+    "bricks.batch1024.small", "bricks.batch1024.huge",
+    "render.ribbon.mountains", "render.ribbon.trees",
+    "render.ribbons.game", "render.ribbons.layers12",
+    "render.tiled.4k.serial", "render.tiled.4k.parallel",
+    "render.bricks.small", "render.bricks.huge",
+    "render.frame",
+    "projectiles.update", "render.projectiles", "collide.grid",
+    "particles.update", "render.particles.raster", "anim.clip1024",
+    "collide.mask",
+    "kernels.anyOverlap", "kernels.anyBits", "kernels.findCells",
+    "load.image", "load.strip", "load.imsInfo",
+    "game.tick"
+  };
+
+  private final static int FORKS = 1;
+  private final static int WARMUP_ITERS = 5;
+  private final static int MEASURE_ITERS = 10;
+  private final static int ITER_MS = 200;
+  private final static double TOLERANCE = 0.10;   // 10% slower
+  private final static String RESULTS_FNM = "benchmarks.json";
+
+  private final static double Z_999 = 3.291;
+    // for the 99.9% confidence interval of a score (normal approx.)
+
+  private final static int PWIDTH = 500;   // same as JackPanel
+  private final static int PHEIGHT = 360;
+  private final static long PERIOD = 1000000000L/30;   // 30 FPS, in ns
+
+  private final static long SEED = 42;
+  private final static int NUM_COORDS = 1024;   // must be a power of 2
+  private final static int HUGE_COLS = 20000;   // width of the huge map
+  private final static int HUGE_ROWS = 15;
+  private final static String MANY_RIBBONS =     // 12 layers, for render.ribbons
+    "mountains 0.05\n" + "trees 0.15 -120\n" + "houses 0.2 -80\n" +
+    "fireball 0.3 40 once\n" + "houses 0.35 -40\n" + "trees 0.45 -60\n" +
+    "explosion 0.5 100 once\n" + "houses 0.6\n" + "mountains 0.7 300\n" +
+    "trees 0.8 20\n" + "jumpLeft 0.9 200 once\n" + "trees 1.0\n";
+  private final static int BIG_WIDTH = 3840;    // a 4K frame
+  private final static int BIG_HEIGHT = 2160;
+  private final static int NUM_PROJECTILES = 4000;
+  private final static int NUM_PARTICLES = 2048;   // JackPanel's default cap
+  private final static int MASK_ROWS = 256;    // for kernels.anyOverlap
+  private final static int KEY_TICKS = 100;
+    // game.tick presses the next key after this many ticks
+  private final static int[] KEYS = {KeyEvent.VK_RIGHT, KeyEvent.VK_UP,
+                                     KeyEvent.VK_LEFT, KeyEvent.VK_UP};
+
+  private static PrintStream out = System.out;   // the real System.out
+  private static long sink = 0;
+    // benchmark results are added to this so the JIT can't remove them
+
+  // the benchmarks' data, created when first needed
+  private static ImagesLoader imsLoader = null;
+  private static BricksManager smallMap = null, hugeMap = null;
+  private static boolean[] batchInside = new boolean[NUM_COORDS];
+  private static int[] batchTops = new int[NUM_COORDS];
+  private static int[] batchBases = new int[NUM_COORDS];
+  private static int[] smallXs, smallYs, smallFloorXs;
+  private static int[] hugeXs, hugeYs, hugeFloorXs;
+  private static Ribbon mountains = null, trees = null;
+  private static RibbonsManager gameRibbons = null, manyRibbons = null;
+  private static RibbonsManager bigRibbons = null;   // for the 4K frame
+  private static BricksManager bigMap = null;
+  private static BufferedImage bigIm;
+  private static ProjectileSystem projectiles = null;
+  private static int projectileIm;
+  private static Random projRand;
+  private static CollisionWorld world;
+  private static ParticleSystem particles = null;
+  private static AnimClip runClip = null;
+  private static long[] startTicks;
+  private static Random partRand;
+  private static RasterBlitter frameBlitter;
+  private static CollisionKernels kernels = null;
+  private static long[] kernelA, kernelB, kernelRow;
+  private static int[] kernelLos, kernelHis, kernelLoCells, kernelHiCells;
+  private static DrawList bigDrawList;
+  private static BandCompositor serialComp = null, parallelComp = null;
+  private static BufferedImage frameIm = null;
+  private static Graphics2D frameG;
+  private static JackPanel panel = null;
+  private static int tickCount = 0;
+
+
+
+  public static void main(String args[])
+  {
+    if (System.getProperty("java.awt.headless") == null)
+      System.setProperty("java.awt.headless", "true");
+
+    int forks = FORKS;
+    int warmups = WARMUP_ITERS;
+    int iters = MEASURE_ITERS;
+    int iterMs = ITER_MS;
+    String resultsFnm = RESULTS_FNM;
+    String baselineFnm = null;
+    double tolerance = TOLERANCE;
+    String childName = null;
+    ArrayList prefixes = new ArrayList();
+
+    try {
+      for (int i=0; i < args.length; i++) {
+        if (args[i].equals("-l")) {
+          for (int j=0; j < NAMES.length; j++)
+            System.out.println(NAMES[j]);
+          return;
+        }
+        else if (args[i].equals("-f"))
+          forks = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-wi"))
+          warmups = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-i"))
+          iters = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-r"))
+          iterMs = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-o"))
+          resultsFnm = args[++i];
+        else if (args[i].equals("-b"))
+          baselineFnm = args[++i];
+        else if (args[i].equals("-t"))
+          tolerance = Double.parseDouble(args[++i]);
+        else if (args[i].equals("-child"))   // used by runFork()
+          childName = args[++i];
+        else
+          prefixes.add(args[i]);
+      }
+    }
+    catch (Exception e) {
+      System.out.println("Usage: java Benchmarks [-l] [-f <forks>] [-wi <n>] " +
+               "[-i <n>] [-r <ms>] [-o <fnm>] [-b <fnm>] [-t <fraction>] " +
+               "[<name prefix>]*");
+      System.exit(1);
+    }
+
+    out = System.out;
+    if (childName != null) {   // run one benchmark, in this forked JVM
+      runChild(childName, warmups, iters, iterMs);
+      System.exit(0);
+    }
+
+    ArrayList names = selectNames(prefixes);
+    if (names.size() == 0) {
+      System.out.println("No benchmarks match " + prefixes);
+      System.exit(1);
+    }
+
+    double[][][] results = new double[names.size()][][];
+    String name;
+    for (int i=0; i < names.size(); i++) {
+      name = (String) names.get(i);
+      out.println("# " + name);
+      if (forks == 0)
+        results[i] = new double[][] { measure(name, warmups, iters, iterMs) };
+      else {
+        results[i] = new double[forks][];
+        for (int f=0; f < forks; f++)
+          results[i][f] = runFork(name, warmups, iters, iterMs);
+      }
+      out.println( report(name, results[i]) );
+    }
+
+    writeJSON(resultsFnm, names, results, forks, warmups, iters);
+    if (baselineFnm != null) {
+      if (!compare(baselineFnm, names, results, tolerance))
+        System.exit(1);
+    }
+    System.exit(0);   // stop the game's threads
+  }  // end of main()
+
+
+  private static ArrayList selectNames(ArrayList prefixes)
+  // the benchmarks whose names start with one of the prefixes
+  {
+    ArrayList names = new ArrayList();
+    for (int i=0; i < NAMES.length; i++) {
+      if (prefixes.size() == 0)
+        names.add(NAMES[i]);
+      else {
+        for (int j=0; j < prefixes.size(); j++)
+          if (NAMES[i].startsWith((String) prefixes.get(j))) {
+            names.add(NAMES[i]);
+            break;
+          }
+      }
+    }
+    return names;
+  }  // end of selectNames()
+
+
+
+  // ------------------ running a benchmark ---------------------
+
+
+  private static double[] measure(String name, int warmups,
+                                         int iters, int iterMs)
+  /* Run the benchmark for warmups+iters iterations, and
+     return the ns/op of the measured iterations. The output
+     of the game's classes is hidden while they run. */
+  {
+    System.setOut( new PrintStream( new OutputStream() {
+                     public void write(int b) {}  } ));
+    try {
+      setUp(name);
+      long numOps = calibrate(name, iterMs);
+
+      double[] nsPerOp = new double[iters];
+      long startTime;
+      for (int i=0; i < warmups+iters; i++) {
+        startTime = System.nanoTime();
+        sink += runOps(name, numOps);
+        if (i >= warmups)
+          nsPerOp[i-warmups] = (double)(System.nanoTime() - startTime)/numOps;
+      }
+      return nsPerOp;
+    }
+    finally {
+      System.setOut(out);
+    }
+  }  // end of measure()
+
+
+  private static long calibrate(String name, int iterMs)
+  // find the number of operations which take about iterMs
+  {
+    long numOps = 1;
+    long time;
+    while (true) {
+      long startTime = System.nanoTime();
+      sink += runOps(name, numOps);
+      time = System.nanoTime() - startTime;
+      if ((time >= iterMs*100000L) || (numOps >= (1L << 40)))  // a tenth
+        break;
+      numOps *= 2;
+    }
+    long ops = (long) ((double)numOps * iterMs*1000000L / Math.max(time, 1));
+    return Math.max(ops, 1);
+  }  // end of calibrate()
+
+
+  private static double[] runFork(String name, int warmups,
+                                        int iters, int iterMs)
+  /* Run the benchmark in a new JVM, with the same JVM options
+     and classpath as this one, and read its results. */
+  {
+    ArrayList cmd = new ArrayList();
+    cmd.add( System.getProperty("java.home") + File.separator + "bin" +
+                                               File.separator + "java");
+    cmd.addAll( ManagementFactory.getRuntimeMXBean().getInputArguments() );
+    cmd.add("-Djava.awt.headless=" + System.getProperty("java.awt.headless"));
+    cmd.add("-cp");
+    cmd.add( System.getProperty("java.class.path") );
+    cmd.add("Benchmarks");
+    cmd.add("-child");  cmd.add(name);
+    cmd.add("-wi");  cmd.add("" + warmups);
+    cmd.add("-i");  cmd.add("" + iters);
+    cmd.add("-r");  cmd.add("" + iterMs);
+
+    double[] nsPerOp = new double[iters];
+    int n = 0;
+    try {
+      ProcessBuilder pb = new ProcessBuilder(cmd);
+      pb.redirectErrorStream(true);
+      Process p = pb.start();
+      BufferedReader br = new BufferedReader(
+                            new InputStreamReader( p.getInputStream()));
+      String line;
+      while ((line = br.readLine()) != null) {
+        if (line.startsWith("RESULT ") && (n < iters))
+          nsPerOp[n++] = Double.parseDouble( line.substring(7) );
+        else
+          out.println("  " + line);    // e.g. an exception in the fork
+      }
+      br.close();
+      p.waitFor();
+    }
+    catch (Exception e)
+    { System.out.println("Could not fork a JVM for " + name + ": " + e);  }
+
+    if (n < iters) {
+      System.out.println("Fork for " + name + " failed; use -f 0 to see its output");
+      System.exit(1);
+    }
+    return nsPerOp;
+  }  // end of runFork()
+
+
+  private static void runChild(String name, int warmups, int iters, int iterMs)
+  // run one benchmark, and print its results for runFork()
+  {
+    double[] nsPerOp = measure(name, warmups, iters, iterMs);
+    for (int i=0; i < nsPerOp.length; i++)
+      out.println("RESULT " + nsPerOp[i]);
+  }  // end of runChild()
+
+
+
+  // --------------------- the benchmarks -----------------------
+
+
+  private static void setUp(String name)
+  // create the data used by the benchmark
+  {
+    if (imsLoader == null)
+      imsLoader = new ImagesLoader("imsInfo.txt");
+
+    if (frameIm == null) {
+      frameIm = new BufferedImage(PWIDTH, PHEIGHT, BufferedImage.TYPE_INT_RGB);
+      frameG = frameIm.createGraphics();
+    }
+
+    if (name.endsWith(".small") && (smallMap == null)) {
+      smallMap = new BricksManager(PWIDTH, PHEIGHT, "bricksInfo.txt", imsLoader);
+      Random rand = new Random(SEED);
+      smallXs = makeCoords(rand, -2*smallMap.getMapWidth(), 2*smallMap.getMapWidth());
+      smallYs = makeCoords(rand, 0, PHEIGHT);
+      smallFloorXs = makeCoords(rand, 0, smallMap.getMapWidth());
+    }
+    else if (name.endsWith(".huge") && (hugeMap == null)) {
+      hugeMap = new BricksManager(PWIDTH, PHEIGHT,
+                       new StringReader( makeHugeMap() ), imsLoader);
+      Random rand = new Random(SEED);
+      hugeXs = makeCoords(rand, -2*hugeMap.getMapWidth(), 2*hugeMap.getMapWidth());
+      hugeYs = makeCoords(rand, 0, PHEIGHT);
+      hugeFloorXs = makeCoords(rand, 0, hugeMap.getMapWidth());
+    }
+    else if (name.equals("render.ribbon.mountains") && (mountains == null)) {
+      mountains = new Ribbon(PWIDTH, PHEIGHT, imsLoader.getImage("mountains"), 1);
+      mountains.moveLeft();
+    }
+    else if (name.equals("render.ribbon.trees") && (trees == null)) {
+      trees = new Ribbon(PWIDTH, PHEIGHT, imsLoader.getImage("trees"), 7);
+      trees.moveLeft();
+    }
+    else if (name.equals("render.ribbons.game") && (gameRibbons == null)) {
+      gameRibbons = new RibbonsManager(PWIDTH, PHEIGHT, 10, imsLoader);
+      gameRibbons.moveLeft();
+    }
+    else if (name.equals("render.ribbons.layers12") && (manyRibbons == null)) {
+      manyRibbons = new RibbonsManager(PWIDTH, PHEIGHT, 10,
+                          new StringReader(MANY_RIBBONS), imsLoader);
+      manyRibbons.moveLeft();
+    }
+    else if (name.startsWith("render.tiled.4k.") && (bigRibbons == null)) {
+      bigIm = new BufferedImage(BIG_WIDTH, BIG_HEIGHT,
+                                         BufferedImage.TYPE_INT_RGB);
+      RasterBlitter blitter = new RasterBlitter(bigIm);
+      bigDrawList = new DrawList();
+      blitter.setDrawList(bigDrawList);
+      bigRibbons = new RibbonsManager(BIG_WIDTH, BIG_HEIGHT, 10,
+                          new StringReader( makeBigRibbons() ), imsLoader);
+      bigRibbons.setBlitter(blitter);
+      bigRibbons.moveLeft();
+      bigMap = new BricksManager(BIG_WIDTH, BIG_HEIGHT,
+                       new StringReader( makeHugeMap() ), imsLoader);
+      bigMap.setBlitter(blitter);
+      bigMap.moveLeft();
+      serialComp = new BandCompositor(blitter, BIG_HEIGHT, 1);
+      parallelComp = new BandCompositor(blitter, BIG_HEIGHT,
+                           Runtime.getRuntime().availableProcessors());
+    }
+    else if ((name.equals("projectiles.update") || name.equals("collide.grid") ||
+              name.equals("render.projectiles")) && (projectiles == null)) {
+      projectiles = new ProjectileSystem(PWIDTH, PHEIGHT, 2*NUM_PROJECTILES);
+      projectileIm = projectiles.addImage( imsLoader.getImage("fireball") );
+      projRand = new Random(SEED);
+      spawnProjectiles();
+      world = new CollisionWorld(PWIDTH, PHEIGHT, 64);
+    }
+    else if (name.startsWith("kernels.") && (kernels == null)) {
+      kernels = KernelsLoader.getKernels();
+      out.println("  kernels: " + kernels.getName());
+      kernelA = new long[MASK_ROWS];     // two masks which never overlap
+      kernelB = new long[MASK_ROWS];
+      Arrays.fill(kernelA, 0xAAAAAAAAAAAAAAAAL);
+      Arrays.fill(kernelB, 0x5555555555555555L);
+      kernelRow = new long[(HUGE_COLS+63)/64];    // an empty huge map row
+      Random rand = new Random(SEED);
+      kernelLos = makeCoords(rand, -PWIDTH, 2*PWIDTH);
+      kernelHis = new int[NUM_COORDS];
+      for (int i=0; i < NUM_COORDS; i++)
+        kernelHis[i] = kernelLos[i] + 1 + rand.nextInt(100);
+      kernelLoCells = new int[NUM_COORDS];
+      kernelHiCells = new int[NUM_COORDS];
+    }
+    else if ((name.equals("particles.update") ||
+              name.equals("render.particles.raster")) && (particles == null)) {
+      particles = new ParticleSystem(PWIDTH, PHEIGHT, NUM_PARTICLES);
+      particles.addColor(0xffff60);
+      particles.addColor(0xe02000);
+      partRand = new Random(SEED);
+      spawnParticles();
+      frameBlitter = new RasterBlitter(frameIm);
+    }
+    else if (name.equals("anim.clip1024") && (runClip == null)) {
+      runClip = imsLoader.getClip("runningRight", (int)(PERIOD/1000000L), 0.5, true);
+      Random rand = new Random(SEED);
+      startTicks = new long[NUM_COORDS];   // sprites started at different times
+      for (int i=0; i < NUM_COORDS; i++)
+        startTicks[i] = rand.nextInt(1000);
+    }
+    else if ((name.equals("render.frame") || name.equals("game.tick")) &&
+             (panel == null)) {
+      panel = new JackPanel(null, PERIOD, new NullAudioBackend());
+      panel.pressKey(KeyEvent.VK_H);    // hide the help, and start
+      panel.pressKey(KeyEvent.VK_RIGHT);
+    }
+  }  // end of setUp()
+
+
+  private static int[] makeCoords(Random rand, int min, int max)
+  // NUM_COORDS random values between min and max (exclusive)
+  {
+    int[] coords = new int[NUM_COORDS];
+    for (int i=0; i < NUM_COORDS; i++)
+      coords[i] = min + rand.nextInt(max-min);
+    return coords;
+  }  // end of makeCoords()
+
+
+  private static String makeHugeMap()
+  /* A bricks map HUGE_COLS wide, with random bricks in the upper
+     rows and a complete bottom row. */
+  {
+    Random rand = new Random(SEED);
+    StringBuffer sb = new StringBuffer("s tiles.gif 5\n");
+    for (int row=0; row < HUGE_ROWS; row++) {
+      for (int col=0; col < HUGE_COLS; col++) {
+        if ((row == HUGE_ROWS-1) || (rand.nextInt(4) == 0))
+          sb.append( (char)('0' + rand.nextInt(5)) );
+        else
+          sb.append(' ');
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }  // end of makeHugeMap()
+
+
+  private static void spawnProjectiles()
+  // top up the projectiles to NUM_PROJECTILES, moving in random directions
+  {
+    while (projectiles.getNumActive() < NUM_PROJECTILES)
+      projectiles.spawn(projRand.nextInt(PWIDTH), projRand.nextInt(PHEIGHT),
+                        projRand.nextFloat()*20 - 10, projRand.nextFloat()*20 - 10,
+                        ProjectileSystem.FOREVER, projectileIm);
+  }  // end of spawnProjectiles()
+
+
+  private static void spawnParticles()
+  // top up the particles to NUM_PARTICLES, in bursts of 40 like the sparks
+  {
+    float x = 0, y = 0;
+    while (particles.getNumActive() < NUM_PARTICLES) {
+      if (particles.getNumActive() % 40 == 0) {
+        x = partRand.nextInt(PWIDTH);
+        y = partRand.nextInt(PHEIGHT/2);
+      }
+      particles.spawn(x, y, partRand.nextFloat()*14 - 7, partRand.nextFloat()*14 - 7,
+                      12 + partRand.nextInt(13), partRand.nextInt(2));
+    }
+  }  // end of spawnParticles()
+
+
+  private static String makeBigRibbons()
+  // the game's three ribbons, repeated down the 4K frame
+  {
+    StringBuffer sb = new StringBuffer();
+    for (int y=0; y < BIG_HEIGHT; y += PHEIGHT)
+      sb.append("mountains 0.1 " + y + "\n" + "houses 0.5 " + y + "\n" +
+                "trees 1.0 " + y + "\n");
+    return sb.toString();
+  }  // end of makeBigRibbons()
+
+
+  private static long runOps(String name, long numOps)
+  // carry out numOps operations of the benchmark
+  {
+    long result = 0;
+    int idx;
+    if (name.startsWith("bricks.")) {
+      boolean isSmall = name.endsWith(".small");
+      BricksManager bm = isSmall ? smallMap : hugeMap;
+      int[] xs = isSmall ? smallXs : hugeXs;
+      int[] ys = isSmall ? smallYs : hugeYs;
+      int[] floorXs = isSmall ? smallFloorXs : hugeFloorXs;
+      int step = bm.getBrickHeight()/2;
+
+      if (name.startsWith("bricks.insideBrick")) {
+        for (long i=0; i < numOps; i++) {
+          idx = (int)i & (NUM_COORDS-1);
+          if (bm.insideBrick(xs[idx], ys[idx]))
+            result++;
+        }
+      }
+      else if (name.startsWith("bricks.checkBrickTop")) {
+        for (long i=0; i < numOps; i++) {
+          idx = (int)i & (NUM_COORDS-1);
+          result += bm.checkBrickTop(xs[idx], ys[idx], step);
+        }
+      }
+      else if (name.startsWith("bricks.checkBrickBase")) {
+        for (long i=0; i < numOps; i++) {
+          idx = (int)i & (NUM_COORDS-1);
+          result += bm.checkBrickBase(xs[idx], ys[idx], step);
+        }
+      }
+      else if (name.startsWith("bricks.hitsBrick")) {
+        CollisionMask jackMask = imsLoader.getMask( imsLoader.getImage("runningRight") );
+        for (long i=0; i < numOps; i++) {
+          idx = (int)i & (NUM_COORDS-1);
+          if (bm.hitsBrick(jackMask, xs[idx], ys[idx], 0, 0,
+                                    jackMask.getWidth(), jackMask.getHeight()))
+            result++;
+        }
+      }
+      else if (name.startsWith("bricks.batch1024")) {
+        // insideBrick(), checkBrickTop() and checkBrickBase() for all the coords
+        for (long i=0; i < numOps; i++) {
+          bm.insideBricks(xs, ys, NUM_COORDS, batchInside);
+          bm.checkBrickTops(xs, ys, NUM_COORDS, step, batchTops);
+          bm.checkBrickBases(xs, ys, NUM_COORDS, step, batchBases);
+          result += batchTops[(int)i & (NUM_COORDS-1)];
+        }
+      }
+      else if (name.startsWith("bricks.sweepBox")) {
+        // a jack-sized box moving a long way in each direction
+        SweepResult res = new SweepResult();
+        int dx, dy;
+        for (long i=0; i < numOps; i++) {
+          idx = (int)i & (NUM_COORDS-1);
+          dx = xs[(idx+1) & (NUM_COORDS-1)] % 200;
+          dy = ys[(idx+2) & (NUM_COORDS-1)] - PHEIGHT/2;
+          if (bm.sweepBox(xs[idx], ys[idx], 50, 62, dx, dy, res))
+            result++;
+        }
+      }
+      else {   // findFloor
+        for (long i=0; i < numOps; i++)
+          result += bm.findFloor( floorXs[(int)i & (NUM_COORDS-1)] );
+      }
+    }
+
+    else if (name.startsWith("render.ribbon.")) {
+      Ribbon ribbon = name.endsWith("mountains") ? mountains : trees;
+      for (long i=0; i < numOps; i++) {
+        ribbon.update();
+        ribbon.display(frameG);
+      }
+      result = frameIm.getRGB(0, 0);
+    }
+    else if (name.startsWith("render.ribbons.")) {
+      RibbonsManager rm = name.endsWith(".game") ? gameRibbons : manyRibbons;
+      for (long i=0; i < numOps; i++) {
+        rm.update();
+        rm.display(frameG);
+      }
+      result = frameIm.getRGB(0, 0);
+    }
+    else if (name.equals("projectiles.update")) {
+      for (long i=0; i < numOps; i++) {
+        projectiles.update();     // update all the projectiles
+        spawnProjectiles();       // replace the ones which left
+      }
+      result = projectiles.getNumActive();
+    }
+    else if (name.equals("collide.grid")) {
+      // all the projectiles collide with each other
+      for (long i=0; i < numOps; i++) {
+        world.clear();
+        projectiles.addBodies(world, 1, 1);
+        result += world.findPairs();
+      }
+    }
+    else if (name.equals("collide.mask")) {
+      // jack's and the fireball's masks, at every offset where their boxes overlap
+      CollisionMask jackMask = imsLoader.getMask( imsLoader.getImage("runningRight") );
+      CollisionMask ballMask = imsLoader.getMask( imsLoader.getImage("fireball") );
+      int xRange = jackMask.getWidth() + ballMask.getWidth();
+      int yRange = jackMask.getHeight() + ballMask.getHeight();
+      for (long i=0; i < numOps; i++) {
+        idx = (int)(i % (xRange*yRange));
+        if (CollisionMask.overlaps(jackMask, 0, 0, ballMask,
+                     idx%xRange - ballMask.getWidth() + 1,
+                     idx/xRange - ballMask.getHeight() + 1))
+          result++;
+      }
+    }
+    else if (name.equals("kernels.anyOverlap")) {
+      // a MASK_ROWS high word column, shifted by 2 pixels, with no overlap
+      for (long i=0; i < numOps; i++)
+        if (kernels.anyOverlap(kernelA, 0, kernelB, 0, kernelB, 0,
+                                          MASK_ROWS, 2, -1L))
+          result++;
+    }
+    else if (name.equals("kernels.anyBits")) {
+      // the whole of an empty row of the huge map
+      for (long i=0; i < numOps; i++)
+        if (kernels.anyBits(kernelRow, 0, kernelRow.length, -1L, -1L))
+          result++;
+    }
+    else if (name.equals("kernels.findCells")) {
+      // the grid columns covered by NUM_COORDS boxes
+      for (long i=0; i < numOps; i++) {
+        kernels.findCells(kernelLos, kernelHis, NUM_COORDS, 64,
+                             PWIDTH/64, kernelLoCells, kernelHiCells);
+        result += kernelHiCells[(int)i & (NUM_COORDS-1)];
+      }
+    }
+    else if (name.equals("anim.clip1024")) {
+      // the current images of NUM_COORDS sprites looping the same clip
+      for (long i=0; i < numOps; i++)
+        for (int j=0; j < NUM_COORDS; j++)
+          result += runClip.getPosition(1000 + i - startTicks[j]);
+    }
+    else if (name.equals("particles.update")) {
+      for (long i=0; i < numOps; i++) {
+        particles.update();     // update all the particles
+        spawnParticles();       // replace the ones which died
+      }
+      result = particles.getNumActive();
+    }
+    else if (name.equals("render.particles.raster")) {
+      for (long i=0; i < numOps; i++)
+        particles.draw(frameG, frameBlitter);    // write all the particles
+      result = frameIm.getRGB(0, 0);
+    }
+    else if (name.equals("render.projectiles")) {
+      for (long i=0; i < numOps; i++)
+        projectiles.draw(frameG, null);    // draw all the projectiles
+      result = frameIm.getRGB(0, 0);
+    }
+    else if (name.startsWith("render.tiled.4k.")) {
+      BandCompositor comp = name.endsWith(".serial") ? serialComp : parallelComp;
+      for (long i=0; i < numOps; i++) {
+        bigRibbons.update();
+        bigMap.update();
+        bigRibbons.display(frameG);    // recorded in bigDrawList
+        bigMap.display(frameG);
+        comp.composite(bigDrawList);
+      }
+      result = bigIm.getRGB(0, 0);
+    }
+    else if (name.startsWith("render.bricks.")) {
+      BricksManager bm = name.endsWith(".small") ? smallMap : hugeMap;
+      bm.moveLeft();
+      for (long i=0; i < numOps; i++) {
+        bm.update();
+        bm.display(frameG);
+      }
+      result = frameIm.getRGB(0, PHEIGHT-1);
+    }
+    else if (name.equals("render.frame")) {
+      for (long i=0; i < numOps; i++)
+        panel.renderFrame(frameG);
+      result = frameIm.getRGB(0, 0);
+    }
+
+    else if (name.equals("load.image")) {
+      for (long i=0; i < numOps; i++)
+        result += imsLoader.loadImage("mountains.gif").getWidth();
+    }
+    else if (name.equals("load.strip")) {
+      for (long i=0; i < numOps; i++)
+        result += imsLoader.loadStripImageArray("runningRight.gif", 6).length;
+    }
+    else if (name.equals("load.imsInfo")) {
+      for (long i=0; i < numOps; i++)
+        result += new ImagesLoader("imsInfo.txt").numImages("explosion");
+    }
+
+    else if (name.equals("game.tick")) {
+      for (long i=0; i < numOps; i++) {
+        if (panel.isGameOver())
+          panel.newGame();
+        if ((++tickCount % KEY_TICKS) == 0)
+          panel.pressKey( KEYS[(tickCount/KEY_TICKS) % KEYS.length] );
+        panel.tick();
+      }
+      result = tickCount;
+    }
+    else
+      System.out.println("Unknown benchmark: " + name);
+
+    return result;
+  }  // end of runOps()
+
+
+
+  // ------------------------ results ---------------------------
+
+
+  private static double mean(double[][] data)
+  { double total = 0;
+    int n = 0;
+    for (int f=0; f < data.length; f++)
+      for (int i=0; i < data[f].length; i++) {
+        total += data[f][i];
+        n++;
+      }
+    return total/n;
+  }  // end of mean()
+
+
+  private static double error(double[][] data)
+  // half the width of the score's 99.9% confidence interval
+  { double mean = mean(data);
+    double total = 0;
+    int n = 0;
+    for (int f=0; f < data.length; f++)
+      for (int i=0; i < data[f].length; i++) {
+        total += (data[f][i] - mean) * (data[f][i] - mean);
+        n++;
+      }
+    if (n < 2)
+      return 0;
+    return Z_999 * Math.sqrt(total/(n-1)) / Math.sqrt(n);
+  }  // end of error()
+
+
+  private static String report(String name, double[][] data)
+  { return "  " + name + ": " + format(mean(data)) + " +- " +
+                   format(error(data)) + " ns/op";  }
+
+
+  private static String format(double d)
+  {  return "" + Math.round(d*1000)/1000.0;  }   // 3 dp
+
+
+  private static void writeJSON(String fnm, ArrayList names,
+              double[][][] results, int forks, int warmups, int iters)
+  {
+    StringBuffer sb = new StringBuffer("[\n");
+    for (int i=0; i < names.size(); i++) {
+      sb.append("  {\n");
+      sb.append("    \"benchmark\" : \"" + names.get(i) + "\",\n");
+      sb.append("    \"mode\" : \"avgt\",\n");
+      sb.append("    \"forks\" : " + forks + ",\n");
+      sb.append("    \"warmupIterations\" : " + warmups + ",\n");
+      sb.append("    \"measurementIterations\" : " + iters + ",\n");
+      sb.append("    \"jvm\" : \"" + System.getProperty("java.vm.version") + "\",\n");
+      sb.append("    \"primaryMetric\" : {\n");
+      sb.append("      \"score\" : " + mean(results[i]) + ",\n");
+      sb.append("      \"scoreError\" : " + error(results[i]) + ",\n");
+      sb.append("      \"scoreUnit\" : \"ns/op\",\n");
+      sb.append("      \"rawData\" : [");
+      for (int f=0; f < results[i].length; f++) {
+        sb.append( (f == 0) ? "\n        [" : ",\n        [" );
+        for (int j=0; j < results[i][f].length; j++)
+          sb.append( ((j == 0) ? "" : ", ") + results[i][f][j] );
+        sb.append("]");
+      }
+      sb.append("\n      ]\n");
+      sb.append("    }\n");
+      sb.append( (i == names.size()-1) ? "  }\n" : "  },\n" );
+    }
+    sb.append("]\n");
+
+    try {
+      Writer w = new FileWriter(fnm);
+      w.write( sb.toString() );
+      w.close();
+      out.println("Results written to " + fnm);
+    }
+    catch (IOException e)
+    { System.out.println("Could not write " + fnm + ": " + e);  }
+  }  // end of writeJSON()
+
+
+  private static boolean compare(String baselineFnm, ArrayList names,
+                            double[][][] results, double tolerance)
+  /* Compare the scores with those in a results file written by
+     writeJSON(). Return false if any is more than tolerance slower. */
+  {
+    HashMap baseScores = new HashMap();
+    try {
+      BufferedReader br = new BufferedReader( new FileReader(baselineFnm));
+      StringBuffer sb = new StringBuffer();
+      String line;
+      while ((line = br.readLine()) != null)
+        sb.append(line).append('\n');
+      br.close();
+
+      Matcher m = Pattern.compile(
+           "\"benchmark\" : \"([^\"]+)\"[^\\]]*?\"score\" : ([-0-9.eE]+)")
+                                           .matcher( sb.toString() );
+      while (m.find())
+        baseScores.put(m.group(1), Double.valueOf(m.group(2)) );
+    }
+    catch (IOException e) {
+      System.out.println("Could not read baseline " + baselineFnm + ": " + e);
+      return false;
+    }
+
+    boolean isOK = true;
+    out.println("Compared with " + baselineFnm + " (tolerance " +
+                         Math.round(tolerance*100) + "%):");
+    String name;
+    for (int i=0; i < names.size(); i++) {
+      name = (String) names.get(i);
+      Double base = (Double) baseScores.get(name);
+      if (base == null) {
+        out.println("  " + name + ": not in baseline");
+        continue;
+      }
+      double ratio = mean(results[i]) / base.doubleValue();
+      boolean isSlower = (ratio > 1+tolerance);
+      out.println("  " + name + ": " + format(ratio) + "x" +
+                           (isSlower ? "  REGRESSION" : ""));
+      if (isSlower)
+        isOK = false;
+    }
+    return isOK;
+  }  // end of compare()
+
+}  // end of Benchmarks class
@@ -0,0 +1,97 @@
+
+// BlitImage.java
+
+/* An image prepared for drawing by a RasterBlitter: its pixels
+   (as non-premultiplied ARGB ints), and for each row, the spans
+   of pixels which have to be drawn.
+
+   A span is either opaque (alpha 255), so it can be copied
+   straight into the destination, or translucent, so it has to be
+   blended. Fully transparent pixels don't belong to any span, and
+   are skipped. A row's spans are stored in an int array as
+   triples: start x, end x (exclusive), and the span's kind.
+
+   An image with no transparency at all is marked as opaque, so
+   every row can be copied whole without looking at its spans.
+*/
+
+import java.awt.*;
+import java.awt.image.*;
+
+
+public class BlitImage
+{
+  public final static int OPAQUE = 0;     // kinds of span
+  public final static int TRANSLUCENT = 1;
+
+  private int width, height;
+  private int[] pixels;
+  private boolean isOpaque;
+  private int[][] rowSpans;    // [row][3*span + (0=start, 1=end, 2=kind)]
+
+
+  public BlitImage(BufferedImage im)
+  {
+    width = im.getWidth();
+    height = im.getHeight();
+    pixels = im.getRGB(0, 0, width, height, null, 0, width);
+
+    isOpaque = true;
+    rowSpans = new int[height][];
+    for (int y=0; y < height; y++) {
+      rowSpans[y] = findSpans(y);
+      if ((rowSpans[y].length != 3) || (rowSpans[y][0] != 0) ||
+          (rowSpans[y][1] != width) || (rowSpans[y][2] != OPAQUE))
+        isOpaque = false;
+    }
+  }  // end of BlitImage()
+
+
+  private int[] findSpans(int y)
+  // the spans of row y, as (start, end, kind) triples
+  {
+    int[] spans = new int[3*width];   // big enough for any row
+    int numSpans = 0;
+    int offset = y*width;
+    int kind, prevKind = -1;
+    int alpha;
+    for (int x=0; x < width; x++) {
+      alpha = pixels[offset+x] >>> 24;
+      if (alpha == 0) {
+        prevKind = -1;   // not in a span
+        continue;
+      }
+      kind = (alpha == 0xff) ? OPAQUE : TRANSLUCENT;
+      if (kind == prevKind)
+        spans[3*numSpans - 2] = x+1;    // extend the span
+      else {
+        spans[3*numSpans] = x;
+        spans[3*numSpans + 1] = x+1;
+        spans[3*numSpans + 2] = kind;
+        numSpans++;
+      }
+      prevKind = kind;
+    }
+
+    int[] rowSpans = new int[3*numSpans];
+    System.arraycopy(spans, 0, rowSpans, 0, 3*numSpans);
+    return rowSpans;
+  }  // end of findSpans()
+
+
+  public int getWidth()
+  {  return width;  }
+
+  public int getHeight()
+  {  return height;  }
+
+  public int[] getPixels()
+  {  return pixels;  }
+
+  public boolean isOpaque()
+  {  return isOpaque;  }
+
+  public int[] getRowSpans(int y)
+  {  return rowSpans[y];  }
+
+}  // end of BlitImage class
@@ -18,14 +18,27 @@
    ----
    JumperSprite uses BricksManager for collision detection.
    As it rises/falls it must curtail the movement if it will
-   enter a brick; checkBrickBase() and checkBrickTop() are used
-   for testing this.
+   enter a brick; sweepBox() is used for testing this (the older
+   point tests, checkBrickBase() and checkBrickTop(), are still here).
 
    When JumperSprite moves left/right, it must first check that it will
-   not move into a brick. It uses insideBrick() for this test.
+   not move into a brick. It uses hitsBrick() for this test, which
+   compares the solid pixels of jack's image and the bricks' images.
 
    When JumperSprite does move, it may move off into space -- there
    is no brick below it. It tests this using insideBrick() also.
+
+   The bricks are also recorded in an occupancy grid (a boolean
+   for each map cell), so insideBrick() is a single lookup, and
+   the batch queries (insideBricks(), checkBrickTops() and
+   checkBrickBases()) can answer for many coordinates at once.
+
+   sweepBox() moves a box through the map, and finds the first
+   brick it would run into, however far it moves. It steps from
+   one grid line to the next in the order the box's leading edges
+   reach them (like a DDA line drawer), and only tests the cells
+   along the edge crossing each line. So a fast move can't jump
+   over a brick. JumperSprite uses it for rising and falling.
 */
 
 import java.awt.*;
@@ -80,9 +93,30 @@ public class BricksManager
     // Brick objects saved in column order 
     // (faster to search than bricksList)
 
+  private boolean[] occupied;
+    // is there a brick at map (x,y)? indexed by y*numCols + x
+  private long[] occupiedRows;    // the same, packed 64 columns to a long
+  private int rowWords;           // longs per row in occupiedRows
+  private CollisionKernels kernels;   // for scanning occupiedRows
+
+  private int[] cellScratch = new int[64];
+  private int[] offsetScratch = new int[64];
+    // reused by the batch queries for the map cells and row offsets
+
+  private final static double SWEEP_EPS = 1e-6;
+    // nudge used by sweepBox() when finding the cells a box touches
+
   private ImagesLoader imsLoader;
   private ArrayList brickImages = null;    
          // holds all the images loaded by imsLoader
+
+  private RasterBlitter blitter = null;   // draw with this, if not null
+  private BlitImage[] blitImages = null;  // the brick images, for the blitter
+  private CollisionMask[] brickMasks;     // the brick images' solid pixels
+
+  private int opaqueFloorY;
+     /* The panel rows from opaqueFloorY down are always hidden by the
+        bricks on the bottom line of the map (see findOpaqueFloor()). */
  
 
   public BricksManager(int w, int h, String fnm, ImagesLoader il)
@@ -92,8 +126,37 @@ public class BricksManager
 
     bricksList = new ArrayList();
     loadBricksFile(fnm);
+    initManager();
+  }  // end of BricksManager()
+
+
+  public BricksManager(int w, int h, Reader mapReader, ImagesLoader il)
+  /* Read the bricks map from mapReader instead of a file in Images/;
+     used by the Benchmarks to build maps of different sizes. */
+  {
+    pWidth = w; pHeight = h;
+    imsLoader = il;
+
+    bricksList = new ArrayList();
+    try {
+      readBricks( new BufferedReader(mapReader) );
+    }
+    catch (IOException e)
+    { System.out.println("Error reading bricks map: " + e);
+      System.exit(1);
+    }
+    initManager();
+  }  // end of BricksManager()
+
+
+  private void initManager()
+  {
     initBricksInfo();
     createColumns();
+    findOpaqueFloor();
+    brickMasks = new CollisionMask[brickImages.size()];
+    for (int i=0; i < brickMasks.length; i++)
+      brickMasks[i] = imsLoader.getMask( (BufferedImage) brickImages.get(i) );
 
     moveSize = (int)(imWidth * MOVE_FACTOR);
     if (moveSize == 0) {
@@ -104,7 +167,7 @@ public class BricksManager
     isMovingRight = false;   // no movement at start
     isMovingLeft = false;
     xMapHead = 0;
-  }  // end of BricksManager()
+  }  // end of initManager()
 
 
   // ----------- load the bricks information -------------------
@@ -129,32 +192,14 @@ public class BricksManager
     String imsFNm = IMAGE_DIR + fnm;
     System.out.println("Reading bricks file: " + imsFNm);
 
-    int numStripImages = -1;
-    int numBricksLines = 0;
     try {
-      BufferedReader br = new BufferedReader( new FileReader(imsFNm));
-      String line;
-      char ch;
-      while((line = br.readLine()) != null) {
-        if (line.length() == 0)  // ignore a blank line
-          continue;
-        if (line.startsWith("//"))   // ignore a comment line
-          continue;
-        ch = Character.toLowerCase( line.charAt(0) );
-        if (ch == 's')  // an images strip
-          numStripImages = getStripImages(line);
-        else {  // a bricks map line
-          if (numBricksLines > MAX_BRICKS_LINES) 
-            System.out.println("Max reached, skipping bricks line: " + line);
-          else if (numStripImages == -1) 
-            System.out.println("No strip image, skipping bricks line: " + line);
-          else {
-            storeBricks(line, numBricksLines, numStripImages);
-            numBricksLines++;
-          }
-        }
-      }
-      br.close();
+      BufferedReader br;
+      AssetPack pack = AssetPack.getDefault();
+      if ((pack != null) && pack.contains(imsFNm))
+        br = new BufferedReader( new InputStreamReader( pack.getStream(imsFNm)));
+      else
+        br = new BufferedReader( new FileReader(imsFNm));
+      readBricks(br);
     } 
     catch (IOException e) 
     { System.out.println("Error reading file: " + imsFNm);
@@ -163,6 +208,36 @@ public class BricksManager
   }  // end of loadBricksFile()
 
 
+  private void readBricks(BufferedReader br) throws IOException
+  // read the strip and map lines from br, then close it
+  {
+    int numStripImages = -1;
+    int numBricksLines = 0;
+    String line;
+    char ch;
+    while((line = br.readLine()) != null) {
+      if (line.length() == 0)  // ignore a blank line
+        continue;
+      if (line.startsWith("//"))   // ignore a comment line
+        continue;
+      ch = Character.toLowerCase( line.charAt(0) );
+      if (ch == 's')  // an images strip
+        numStripImages = getStripImages(line);
+      else {  // a bricks map line
+        if (numBricksLines > MAX_BRICKS_LINES) 
+          System.out.println("Max reached, skipping bricks line: " + line);
+        else if (numStripImages == -1) 
+          System.out.println("No strip image, skipping bricks line: " + line);
+        else {
+          storeBricks(line, numBricksLines, numStripImages);
+          numBricksLines++;
+        }
+      }
+    }
+    br.close();
+  }  // end of readBricks()
+
+
   private int getStripImages(String line)
   /* format:
         s <fnm> <number>
@@ -352,14 +427,71 @@ public class BricksManager
     for (int i=0; i < numCols; i++)
       columnBricks[i] = new ArrayList();
 
+    occupied = new boolean[numCols*numRows];
+    rowWords = (numCols + 63) >> 6;
+    occupiedRows = new long[rowWords*numRows];
+    kernels = KernelsLoader.getKernels();
+
     Brick b;
     for (int j=0; j < bricksList.size(); j++) {
       b = (Brick) bricksList.get(j);
       columnBricks[ b.getMapX() ].add(b);    // bricks not stored in any order
+      occupied[ b.getMapY()*numCols + b.getMapX() ] = true;
+      occupiedRows[ b.getMapY()*rowWords + (b.getMapX() >> 6) ] |=
+                                    (1L << (63 - (b.getMapX() & 63)));
     }
   }  // end of createColumns()
 
 
+  private void findOpaqueFloor()
+  /* The bottom line of the map has a brick in every position (see
+     checkForGaps()), so if all its images are fully opaque, the
+     bottom imHeight rows of the panel are always covered, whatever
+     xMapHead is. RibbonsManager uses this to avoid drawing the parts
+     of the ribbons hidden behind them.
+  */
+  {
+    opaqueFloorY = pHeight - imHeight;
+    Brick b;
+    for (int i=0; i < bricksList.size(); i++) {
+      b = (Brick) bricksList.get(i);
+      if ((b.getMapY() == numRows-1) &&
+          !isOpaque( (BufferedImage) brickImages.get(b.getImageID()) )) {
+        opaqueFloorY = pHeight;    // the bricks don't hide anything
+        return;
+      }
+    }
+  }  // end of findOpaqueFloor()
+
+
+  private boolean isOpaque(BufferedImage im)
+  // does every pixel of im have full alpha?
+  {
+    if (im.getTransparency() == Transparency.OPAQUE)
+      return true;
+    int w = im.getWidth();
+    int h = im.getHeight();
+    int[] pixels = im.getRGB(0, 0, w, h, null, 0, w);
+    for (int i=0; i < pixels.length; i++)
+      if ((pixels[i] >>> 24) != 0xff)
+        return false;
+    return true;
+  }  // end of isOpaque()
+
+
+  public void setBlitter(RasterBlitter b)
+  /* Draw the bricks with b, or with Graphics if b is null. The
+     brick images are prepared for the blitter the first time. */
+  {
+    blitter = b;
+    if ((blitter != null) && (blitImages == null)) {
+      blitImages = new BlitImage[brickImages.size()];
+      for (int i=0; i < blitImages.length; i++)
+        blitImages[i] = new BlitImage( (BufferedImage) brickImages.get(i) );
+    }
+  }  // end of setBlitter()
+
+
   // ---------------------- move the bricks map ---------------
 
   public void moveRight()
@@ -450,7 +582,10 @@ public class BricksManager
       column = columnBricks[ xMap ];   // get the current column
       for (int i=0; i < column.size(); i++) {   // draw all bricks
          b = (Brick) column.get(i);
-         b.display(g, x);   // draw brick b at JPanel posn x
+         if (blitter != null)
+           blitter.draw(blitImages[b.getImageID()], x, b.getLocY());
+         else
+           b.display(g, x);   // draw brick b at JPanel posn x
       }
       xMap++;  // examine the next column of bricks
     }
@@ -503,41 +638,221 @@ public class BricksManager
   {  return moveSize;  }
 
 
+  public int getMapWidth()
+  {  return width;  }
+
+  public int getOpaqueFloorY()
+  {  return opaqueFloorY;  }
+
+
   public boolean insideBrick(int xWorld, int yWorld)
   /* Check if the world coord is inside a brick. */
   {
-    Point mapCoord = worldToMap(xWorld, yWorld);
-    ArrayList column = columnBricks[ mapCoord.x ];
+    int mapY = worldToMapY(yWorld);
+    if ((mapY < 0) || (mapY >= numRows))
+      return false;    // above or below the map
+    return occupied[ mapY*numCols + worldToMapX(xWorld) ];
+  }  // end of insideBrick()
+
+
+  public boolean hitsBrick(CollisionMask m, int xWorld, int yWorld,
+                                     int x1, int y1, int x2, int y2)
+  /* Would columns x1 to x2-1 and rows y1 to y2-1 of mask m, with
+     its top-left corner at (xWorld, yWorld), share a solid pixel
+     with a brick? Only the bricks in the map columns under those
+     mask columns, and in the rows beside the mask rows, are tested. */
+  {
+    if (m == null)
+      return false;
+    int top = yWorld + y1;
+    int bottom = yWorld + y2;
+    int col1 = Math.floorDiv(xWorld+x1, imWidth);      // world columns
+    int col2 = Math.floorDiv(xWorld+x2-1, imWidth);
 
+    ArrayList column;
     Brick b;
-    for (int i=0; i < column.size(); i++) {
-      b = (Brick) column.get(i);
-      if (mapCoord.y == b.getMapY())
-        return true;
+    CollisionMask bm;
+    for (int col = col1; col <= col2; col++) {
+      column = columnBricks[ Math.floorMod(col, numCols) ];
+      for (int i=0; i < column.size(); i++) {
+        b = (Brick) column.get(i);
+        if ((b.getLocY() >= bottom) || (b.getLocY()+imHeight <= top))
+          continue;
+        bm = brickMasks[b.getImageID()];
+        if ((bm != null) &&
+            CollisionMask.overlaps(m, xWorld, yWorld, x1, y1, x2, y2,
+                                   bm, col*imWidth, b.getLocY()))
+          return true;
+      }
     }
     return false;
-  }  // end of insideBrick()
+  }  // end of hitsBrick()
 
 
-  private Point worldToMap(int xWorld, int yWorld)
-  // convert world coord (x,y) to a map index tuple
+  // -------------------- swept collisions -------------------------
+
+
+  public boolean sweepBox(int xWorld, int yWorld, int w, int h,
+                                int dx, int dy, SweepResult res)
+  /* Move the w*h box at (xWorld, yWorld) by (dx,dy), and find the
+     first brick it runs into. The result is stored in res. A
+     brick is treated as filling its grid cell, and the bricks
+     which the box already overlaps are ignored, so a box can
+     always move out of a brick. Return true if a brick was hit.
+  */
+  {
+    res.setMiss(dx, dy);
+    if ((dx == 0) && (dy == 0))
+      return false;
+
+    int yMap = pHeight - height;    // world y of the top of the map
+    int stepX = (dx > 0) ? 1 : -1;
+    int stepY = (dy > 0) ? 1 : -1;
+
+    // the next column and row the box's leading edges will enter
+    int col = (dx > 0) ? Math.floorDiv(xWorld+w-1, imWidth)+1 :
+                         Math.floorDiv(xWorld, imWidth)-1;
+    int row = (dy > 0) ? Math.floorDiv(yWorld+h-1-yMap, imHeight)+1 :
+                         Math.floorDiv(yWorld-yMap, imHeight)-1;
+
+    // when the edges reach those grid lines (after time 1 if never)
+    double tx = (dx == 0) ? 2.0 : crossTime(xWorld, w, dx, col, imWidth, 0);
+    double ty = (dy == 0) ? 2.0 : crossTime(yWorld, h, dy, row, imHeight, yMap);
+
+    double t;
+    int first, last;
+    while ((tx <= 1.0) || (ty <= 1.0)) {
+      if (tx <= ty) {    // the box enters column col
+        t = tx;
+        first = firstCell(yWorld + t*dy - yMap, dy, imHeight);
+        last = lastCell(yWorld + h + t*dy - yMap, dy, imHeight);
+        for (int r = first; r <= last; r++)
+          if (isOccupied(col, r)) {
+            res.setHit(t, -stepX, 0, dx, dy, Math.floorMod(col, numCols), r);
+            return true;
+          }
+        col += stepX;
+        tx = crossTime(xWorld, w, dx, col, imWidth, 0);
+      }
+      else {   // the box enters row row
+        t = ty;
+        first = firstCell(xWorld + t*dx, dx, imWidth);
+        last = lastCell(xWorld + w + t*dx, dx, imWidth);
+        if (rowHasBrick(row, first, last)) {
+          for (int c = first; c <= last; c++)    // find the brick
+            if (isOccupied(c, row)) {
+              res.setHit(t, 0, -stepY, dx, dy, Math.floorMod(c, numCols), row);
+              return true;
+            }
+        }
+        row += stepY;
+        ty = crossTime(yWorld, h, dy, row, imHeight, yMap);
+      }
+    }
+    return false;
+  }  // end of sweepBox()
+
+
+  private double crossTime(int pos, int size, int d, int cell,
+                                    int cellSize, int origin)
+  /* The time when a box edge, starting at pos with length size and
+     moving by d, reaches the grid line on the near side of cell. */
+  {
+    if (d > 0)    // the leading edge is pos+size
+      return (double)(origin + cell*cellSize - (pos+size)) / d;
+    else          // the leading edge is pos
+      return (double)(pos - (origin + (cell+1)*cellSize)) / -d;
+  }  // end of crossTime()
+
+
+  /* firstCell() and lastCell() find the cells touched by the box's
+     start and end edges (end is exclusive) on the axis it's not
+     crossing. The edges are nudged in the direction of motion, so
+     a box exactly on a grid line touches the cell it's moving into,
+     and a corner is tested when both edges cross at once. */
+
+  private int firstCell(double start, int d, int cellSize)
+  { double nudge = (d < 0) ? -SWEEP_EPS : SWEEP_EPS;
+    return (int) Math.floor((start + nudge)/cellSize);
+  }
+
+  private int lastCell(double end, int d, int cellSize)
+  { double nudge = (d > 0) ? SWEEP_EPS : -SWEEP_EPS;
+    return (int) Math.ceil((end + nudge)/cellSize) - 1;
+  }
+
+
+  public int getRowTop(int yWorld)
+  // the world y of the top of the map row containing yWorld
+  {
+    int yMap = pHeight - height;
+    return yMap + Math.floorDiv(yWorld-yMap, imHeight)*imHeight;
+  }  // end of getRowTop()
+
+
+  private boolean rowHasBrick(int row, int first, int last)
+  /* Is there a brick in row row, between the world columns first
+     and last? The columns wrap around the map, so the range may be
+     split in two. The packed row is scanned by the kernels. */
+  {
+    if ((row < 0) || (row >= numRows))
+      return false;
+    if (last - first + 1 >= numCols)
+      return anyInRow(row, 0, numCols-1);
+    int c1 = Math.floorMod(first, numCols);
+    int c2 = c1 + (last - first);
+    if (c2 < numCols)
+      return anyInRow(row, c1, c2);
+    return anyInRow(row, c1, numCols-1) || anyInRow(row, 0, c2 - numCols);
+  }  // end of rowHasBrick()
+
+
+  private boolean anyInRow(int row, int c1, int c2)
+  // is there a brick in row row between the map columns c1 and c2?
+  {
+    int w1 = c1 >> 6;
+    int w2 = c2 >> 6;
+    long firstMask = -1L >>> (c1 & 63);
+    long lastMask = ((c2 & 63) == 63) ? -1L : ~(-1L >>> ((c2 & 63) + 1));
+    return kernels.anyBits(occupiedRows, row*rowWords + w1, w2-w1+1,
+                                                firstMask, lastMask);
+  }  // end of anyInRow()
+
+
+  private boolean isOccupied(int col, int row)
+  /* Is there a brick in the map at the world column col (which
+     wraps around), and row row? There are none above or below
+     the map. */
   {
-    // System.out.println("World: " + xWorld + ", " + yWorld);
+    if ((row < 0) || (row >= numRows))
+      return false;
+    return occupied[ row*numCols + Math.floorMod(col, numCols) ];
+  }  // end of isOccupied()
 
+
+
+  /* worldToMapX() and worldToMapY() convert a world coord (x,y)
+     to a map index tuple. They're separate so no Point object is
+     needed for the result. */
+
+  private int worldToMapX(int xWorld)
+  {
     xWorld = xWorld % width;   // limit to range (width to -width)
     if (xWorld < 0)            // make positive
       xWorld += width;
-    int mapX = (int) (xWorld/imWidth);   // map x-index
+    return (int) (xWorld/imWidth);   // map x-index
+  }  // end of worldToMapX()
 
+
+  private int worldToMapY(int yWorld)
+  {
     yWorld = yWorld - (pHeight-height);  // relative to map
     int mapY = (int) (yWorld/imHeight);  // map y-index
 
     if (yWorld < 0)   // above the top of the bricks
       mapY = mapY-1;  // match to next 'row' up
-
-    // System.out.println("Map: " + mapX + ", " + mapY);
-    return new Point(mapX, mapY);
-  }  // end of worldToMap()
+    return mapY;
+  }  // end of worldToMapY()
 
   
   public int checkBrickBase(int xWorld, int yWorld, int step)
@@ -579,4 +894,86 @@ public class BricksManager
     return step;   // no change
   }  // end of checkBrickTop()
 
+  // ------------------ batched queries ------------------------
+  /* The batch queries answer the same questions as insideBrick(),
+     checkBrickTop() and checkBrickBase(), for the first n entries of
+     arrays of world coordinates, e.g. for all the projectiles or
+     walkers in the game at once. The coordinates are converted to
+     map cells in one pass over the arrays, into scratch arrays
+     which are reused (and only grown when n is bigger than before),
+     and then the cells are looked up in the occupancy grid in a
+     second pass. No bricks columns are searched.
+  */
+
+
+  public void insideBricks(int[] xWorlds, int[] yWorlds, int n, boolean[] inside)
+  // inside[i] is set to insideBrick(xWorlds[i], yWorlds[i])
+  {
+    findCells(xWorlds, yWorlds, n);
+    int cell;
+    for (int i=0; i < n; i++) {
+      cell = cellScratch[i];
+      inside[i] = (cell >= 0) && occupied[cell];
+    }
+  }  // end of insideBricks()
+
+
+  public void checkBrickTops(int[] xWorlds, int[] yWorlds, int n,
+                                        int step, int[] steps)
+  // steps[i] is set to checkBrickTop(xWorlds[i], yWorlds[i], step)
+  {
+    findCells(xWorlds, yWorlds, n);
+    int cell;
+    for (int i=0; i < n; i++) {
+      cell = cellScratch[i];
+      if ((cell >= 0) && occupied[cell])
+        steps[i] = step - offsetScratch[i];    // just touch the top
+      else
+        steps[i] = step;
+    }
+  }  // end of checkBrickTops()
+
+
+  public void checkBrickBases(int[] xWorlds, int[] yWorlds, int n,
+                                        int step, int[] steps)
+  // steps[i] is set to checkBrickBase(xWorlds[i], yWorlds[i], step)
+  {
+    findCells(xWorlds, yWorlds, n);
+    int cell;
+    for (int i=0; i < n; i++) {
+      cell = cellScratch[i];
+      if ((cell >= 0) && occupied[cell])
+        steps[i] = step - (imHeight - offsetScratch[i]);  // just touch the base
+      else
+        steps[i] = step;
+    }
+  }  // end of checkBrickBases()
+
+
+  private void findCells(int[] xWorlds, int[] yWorlds, int n)
+  /* Store the occupancy grid index of the map cell holding each
+     coordinate in cellScratch (-1 if it's above or below the map),
+     and its y offset inside the cell's row in offsetScratch. */
+  {
+    if (n > cellScratch.length) {
+      cellScratch = new int[n];
+      offsetScratch = new int[n];
+    }
+    int yMap = pHeight - height;    // world y of the top of the map
+    int x, y, mapY;
+    for (int i=0; i < n; i++) {
+      x = xWorlds[i] % width;    // as in worldToMapX()
+      if (x < 0)
+        x += width;
+      y = yWorlds[i] - yMap;
+      mapY = Math.floorDiv(y, imHeight);
+      offsetScratch[i] = y - mapY*imHeight;
+      if ((mapY < 0) || (mapY >= numRows))
+        cellScratch[i] = -1;
+      else
+        cellScratch[i] = mapY*numCols + x/imWidth;
+    }
+  }  // end of findCells()
+
+
 }  // end of BricksManager
@@ -0,0 +1,59 @@
+// ByteBufferImageInputStream.java
+
+/* An ImageInputStream which reads directly from a ByteBuffer, such
+   as a slice of a memory-mapped AssetPack.
+
+   ImageIO.read() on an ordinary InputStream buffers everything it
+   reads, in memory or in a temporary file. This stream is seekable
+   by itself, so ImageIO can decode straight from the mapping.
+*/
+
+import java.io.*;
+import java.nio.*;
+import javax.imageio.stream.*;
+
+
+public class ByteBufferImageInputStream extends ImageInputStreamImpl
+{
+  private ByteBuffer buf;
+
+
+  public ByteBufferImageInputStream(ByteBuffer b)
+  {  buf = b;  }
+
+
+  public int read() throws IOException
+  { checkClosed();
+    bitOffset = 0;
+    if (streamPos >= buf.limit())
+      return -1;
+    return buf.get((int) streamPos++) & 0xFF;
+  }  // end of read()
+
+
+  public int read(byte[] bytes, int off, int len) throws IOException
+  { checkClosed();
+    bitOffset = 0;
+    if (len == 0)
+      return 0;
+    if (streamPos >= buf.limit())
+      return -1;
+    len = (int) Math.min(len, buf.limit()-streamPos);
+    buf.position((int) streamPos);
+    buf.get(bytes, off, len);
+    streamPos += len;
+    return len;
+  }  // end of read()
+
+
+  public long length()
+  {  return buf.limit();  }
+
+
+  public void seek(long pos) throws IOException
+  { if (pos > buf.limit())
+      throw new IndexOutOfBoundsException("Seek past end of buffer: " + pos);
+    super.seek(pos);
+  }
+
+}  // end of ByteBufferImageInputStream class
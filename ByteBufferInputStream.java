@@ -0,0 +1,65 @@
+// ByteBufferInputStream.java
+
+/* An InputStream which reads directly from a ByteBuffer, such
+   as a slice of a memory-mapped AssetPack. No bytes are copied
+   except into the caller's array.
+
+   mark() and reset() are supported (with no read limit), which
+   AudioSystem.getAudioInputStream() and MidiSystem.getSequence()
+   require of their input streams.
+*/
+
+import java.io.*;
+import java.nio.*;
+
+
+public class ByteBufferInputStream extends InputStream
+{
+  private ByteBuffer buf;
+
+
+  public ByteBufferInputStream(ByteBuffer b)
+  {  buf = b;  }
+
+
+  public int read()
+  { if (!buf.hasRemaining())
+      return -1;
+    return buf.get() & 0xFF;
+  }
+
+
+  public int read(byte[] bytes, int off, int len)
+  { if (len == 0)
+      return 0;
+    if (!buf.hasRemaining())
+      return -1;
+    len = Math.min(len, buf.remaining());
+    buf.get(bytes, off, len);
+    return len;
+  }  // end of read()
+
+
+  public long skip(long n)
+  { if (n <= 0)
+      return 0;
+    int skipped = (int) Math.min(n, buf.remaining());
+    buf.position( buf.position() + skipped );
+    return skipped;
+  }  // end of skip()
+
+
+  public int available()
+  {  return buf.remaining();  }
+
+
+  public boolean markSupported()
+  {  return true;  }
+
+  public synchronized void mark(int readLimit)
+  {  buf.mark();  }
+
+  public synchronized void reset()
+  {  buf.reset();  }
+
+}  // end of ByteBufferInputStream class
@@ -1,18 +1,17 @@
-
 // ClipInfo.java
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
-/* Load a clip, which can be played, stopped, resumed, looped. 
+/* Load a clip, which can be played, stopped, resumed, looped.
 
-   An object implementing the SoundsWatcher interface 
+   An object implementing the SoundsWatcher interface
    can be notified when the clip loops or stops.
 
    Changes 9th August 2004
      - closed the input stream in loadClip()
 
    Changes 15th September 2004
-     - bug: if the supplied WAV file is less than a second long then 
-            no sound is played. See the bug report at 
+     - bug: if the supplied WAV file is less than a second long then
+            no sound is played. See the bug report at
             http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=5085008
             and SoundPlayer/PlayClipBF.java
 
@@ -20,6 +19,25 @@
                added clip.setFramePosition(0) to update()
 
      added checkDuration() and DecimalFormat df
+
+   Voice pool
+     - the sound is held in a pool of numVoices Clip lines (voices),
+       all opened at load time from a single decoded copy of the
+       sound's PCM data. Each call to play() starts a free voice,
+       so overlapping instances of the same sound can be heard.
+
+     - when every voice is busy, the voice with the lowest priority
+       is stolen, and the oldest voice among those with equal
+       priority. A voice is never stolen by a lower priority play().
+
+     - play() never opens a line, and never waits for a voice.
+
+     - each start of a voice (by play(), resume(), or looping) is
+       numbered with the voice's generation, and a voice's START
+       event records the generation which is running. A STOP event
+       only counts if no newer start has been made since that
+       START, so a late STOP from a sound which has already ended
+       (or been stopped) can't end the sound now in the voice.
 */
 
 import java.io.*;
@@ -27,31 +45,67 @@ import javax.sound.sampled.*;
 import java.text.DecimalFormat;
 
 
-public class ClipInfo implements LineListener
+public class ClipInfo implements SoundClip, LineListener
 {
   private final static String SOUND_DIR = "Sounds/";
 
+  public final static int DEFAULT_PRIORITY = 0;
+
   private String name, filename;
-  private Clip clip = null;
-  private boolean isLooping = false;
   private SoundsWatcher watcher = null;
-  private DecimalFormat df; 
-
-
-  public ClipInfo(String nm, String fnm)
+  private DecimalFormat df;
+
+  // the voice pool; the arrays are indexed by voice number
+  private Clip[] voices = null;
+  private int numVoices;
+  private boolean[] isBusy;      // playing, or paused part way through
+  private boolean[] isLooping;
+  private boolean[] isPaused;
+  private int[] priorities;      // priority of the sound in each voice
+  private long[] startTimes;     // when each voice was last started
+  private int[] generations;     // the number of starts of each voice
+  private int[] startedGens;
+     /* the generation of each voice when its last START event
+        arrived, or -1 once its STOP has been handled */
+
+
+  public ClipInfo(String nm, String fnm, int nVoices)
   { name = nm;
     filename = SOUND_DIR + fnm;
     df = new DecimalFormat("0.#");  // 1 dp
 
+    numVoices = (nVoices < 1) ? 1 : nVoices;
+    isBusy = new boolean[numVoices];
+    isLooping = new boolean[numVoices];
+    isPaused = new boolean[numVoices];
+    priorities = new int[numVoices];
+    startTimes = new long[numVoices];
+    generations = new int[numVoices];
+    startedGens = new int[numVoices];
+    for (int i=0; i < numVoices; i++)
+      startedGens[i] = -1;
+
     loadClip(filename);
   } // end of ClipInfo()
 
 
+  public ClipInfo(String nm, String fnm)
+  {  this(nm, fnm, 1);  }
+
+
   private void loadClip(String fnm)
+  /* Decode the sound once into a byte array, then open each
+     voice's clip using that data. */
   {
     try {
       // link an audio stream to the sound clip's file
-      AudioInputStream stream = AudioSystem.getAudioInputStream(
+      // (or to its bytes in the asset pack)
+      AudioInputStream stream;
+      AssetPack pack = AssetPack.getDefault();
+      if ((pack != null) && pack.contains(fnm))
+        stream = AudioSystem.getAudioInputStream( pack.getStream(fnm) );
+      else
+        stream = AudioSystem.getAudioInputStream(
                           getClass().getResource(fnm) );
 
       AudioFormat format = stream.getFormat();
@@ -59,7 +113,7 @@ public class ClipInfo implements LineListener
       // convert ULAW/ALAW formats to PCM format
       if ( (format.getEncoding() == AudioFormat.Encoding.ULAW) ||
            (format.getEncoding() == AudioFormat.Encoding.ALAW) ) {
-        AudioFormat newFormat = 
+        AudioFormat newFormat =
            new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
                                 format.getSampleRate(),
                                 format.getSampleSizeInBits()*2,
@@ -80,15 +134,18 @@ public class ClipInfo implements LineListener
         return;
       }
 
-      // get clip line resource
-      clip = (Clip) AudioSystem.getLine(info);
+      byte[] data = readAll(stream);
+      stream.close(); // we're done with the input stream
 
-      // listen to clip for events
-      clip.addLineListener(this);
+      // get the clip line resources, and open them with the data
+      Clip[] clips = new Clip[numVoices];
+      for (int i=0; i < numVoices; i++) {
+        clips[i] = (Clip) AudioSystem.getLine(info);
+        clips[i].addLineListener(this);   // listen to clip for events
+        clips[i].open(format, data, 0, data.length);
+      }
+      voices = clips;
 
-      clip.open(stream);    // open the sound file as a clip
-      stream.close(); // we're done with the input stream
-     
       checkDuration();
     } // end of try block
 
@@ -107,78 +164,196 @@ public class ClipInfo implements LineListener
   } // end of loadClip()
 
 
+  private byte[] readAll(AudioInputStream stream) throws IOException
+  // read all the (PCM) data from the stream
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buf = new byte[8192];
+    int n;
+    while ((n = stream.read(buf)) != -1)
+      bytes.write(buf, 0, n);
+    return bytes.toByteArray();
+  }  // end of readAll()
+
+
   private void checkDuration()
   {
     // duration (in secs) of the clip
-	double duration = clip.getMicrosecondLength()/1000000.0;  // new
+	double duration = voices[0].getMicrosecondLength()/1000000.0;  // new
     if (duration <= 1.0) {
       System.out.println("WARNING. Duration <= 1 sec : " + df.format(duration) + " secs");
-      System.out.println("         The clip in " + filename + 
+      System.out.println("         The clip in " + filename +
                          " may not play in J2SE 1.5 -- make it longer");
     }
     else
-      System.out.println(filename + ": Duration: " + df.format(duration) + " secs");
+      System.out.println(filename + ": Duration: " + df.format(duration) +
+                         " secs; " + numVoices + " voice(s)");
   }  // end of checkDuration()
 
 
 
   public void update(LineEvent lineEvent)
-  /* Called when the clip's line detects open, close, start, or
+  /* Called when a voice's line detects open, close, start, or
      stop events. The watcher (if one exists) is notified.
   */
   {
-    // when clip is stopped / reaches its end
-    if (lineEvent.getType() == LineEvent.Type.STOP) {
-      // System.out.println("update() STOP for " + name);
-      clip.stop();
-      clip.setFramePosition(0);  // NEW
-      if (!isLooping) {  // it isn't looping
-        if (watcher != null)
-          watcher.atSequenceEnd(name, SoundsWatcher.STOPPED);
+    if (lineEvent.getType() == LineEvent.Type.START) {
+      synchronized(this) {
+        int v = findVoice( lineEvent.getLine() );
+        if (v != -1)
+          startedGens[v] = generations[v];   // the latest start is running
       }
-      else {      // else play it again
-        clip.start();
-        if (watcher != null)
-          watcher.atSequenceEnd(name, SoundsWatcher.REPLAYED);
+    }
+
+    // when a voice is stopped / reaches its end
+    else if (lineEvent.getType() == LineEvent.Type.STOP) {
+      boolean ended = false;
+      boolean replayed = false;
+      synchronized(this) {
+        int v = findVoice( lineEvent.getLine() );
+        if (v == -1)
+          return;
+        if (startedGens[v] != generations[v])
+          return;   // from an older start; the voice has been restarted
+        startedGens[v] = -1;
+        if (!isBusy[v] || isPaused[v])
+          return;   // stopped by stop() or pause()
+        Clip clip = voices[v];
+        clip.stop();
+        clip.setFramePosition(0);  // NEW
+        if (!isLooping[v]) {  // it isn't looping
+          if (isBusy[v]) {
+            isBusy[v] = false;
+            ended = true;
+          }
+        }
+        else {      // else play it again
+          generations[v]++;
+          clip.start();
+          replayed = true;
+        }
       }
+      // call the watcher outside the lock
+      if ((watcher != null) && ended)
+        watcher.atSequenceEnd(name, SoundsWatcher.STOPPED);
+      else if ((watcher != null) && replayed)
+        watcher.atSequenceEnd(name, SoundsWatcher.REPLAYED);
     }
   } // end of update()
 
 
-  public void close()
-  { if (clip != null) {
-      clip.stop();
-      clip.close();
-    }
+  private int findVoice(Line line)
+  { for (int i=0; i < numVoices; i++)
+      if (voices[i] == line)
+        return i;
+    return -1;
   }
 
 
+  public synchronized void close()
+  { if (voices != null) {
+      for (int i=0; i < numVoices; i++) {
+        voices[i].stop();
+        voices[i].close();
+      }
+    }
+  }  // end of close()
+
+
   public void play(boolean toLoop)
-  { if (clip != null) {
-      isLooping = toLoop;
+  {  play(toLoop, DEFAULT_PRIORITY);  }
+
+
+  public synchronized void play(boolean toLoop, int priority)
+  /* Start the sound in a free voice, or steal a voice if
+     they're all busy. If every busy voice has a higher priority
+     then this request is dropped. */
+  { if (voices != null) {
+      int v = chooseVoice(priority);
+      if (v == -1)
+        return;
+
+      Clip clip = voices[v];
+      if (isBusy[v]) {     // stealing the voice
+        clip.stop();       // its STOP is from an older generation
+        clip.setFramePosition(0);
+      }
+      isBusy[v] = true;
+      isLooping[v] = toLoop;
+      isPaused[v] = false;
+      priorities[v] = priority;
+      startTimes[v] = System.nanoTime();
+      generations[v]++;
       clip.start(); // start playing
     }
-  }
+  }  // end of play()
 
-  public void stop()
-  // stop and reset clip to its start
-  { if (clip != null) {
-      isLooping = false;
-      clip.stop();
-      clip.setFramePosition(0);
+
+  private int chooseVoice(int priority)
+  /* Return a free voice if there is one. Otherwise return the
+     busy voice with the lowest priority, choosing the oldest of
+     those with the same priority. Return -1 if all the voices
+     are busy with higher priority sounds. */
+  {
+    int victim = -1;
+    for (int i=0; i < numVoices; i++) {
+      if (!isBusy[i])
+        return i;
+      if ((victim == -1) || (priorities[i] < priorities[victim]) ||
+          ((priorities[i] == priorities[victim]) &&
+           (startTimes[i] < startTimes[victim])))
+        victim = i;
     }
-  }
+    if (priorities[victim] > priority)
+      return -1;
+    return victim;
+  }  // end of chooseVoice()
 
-  public void pause()
-  // stop the clip at its current playing position
-  { if (clip != null)
-      clip.stop();
-  }
 
-  public void resume()
-  { if (clip != null)
-      clip.start();
-  }
+  public void stop()
+  // stop and reset all the voices to the start
+  { boolean wasBusy = false;
+    synchronized(this) {
+      if (voices != null) {
+        for (int i=0; i < numVoices; i++) {
+          if (isBusy[i]) {
+            wasBusy = true;
+            isBusy[i] = false;
+            isLooping[i] = false;
+            isPaused[i] = false;
+            voices[i].stop();
+            voices[i].setFramePosition(0);
+          }
+        }
+      }
+    }
+    if ((watcher != null) && wasBusy)
+      watcher.atSequenceEnd(name, SoundsWatcher.STOPPED);
+  }  // end of stop()
+
+  public synchronized void pause()
+  // stop the playing voices at their current positions
+  { if (voices != null) {
+      for (int i=0; i < numVoices; i++) {
+        if (isBusy[i] && !isPaused[i]) {
+          isPaused[i] = true;
+          voices[i].stop();
+        }
+      }
+    }
+  }  // end of pause()
+
+  public synchronized void resume()
+  { if (voices != null) {
+      for (int i=0; i < numVoices; i++) {
+        if (isPaused[i]) {
+          isPaused[i] = false;
+          generations[i]++;
+          voices[i].start();
+        }
+      }
+    }
+  }  // end of resume()
 
 
   public void setWatcher(SoundsWatcher sw)
@@ -190,4 +365,7 @@ public class ClipInfo implements LineListener
   public String getName()
   {  return name;  }
 
+  public int getNumVoices()
+  {  return numVoices;  }
+
 }  // end of ClipInfo class
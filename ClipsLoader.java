@@ -9,6 +9,10 @@
    information file which is loaded when ClipsLoader is created.
    The information file is assumed to be in Sounds/.
 
+   A line may also give the number of voices for the clip,
+   which is how many instances of it can play at once
+   (see ClipInfo). The default is DEFAULT_VOICES.
+
    ClipsLoader allows a specified clip to be played, stopped, 
    resumed, looped. A SoundsWatcher can be attached to a clip.
    All of this functionality is handled in the ClipInfo object; 
@@ -16,6 +20,22 @@
 
    It is possible for many clips to play at the same time, since
    each ClipInfo object is responsible for playing its clip.
+   Several instances of the same clip can also overlap, up to
+   the clip's number of voices.
+
+   The play(), stop(), pause(), resume() and close() requests are
+   added to an AudioCommandQueue and return at once; its worker
+   thread makes the actual calls to the clips, which may block in
+   the sound driver. The order of the requests is preserved. If
+   the queue is full, a request is dropped (and counted), and
+   requests made after close() are ignored.
+
+   The clips are created by an AudioBackend, which decides how
+   they are played. The default, LineAudioBackend, makes ClipInfo
+   objects, and streams long sounds with StreamedClip objects.
+   MixerAudioBackend plays them all through a single line, and
+   NullAudioBackend and RecordingAudioBackend don't play them at
+   all. The ClipsLoader methods are the same for all of them.
 */
 
 
@@ -28,35 +48,60 @@ public class ClipsLoader
 {
   private final static String SOUND_DIR = "Sounds/";
 
+  private final static int DEFAULT_VOICES = 3;
+    // number of instances of a clip that can play at once
+
+
   private HashMap clipsMap; 
     /* The key is the clip 'name', the object (value) 
-       is a ClipInfo object */
+       is a SoundClip object made by the backend */
+
+  private AudioBackend backend;
+
+  private AudioCommandQueue commands;
+    // carries out play(), stop() etc. on a separate thread
 
 
   public ClipsLoader(String soundsFnm)
-  { clipsMap = new HashMap();
+  {  this(soundsFnm, new LineAudioBackend());  }
+
+  public ClipsLoader()
+  {  this(new LineAudioBackend());  }
+
+
+  public ClipsLoader(String soundsFnm, AudioBackend ab)
+  { this(ab);
     loadSoundsFile(soundsFnm);
   }
 
-  public ClipsLoader()
-  {  clipsMap = new HashMap();  } 
+  public ClipsLoader(AudioBackend ab)
+  { clipsMap = new HashMap();
+    commands = new AudioCommandQueue();
+    backend = ab;
+  }
 
 
 
   private void loadSoundsFile(String soundsFnm)
   /* The file format are lines of:
-        <name> <filename>         // a single sound file
+        <name> <filename> [ <voices> ]     // a single sound file
      and blank lines and comment lines.
   */
   { 
     String sndsFNm = SOUND_DIR + soundsFnm;
     System.out.println("Reading file: " + sndsFNm);
     try {
-      InputStream in = this.getClass().getResourceAsStream(sndsFNm);
+      InputStream in;
+      AssetPack pack = AssetPack.getDefault();
+      if ((pack != null) && pack.contains(sndsFNm))
+        in = pack.getStream(sndsFNm);
+      else
+        in = this.getClass().getResourceAsStream(sndsFNm);
       BufferedReader br = new BufferedReader( new InputStreamReader(in));
       // BufferedReader br = new BufferedReader( new FileReader(sndsFNm));
       StringTokenizer tokens;
       String line, name, fnm;
+      int numVoices;
       while((line = br.readLine()) != null) {
         if (line.length() == 0)  // blank line
           continue;
@@ -64,12 +109,20 @@ public class ClipsLoader
           continue;
 
         tokens = new StringTokenizer(line);
-        if (tokens.countTokens() != 2)
+        if ((tokens.countTokens() != 2) && (tokens.countTokens() != 3))
           System.out.println("Wrong no. of arguments for " + line);
         else {
           name = tokens.nextToken();
           fnm = tokens.nextToken();
-          load(name, fnm);
+          numVoices = DEFAULT_VOICES;
+          if (tokens.hasMoreTokens()) {
+            try {
+              numVoices = Integer.parseInt( tokens.nextToken() );
+            }
+            catch(NumberFormatException e)
+            { System.out.println("Number of voices is incorrect for " + line);  }
+          }
+          load(name, fnm, numVoices);
         }
       }
       br.close();
@@ -86,12 +139,16 @@ public class ClipsLoader
 
 
   public void load(String name, String fnm)
-  // create a ClipInfo object for name and store it
+  {  load(name, fnm, DEFAULT_VOICES);  }
+
+
+  public void load(String name, String fnm, int numVoices)
+  // create a clip object for name with the backend, and store it
   {
     if (clipsMap.containsKey(name))
       System.out.println( "Error: " + name + "already stored");
     else {
-      clipsMap.put(name, new ClipInfo(name, fnm) );
+      clipsMap.put(name, backend.loadClip(name, fnm, numVoices) );
       System.out.println("-- " + name + "/" + fnm);
     }
   }  // end of load()
@@ -99,50 +156,68 @@ public class ClipsLoader
 
   public void close(String name)
   // close the specified clip
-  {  ClipInfo ci = (ClipInfo) clipsMap.get(name);
+  {  SoundClip ci = (SoundClip) clipsMap.get(name);
      if (ci == null)
        System.out.println( "Error: " + name + "not stored");
      else
-      ci.close();
+      commands.add(AudioCommandQueue.CLOSE, ci, false, 0);
   } // end of close()
 
+
+  public void close()
+  /* Close all the clips, and the backend, after the queued
+     commands have been carried out. */
+  { commands.close();
+    System.out.println( commands.getReport() );
+    Iterator it = clipsMap.values().iterator();
+    while (it.hasNext())
+      ((SoundClip) it.next()).close();
+    backend.close();
+  }  // end of close()
+
  
 
   public void play(String name, boolean toLoop)
   // play (perhaps loop) the specified clip
-  {  ClipInfo ci = (ClipInfo) clipsMap.get(name);
+  {  play(name, toLoop, ClipInfo.DEFAULT_PRIORITY);  }
+
+
+  public void play(String name, boolean toLoop, int priority)
+  /* Play the clip in one of its voices. If all its voices
+     are busy, the lowest priority (and oldest) is stolen. */
+  {  SoundClip ci = (SoundClip) clipsMap.get(name);
      if (ci == null)
        System.out.println( "Error: " + name + "not stored");
      else
-      ci.play(toLoop);
+      commands.add(AudioCommandQueue.PLAY, ci, toLoop, priority);
   } // end of play()
 
 
   public void stop(String name)
   // stop the clip, resetting it to the beginning
-  { ClipInfo ci = (ClipInfo) clipsMap.get(name);
+  { SoundClip ci = (SoundClip) clipsMap.get(name);
     if (ci == null)
       System.out.println( "Error: " + name + "not stored");
     else
-      ci.stop();
+      commands.add(AudioCommandQueue.STOP, ci, false, 0);
   } // end of stop()
 
 
   public void pause(String name)
-  { ClipInfo ci = (ClipInfo) clipsMap.get(name);
+  { SoundClip ci = (SoundClip) clipsMap.get(name);
     if (ci == null)
       System.out.println( "Error: " + name + "not stored");
     else
-      ci.pause();
+      commands.add(AudioCommandQueue.PAUSE, ci, false, 0);
   } // end of pause()
 
 
   public void resume(String name)
-  { ClipInfo ci = (ClipInfo) clipsMap.get(name);
+  { SoundClip ci = (SoundClip) clipsMap.get(name);
     if (ci == null)
       System.out.println( "Error: " + name + "not stored");
     else
-      ci.resume();
+      commands.add(AudioCommandQueue.RESUME, ci, false, 0);
   } // end of resume()
 
 
@@ -152,7 +227,7 @@ public class ClipsLoader
   public void setWatcher(String name, SoundsWatcher sw)
   /* Set up a watcher for the clip. It will be notified when
      the clip loops or stops. */
-  { ClipInfo ci = (ClipInfo) clipsMap.get(name);
+  { SoundClip ci = (SoundClip) clipsMap.get(name);
     if (ci == null)
       System.out.println( "Error: " + name + "not stored");
     else
@@ -0,0 +1,42 @@
+
+// CollisionKernels.java
+
+/* The inner loops of the collision tests, which work on whole
+   arrays of longs or ints at once:
+
+     anyOverlap()  the rows of two CollisionMasks ANDed together
+                   (see CollisionMask.overlaps())
+     anyBits()     a range of a packed bricks occupancy row
+                   (see BricksManager.sweepBox())
+     findCells()   the grid cells covered by the boxes in a
+                   CollisionWorld
+
+     ScalarKernels         plain Java loops
+     VectorKernels         the same loops written with the
+                           jdk.incubator.vector API
+
+   KernelsLoader chooses one of them when the game starts.
+*/
+
+public interface CollisionKernels
+{
+  boolean anyOverlap(long[] a, int aStart, long[] hi, int hiStart,
+                     long[] lo, int loStart, int n, int shift, long colMask);
+    /* Is a[aStart+i] & colMask & ((hi[hiStart+i] << shift) |
+       (lo[loStart+i] >>> (64-shift))) non-zero for any i < n?
+       hi or lo can be null, meaning all 0s; lo isn't used when
+       shift is 0. */
+
+  boolean anyBits(long[] bits, int start, int n, long firstMask, long lastMask);
+    /* Is any bit set in bits[start] to bits[start+n-1], with the
+       first word ANDed with firstMask, and the last with lastMask?
+       (When n is 1, the word is ANDed with both.) */
+
+  void findCells(int[] los, int[] his, int n, int cellSize, int maxCell,
+                                           int[] loCells, int[] hiCells);
+    /* For each i < n, store the cells holding los[i] and his[i]-1
+       (i.e. the cells covered by [los[i], his[i]) ) in loCells[i]
+       and hiCells[i], clamped to 0 to maxCell. */
+
+  String getName();
+}
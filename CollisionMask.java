@@ -0,0 +1,128 @@
+
+// CollisionMask.java
+
+/* The solid pixels of an image, packed one bit per pixel into
+   longs, so two images can be tested for overlapping pixels a
+   word (64 pixels) at a time. A pixel is solid if its alpha is
+   at least ALPHA_LIMIT.
+
+   Each row starts at a new word, and bit 63 of a word (the sign
+   bit) is its leftmost pixel, so shifting a word left moves its
+   pixels to the left. The unused bits at the end of a row are 0.
+   The words are stored a column of words at a time (all the rows'
+   first words, then all their second words, and so on), so the
+   words of neighbouring rows are next to each other.
+
+   overlaps() first rejects images whose bounding boxes don't
+   overlap, and then ANDs the rows where they do, shifting the
+   second image's words so they line up with the first's. It
+   stops at the first shared solid pixel, so it costs little more
+   than a rectangle test when the images do collide. The ANDing
+   is done by a CollisionKernels object (see KernelsLoader), down
+   a column of words at a time, so it can use vector instructions.
+
+   ImagesLoader makes a mask for every image it loads (see
+   getMask()).
+*/
+
+import java.awt.image.*;
+
+
+public class CollisionMask
+{
+  private final static int ALPHA_LIMIT = 128;   // solid if alpha >= this
+
+  private int width, height;
+  private int rowWords;     // longs per row
+  private long[] bits;      // word w of row y is at w*height + y
+
+  private static CollisionKernels kernels = KernelsLoader.getKernels();
+
+
+  public CollisionMask(BufferedImage im)
+  {
+    width = im.getWidth();
+    height = im.getHeight();
+    rowWords = (width + 63) >> 6;
+    bits = new long[rowWords*height];
+
+    int[] row = new int[width];
+    for (int y=0; y < height; y++) {
+      im.getRGB(0, y, width, 1, row, 0, width);
+      for (int x=0; x < width; x++)
+        if ((row[x] >>> 24) >= ALPHA_LIMIT)
+          bits[(x >> 6)*height + y] |= (1L << (63 - (x & 63)));
+    }
+  }  // end of CollisionMask()
+
+
+  public int getWidth()
+  {  return width;  }
+
+  public int getHeight()
+  {  return height;  }
+
+
+  public boolean isSolid(int x, int y)
+  // is the pixel at (x,y) solid? Pixels outside the image aren't.
+  {
+    if ((x < 0) || (x >= width) || (y < 0) || (y >= height))
+      return false;
+    return (bits[(x >> 6)*height + y] & (1L << (63 - (x & 63)))) != 0;
+  }  // end of isSolid()
+
+
+  private long[] wordColumn(int w)
+  // the bits array if there is a word column w, otherwise null (all 0s)
+  {  return ((w >= 0) && (w < rowWords)) ? bits : null;  }
+
+
+
+  public static boolean overlaps(CollisionMask a, int ax, int ay,
+                                 CollisionMask b, int bx, int by)
+  // do a at (ax,ay) and b at (bx,by) share a solid pixel?
+  {  return overlaps(a, ax, ay, 0, 0, a.width, a.height, b, bx, by);  }
+
+
+  public static boolean overlaps(CollisionMask a, int ax, int ay,
+                                 int x1, int y1, int x2, int y2,
+                                 CollisionMask b, int bx, int by)
+  /* Do columns x1 to x2-1 and rows y1 to y2-1 of a, with a at
+     (ax,ay), and b at (bx,by) share a solid pixel? */
+  {
+    // the overlap of the two boxes, relative to a
+    int dx = bx - ax;
+    int dy = by - ay;
+    int left = Math.max(Math.max(x1, 0), dx);
+    int right = Math.min(Math.min(x2, a.width), dx + b.width);
+    int top = Math.max(Math.max(y1, 0), dy);
+    int bottom = Math.min(Math.min(y2, a.height), dy + b.height);
+    if ((left >= right) || (top >= bottom))
+      return false;    // the boxes don't overlap
+
+    int firstWord = left >> 6;
+    int lastWord = (right-1) >> 6;
+    int numRows = bottom - top;
+    long colMask;
+    int bx0, bw, shift;
+    for (int w = firstWord; w <= lastWord; w++) {
+      colMask = -1L;      // keep only the columns from left to right-1
+      if (w == firstWord)
+        colMask &= (-1L >>> (left & 63));
+      if ((w == lastWord) && ((right & 63) != 0))
+        colMask &= ~(-1L >>> (right & 63));
+
+      // b's pixels lined up with a's word w: from b's column bx0
+      bx0 = (w << 6) - dx;
+      bw = bx0 >> 6;      // rounds down for a negative bx0 too
+      shift = bx0 & 63;
+      if (kernels.anyOverlap(a.bits, w*a.height + top,
+              b.wordColumn(bw), bw*b.height + top-dy,
+              b.wordColumn(bw+1), (bw+1)*b.height + top-dy,
+              numRows, shift, colMask))
+        return true;
+    }
+    return false;
+  }  // end of overlaps()
+
+}  // end of CollisionMask class
@@ -0,0 +1,292 @@
+
+// CollisionWorld.java
+
+/* The broad phase of the collision tests between the moving
+   things in the game (jack, the fireballs, and anything added
+   later). Each tick, the bounding boxes of everything active are
+   added to the world, and findPairs() finds the pairs which
+   overlap, without testing every box against every other one.
+
+   The panel is divided into a uniform grid of square cells, and
+   each box is put into every cell it touches (a box outside the
+   panel goes into the nearest cells on the edge). Only the boxes
+   which share a cell are tested against each other.
+   A pair sharing several cells is only tested in one of them:
+   the top-left cell of the cells they share.
+
+   A box belongs to a group (a bit), and has a mask of the groups
+   it collides with, so e.g. fireballs aren't tested against each
+   other. A box with a 0 mask is only tested when another box's
+   mask includes its group, so a cell with lots of fireballs and
+   jack costs one test per fireball, not one per pair.
+
+   The pairs whose boxes overlap are stored, ready for the caller's
+   narrow phase (e.g. testing pixel masks) and response. The
+   counters record the number of pairs tested and the hits.
+
+   The boxes are stored in parallel arrays, one per corner
+   coordinate, so the cells they cover are found for all of them
+   in one pass by a CollisionKernels object (see KernelsLoader).
+   The cells are stored with a counting sort into one array, and
+   all the arrays are reused from tick to tick, growing when they
+   are too small, so a running game doesn't allocate here.
+*/
+
+public class CollisionWorld
+{
+  private final static int START_SIZE = 64;
+
+  private int cellSize;
+  private CollisionKernels kernels = KernelsLoader.getKernels();
+  private int numCols, numRows;
+
+  // the boxes added this tick, indexed by body number
+  private int[] ids = new int[START_SIZE];       // the caller's ids
+  private int[] groups = new int[START_SIZE];
+  private int[] masks = new int[START_SIZE];
+  private int[] x1s = new int[START_SIZE];       // the boxes' corners:
+  private int[] y1s = new int[START_SIZE];       //   (x1,y1) top-left,
+  private int[] x2s = new int[START_SIZE];       //   (x2,y2) bottom-right
+  private int[] y2s = new int[START_SIZE];       //   (exclusive)
+  private int[] col1s = new int[START_SIZE];     // the cells the box
+  private int[] row1s = new int[START_SIZE];     //   touches, from
+  private int[] col2s = new int[START_SIZE];     //   (col1,row1) to
+  private int[] row2s = new int[START_SIZE];     //   (col2,row2)
+  private int numBodies = 0;
+
+  // the grid: cell c's bodies are cellBodies[cellStarts[c]] to
+  // cellBodies[cellStarts[c+1]-1]
+  private int[] cellStarts;
+  private int[] cellFill;      // where the next body goes in each cell
+  private int[] cellBodies = new int[START_SIZE];
+
+  // the overlapping pairs found by findPairs(), as body numbers
+  private int[] pairs = new int[2*START_SIZE];
+  private int numPairs = 0;
+
+  // counters
+  private int pairsTested = 0, hits = 0;     // in the last findPairs()
+  private long totalTested = 0, totalHits = 0;
+
+
+
+  public CollisionWorld(int w, int h, int cellSize)
+  // a grid of cellSize*cellSize cells covering a w*h panel
+  {
+    this.cellSize = cellSize;
+    numCols = (w + cellSize-1)/cellSize;
+    numRows = (h + cellSize-1)/cellSize;
+    if (numCols < 1)
+      numCols = 1;
+    if (numRows < 1)
+      numRows = 1;
+    cellStarts = new int[numCols*numRows + 1];
+    cellFill = new int[numCols*numRows];
+  }  // end of CollisionWorld()
+
+
+  public void clear()
+  // forget the boxes and pairs, ready for the next tick
+  {  numBodies = 0;
+     numPairs = 0;
+  }
+
+
+  public int add(int id, int group, int mask, int x, int y, int w, int h)
+  /* Add the w*h box at (x,y), belonging to group, and colliding
+     with the groups in mask. id is returned by getId(), so the
+     caller can tell what the box belongs to. Return the box's
+     body number. */
+  {
+    if (numBodies == ids.length)
+      growBodies();
+    int b = numBodies;
+    ids[b] = id;
+    groups[b] = group;
+    masks[b] = mask;
+    x1s[b] = x;      y1s[b] = y;
+    x2s[b] = x+w;    y2s[b] = y+h;
+    numBodies++;
+    return b;
+  }  // end of add()
+
+
+  private void growBodies()
+  { int size = 2*ids.length;
+    ids = grow(ids, size, numBodies);
+    groups = grow(groups, size, numBodies);
+    masks = grow(masks, size, numBodies);
+    x1s = grow(x1s, size, numBodies);
+    y1s = grow(y1s, size, numBodies);
+    x2s = grow(x2s, size, numBodies);
+    y2s = grow(y2s, size, numBodies);
+    col1s = grow(col1s, size, numBodies);
+    row1s = grow(row1s, size, numBodies);
+    col2s = grow(col2s, size, numBodies);
+    row2s = grow(row2s, size, numBodies);
+  }  // end of growBodies()
+
+
+  private int[] grow(int[] arr, int size, int used)
+  // a copy of the first used elements of arr, in an array of size
+  { int[] newArr = new int[size];
+    System.arraycopy(arr, 0, newArr, 0, used);
+    return newArr;
+  }
+
+
+
+  // --------------------- finding the pairs -------------------------
+
+
+  public int findPairs()
+  /* Put the boxes into the grid, and find the pairs which overlap.
+     Return the number of pairs found. */
+  {
+    fillGrid();
+    numPairs = 0;
+    pairsTested = 0;
+    hits = 0;
+
+    int numCells = numCols*numRows;
+    int start, end, a, b;
+    for (int c=0; c < numCells; c++) {
+      start = cellStarts[c];
+      end = cellStarts[c+1];
+      for (int i=start; i < end; i++) {
+        a = cellBodies[i];
+        if (masks[a] == 0)
+          continue;     // b's test is started by the other box
+        for (int j=start; j < end; j++) {
+          b = cellBodies[j];
+          if ((b == a) || ((masks[a] & groups[b]) == 0))
+            continue;
+          if (((masks[b] & groups[a]) != 0) && (b < a))
+            continue;     // both collide with each other; test it once, from b
+          if (isFirstSharedCell(a, b, c))
+            testPair(a, b);
+        }
+      }
+    }
+    totalTested += pairsTested;
+    totalHits += hits;
+    return numPairs;
+  }  // end of findPairs()
+
+
+  private void fillGrid()
+  /* Find the cells each body touches (with the kernels, which do
+     the same division for every body), and sort the bodies into
+     those cells (a counting sort). */
+  {
+    kernels.findCells(x1s, x2s, numBodies, cellSize, numCols-1, col1s, col2s);
+    kernels.findCells(y1s, y2s, numBodies, cellSize, numRows-1, row1s, row2s);
+
+    int numCells = numCols*numRows;
+    for (int c=0; c <= numCells; c++)
+      cellStarts[c] = 0;
+
+    // count the bodies in each cell (in cellStarts[c+1])
+    int total = 0;
+    for (int b=0; b < numBodies; b++) {
+      for (int row = row1s[b]; row <= row2s[b]; row++)
+        for (int col = col1s[b]; col <= col2s[b]; col++)
+          cellStarts[row*numCols + col + 1]++;
+      total += (col2s[b]-col1s[b]+1) * (row2s[b]-row1s[b]+1);
+    }
+    if (total > cellBodies.length)
+      cellBodies = new int[Math.max(total, 2*cellBodies.length)];
+
+    // turn the counts into start positions
+    for (int c=0; c < numCells; c++) {
+      cellStarts[c+1] += cellStarts[c];
+      cellFill[c] = cellStarts[c];
+    }
+
+    // store the bodies
+    int c;
+    for (int b=0; b < numBodies; b++) {
+      for (int row = row1s[b]; row <= row2s[b]; row++)
+        for (int col = col1s[b]; col <= col2s[b]; col++) {
+          c = row*numCols + col;
+          cellBodies[cellFill[c]++] = b;
+        }
+    }
+  }  // end of fillGrid()
+
+
+  private boolean isFirstSharedCell(int a, int b, int c)
+  // is cell c the top-left cell which both a and b touch?
+  {
+    int col = Math.max(col1s[a], col1s[b]);
+    int row = Math.max(row1s[a], row1s[b]);
+    return (row*numCols + col == c);
+  }  // end of isFirstSharedCell()
+
+
+  private void testPair(int a, int b)
+  // store the pair (a,b) if their boxes overlap
+  {
+    pairsTested++;
+    if ((x1s[a] < x2s[b]) && (x1s[b] < x2s[a]) &&
+        (y1s[a] < y2s[b]) && (y1s[b] < y2s[a])) {
+      hits++;
+      if (2*numPairs == pairs.length)
+        pairs = grow(pairs, 2*pairs.length, 2*numPairs);
+      pairs[2*numPairs] = a;
+      pairs[2*numPairs + 1] = b;
+      numPairs++;
+    }
+  }  // end of testPair()
+
+
+
+  // ------------------------- accessors -------------------------
+
+  public int getNumBodies()
+  {  return numBodies;  }
+
+  public int getNumPairs()
+  {  return numPairs;  }
+
+  public int getPairA(int i)
+  // the body in pair i whose mask includes the other's group
+  {  return pairs[2*i];  }
+
+  public int getPairB(int i)
+  {  return pairs[2*i + 1];  }
+
+  public int getId(int body)
+  {  return ids[body];  }
+
+  public int getGroup(int body)
+  {  return groups[body];  }
+
+  public int getX(int body)
+  {  return x1s[body];  }
+
+  public int getY(int body)
+  {  return y1s[body];  }
+
+  public int getWidth(int body)
+  {  return x2s[body] - x1s[body];  }
+
+  public int getHeight(int body)
+  {  return y2s[body] - y1s[body];  }
+
+
+  public int getPairsTested()
+  // the number of pairs whose boxes were tested by the last findPairs()
+  {  return pairsTested;  }
+
+  public int getHits()
+  // the number of those which overlapped
+  {  return hits;  }
+
+  public long getTotalTested()
+  {  return totalTested;  }
+
+  public long getTotalHits()
+  {  return totalHits;  }
+
+}  // end of CollisionWorld class
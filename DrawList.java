@@ -0,0 +1,65 @@
+
+// DrawList.java
+
+/* A list of the image draws made with a RasterBlitter in one
+   frame, recorded instead of being carried out, so a
+   BandCompositor can carry them out later, split into bands.
+
+   Each draw is a rectangle of a BlitImage and where it goes in the
+   destination, stored in parallel arrays. The arrays grow when
+   they're full, but are reused from frame to frame (clear() only
+   resets the count), so a running game doesn't allocate here.
+*/
+
+public class DrawList
+{
+  private final static int START_SIZE = 256;
+
+  private BlitImage[] images = new BlitImage[START_SIZE];
+  private int[] coords = new int[6*START_SIZE];
+       // for each draw: sx, sy, dx, dy, w, h
+  private int numDraws = 0;
+
+
+  public void clear()
+  // forget the draws, ready for the next frame
+  { for (int i=0; i < numDraws; i++)
+      images[i] = null;
+    numDraws = 0;
+  }  // end of clear()
+
+
+  public void add(BlitImage src, int sx, int sy, int dx, int dy, int w, int h)
+  {
+    if (numDraws == images.length)
+      grow();
+    images[numDraws] = src;
+    int i = 6*numDraws;
+    coords[i] = sx;     coords[i+1] = sy;
+    coords[i+2] = dx;   coords[i+3] = dy;
+    coords[i+4] = w;    coords[i+5] = h;
+    numDraws++;
+  }  // end of add()
+
+
+  private void grow()
+  { BlitImage[] newImages = new BlitImage[2*images.length];
+    System.arraycopy(images, 0, newImages, 0, numDraws);
+    images = newImages;
+    int[] newCoords = new int[2*coords.length];
+    System.arraycopy(coords, 0, newCoords, 0, 6*numDraws);
+    coords = newCoords;
+  }  // end of grow()
+
+
+  public int size()
+  {  return numDraws;  }
+
+  public BlitImage getImage(int i)
+  {  return images[i];  }
+
+  public int[] getCoords()
+  // the draws' coordinates: draw i's are at 6*i to 6*i+5
+  {  return coords;  }
+
+}  // end of DrawList class
@@ -0,0 +1,166 @@
+
+// ExplosionPool.java
+
+/* A pool of explosion animations, so several can be shown at
+   once (e.g. when lots of fireballs hit jack together).
+
+   The explosions all play the same non-repeating AnimClip of the
+   images of a 'n', 's' or 'g' image file, as loaded by
+   ImagesLoader, taking seqDuration secs for the whole sequence.
+   Each Explosion only has its own position, and the AnimClock
+   tick it started at, so its image is one lookup in the clip's
+   frame table. When it gets to the last image it is finished,
+   and the watcher's sequenceEnded() is called.
+
+   All the Explosions are created with the pool, and the ones
+   running are kept packed at the front of the explosions array,
+   so update() and draw() only visit those. A finished one is
+   swapped with the last running one. If every Explosion is
+   running when spawn() is called, the oldest is restarted, so
+   no explosion is ignored.
+
+   Nothing is allocated after the pool has been created.
+*/
+
+import java.awt.*;
+import java.awt.image.*;
+
+
+public class ExplosionPool
+{
+  private String imName;
+  private AnimClip clip;           // null if there are no images
+  private int imWidth, imHeight;   // the size of the first image
+
+  private Explosion[] explosions;   // the running ones are at the front
+  private int numActive = 0;
+
+  private ImagesPlayerWatcher watcher = null;
+
+
+  public ExplosionPool(String nm, int ap, double seqDuration,
+                                 int capacity, ImagesLoader imsLd)
+  {
+    imName = nm;
+    if (!imsLd.isLoaded(imName))
+      System.out.println(imName + " is not known by the ImagesLoader");
+    else {
+      clip = imsLd.getClip(imName, ap, seqDuration, false);
+      BufferedImage im = clip.getImage(0);
+      imWidth = im.getWidth();
+      imHeight = im.getHeight();
+    }
+
+    explosions = new Explosion[capacity];
+    for (int i=0; i < capacity; i++)
+      explosions[i] = new Explosion();
+  }  // end of ExplosionPool()
+
+
+  public void setWatcher(ImagesPlayerWatcher w)
+  // w's sequenceEnded() is called when each explosion finishes
+  {  watcher = w;  }
+
+
+
+  // ---------------------- spawning -----------------------------
+
+
+  public void spawn(int xc, int yc)
+  /* Start an explosion centered on (xc,yc). If they're all
+     running, the one which has been running longest is restarted. */
+  {
+    if ((clip == null) || (explosions.length == 0))
+      return;
+    Explosion e;
+    if (numActive < explosions.length)
+      e = explosions[numActive++];
+    else
+      e = explosions[ findOldest() ];
+    e.x = xc - imWidth/2;
+    e.y = yc - imHeight/2;
+    e.startTick = AnimClock.getTick();
+  }  // end of spawn()
+
+
+  private int findOldest()
+  // the index of the running explosion which started first
+  {
+    int oldest = 0;
+    for (int i=1; i < numActive; i++)
+      if (explosions[i].startTick < explosions[oldest].startTick)
+        oldest = i;
+    return oldest;
+  }  // end of findOldest()
+
+
+  public void clear()
+  // stop all the explosions, without calling the watcher
+  {  numActive = 0;  }
+
+
+
+  // ------------------ batch update and draw ---------------------
+
+
+  public void update()
+  /* Remove the running explosions which have reached their last
+     image by the AnimClock's current tick, and report them to the
+     watcher. */
+  {
+    long now = AnimClock.getTick();
+    int i = 0;
+    Explosion e;
+    while (i < numActive) {
+      e = explosions[i];
+      if (clip.isFinished(now - e.startTick)) {
+        numActive--;     // swap the last running one into i
+        explosions[i] = explosions[numActive];
+        explosions[numActive] = e;
+        if (watcher != null)
+          watcher.sequenceEnded(imName);
+      }
+      else
+        i++;
+    }
+  }  // end of update()
+
+
+  public void draw(Graphics g, RasterBlitter blitter)
+  // draw every running explosion, with blitter if it isn't null
+  {
+    long now = AnimClock.getTick();
+    Explosion e;
+    BufferedImage im;
+    for (int i=0; i < numActive; i++) {
+      e = explosions[i];
+      im = clip.getImage(now - e.startTick);
+      if (blitter != null)
+        blitter.draw(im, e.x, e.y);
+      else
+        g.drawImage(im, e.x, e.y, null);
+    }
+  }  // end of draw()
+
+
+
+  // ------------------------- accessors -------------------------
+
+  public int getNumActive()
+  {  return numActive;  }
+
+  public int getCapacity()
+  {  return explosions.length;  }
+
+
+
+  // ---------------------------------------------------------
+
+  private static class Explosion
+  // one explosion's position and start
+  {
+    int x, y;            // top-left corner of its images
+    long startTick;      // the AnimClock tick it started at
+  }
+
+}  // end of ExplosionPool class
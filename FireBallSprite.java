@@ -5,6 +5,8 @@
 /* A fireball starts at the lower right hand side of the panel,
    and travels straight across to the left (at varying speeds).
    If it hits 'jack', it explodes (with a suitable explosion sound).
+   The hit is found by JackPanel's CollisionWorld, which calls
+   hitJack().
 
    A fireball that has left the left hand side, or exploded, is
    reused.
@@ -20,15 +22,12 @@ public class FireBallSprite extends Sprite
   private static final int STEP_OFFSET = 2;
 
   private JackPanel jp;    // tell JackPanel about colliding with jack
-  private JumperSprite jack;
 
 
-  public FireBallSprite(int w, int h, ImagesLoader imsLd,
-                               JackPanel jp, JumperSprite j) 
+  public FireBallSprite(int w, int h, ImagesLoader imsLd, JackPanel jp)
   { super( w, h/2, w, h, imsLd, "fireball");  
         // the ball is positioned in the middle at the panel's rhs
     this.jp = jp;
-    jack = j;
     initPosition();
   } // end of FireBallSprite()
 
@@ -53,26 +52,20 @@ public class FireBallSprite extends Sprite
 
 
   public void updateSprite() 
-  { hasHitJack();
-    goneOffScreen();
+  { goneOffScreen();
     super.updateSprite();
   }
 
 
-  private void hasHitJack()
-  /* If the ball has hit jack, tell JackPanel (which will
-     display an explosion and play a clip), and begin again.
+  public void hitJack()
+  /* Called by JackPanel when the ball has hit jack. Tell JackPanel
+     (which will display an explosion and play a clip), and begin again.
   */
   { 
-    Rectangle jackBox = jack.getMyRectangle();
-    jackBox.grow(-jackBox.width/3, 0);   // make jack's bounded box thinner
-
-    if (jackBox.intersects( getMyRectangle() )) {    // jack collision?
-      jp.showExplosion(locx, locy+getHeight()/2);  
-             // tell JackPanel, supplying it with a hit coordinate
-      initPosition();
-    }
-  } // end of hasHitJack()
+    jp.showExplosion(locx, locy+getHeight()/2);  
+           // tell JackPanel, supplying it with a hit coordinate
+    initPosition();
+  } // end of hitJack()
 
 
   private void goneOffScreen()
@@ -0,0 +1,198 @@
+
+// HudLayer.java
+
+/* The heads-up display of the number of hits and the time spent
+   playing, which JackPanel draws over the game every frame.
+
+   Laying out and rasterizing text with drawString() is slow, so
+   the HUD is kept in a small transparent image, and drawn with a
+   single drawImage(). The image is only redrawn by update() when
+   the number of hits or the number of seconds changes.
+
+   Even then, no text is laid out: the labels ("Hits: ", "/20",
+   "Time: ", " secs") are rendered once into images, and numbers
+   are copied from a strip of pre-rendered digit glyphs.
+
+   The game-over message is cached in the same way, in its own
+   image, which is redrawn only when the score changes.
+*/
+
+import java.awt.*;
+import java.awt.image.*;
+
+
+public class HudLayer
+{
+  private final static int LINE_GAP = 25;   // between the baselines
+  private final static int MAX_DIGITS = 10;   // of an int
+
+  private BufferedImage hudIm;     // the cached HUD
+  private Graphics2D hudG;
+  private int ascent;
+
+  // the labels, rendered once
+  private BufferedImage hitsIm, maxHitsIm, timeIm, secsIm, gameOverLabelIm;
+
+  // the digit glyphs, in a single row: 0 to 9
+  private BufferedImage digitsIm;      // in the HUD's colour
+  private BufferedImage msgDigitsIm;   // in the game-over message's colour
+  private int cellWidth, cellHeight;
+  private int[] digitWidths = new int[10];   // advance of each digit
+  private int[] digits = new int[MAX_DIGITS];   // used by drawNumber()
+
+  // the values shown in hudIm
+  private int shownHits = -1, shownSecs = -1;
+
+  // the cached game-over message
+  private BufferedImage gameOverIm;
+  private Graphics2D gameOverG;
+  private int gameOverWidth;     // of the message in gameOverIm
+  private int shownScore = -1;
+
+
+  public HudLayer(Font font, Color hudColour, Color msgColour, int maxHits)
+  {
+    FontMetrics fm = getMetrics(font);
+    ascent = fm.getAscent();
+    cellHeight = fm.getAscent() + fm.getDescent();
+
+    cellWidth = 0;
+    for (int i=0; i < 10; i++) {
+      digitWidths[i] = fm.charWidth((char)('0'+i));
+      cellWidth = Math.max(cellWidth, digitWidths[i]);
+    }
+    digitsIm = makeDigits(font, hudColour);
+    msgDigitsIm = makeDigits(font, msgColour);
+
+    hitsIm = makeTextImage("Hits: ", font, hudColour);
+    maxHitsIm = makeTextImage("/" + maxHits, font, hudColour);
+    timeIm = makeTextImage("Time: ", font, hudColour);
+    secsIm = makeTextImage(" secs", font, hudColour);
+    gameOverLabelIm = makeTextImage("Game Over. Your score: ", font, msgColour);
+
+    int width = Math.max(hitsIm.getWidth() + 3*cellWidth + maxHitsIm.getWidth(),
+                  timeIm.getWidth() + MAX_DIGITS*cellWidth + secsIm.getWidth());
+    hudIm = new BufferedImage(width, cellHeight + LINE_GAP,
+                                  BufferedImage.TYPE_INT_ARGB);
+    hudG = hudIm.createGraphics();
+
+    gameOverIm = new BufferedImage(gameOverLabelIm.getWidth() + MAX_DIGITS*cellWidth,
+                                 cellHeight, BufferedImage.TYPE_INT_ARGB);
+    gameOverG = gameOverIm.createGraphics();
+  }  // end of HudLayer()
+
+
+  private static FontMetrics getMetrics(Font font)
+  { BufferedImage im = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2 = im.createGraphics();
+    FontMetrics fm = g2.getFontMetrics(font);
+    g2.dispose();
+    return fm;
+  }  // end of getMetrics()
+
+
+  private BufferedImage makeDigits(Font font, Color colour)
+  // render the digits 0 to 9 into a strip of equal sized cells
+  {
+    BufferedImage im = new BufferedImage(10*cellWidth, cellHeight,
+                                      BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2 = im.createGraphics();
+    g2.setFont(font);
+    g2.setColor(colour);
+    for (int i=0; i < 10; i++)
+      g2.drawString("" + i, i*cellWidth, ascent);
+    g2.dispose();
+    return im;
+  }  // end of makeDigits()
+
+
+  private static BufferedImage makeTextImage(String msg, Font font, Color colour)
+  // a transparent image just big enough for msg, drawn in font
+  {
+    FontMetrics fm = getMetrics(font);
+    int width = Math.max(fm.stringWidth(msg), 1);
+    BufferedImage im = new BufferedImage(width, fm.getAscent() + fm.getDescent(),
+                                            BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2 = im.createGraphics();
+    g2.setFont(font);
+    g2.setColor(colour);
+    g2.drawString(msg, 0, fm.getAscent());
+    g2.dispose();
+    return im;
+  }  // end of makeTextImage()
+
+
+
+  // ----------------- updating and drawing ----------------------
+
+
+  public void update(int numHits, int secs)
+  // redraw the HUD image if either value has changed
+  {
+    if ((numHits == shownHits) && (secs == shownSecs))
+      return;
+    shownHits = numHits;
+    shownSecs = secs;
+
+    clear(hudG, hudIm);
+    hudG.drawImage(hitsIm, 0, 0, null);
+    int x = drawNumber(hudG, digitsIm, numHits, hitsIm.getWidth(), 0);
+    hudG.drawImage(maxHitsIm, x, 0, null);
+
+    hudG.drawImage(timeIm, 0, LINE_GAP, null);
+    x = drawNumber(hudG, digitsIm, secs, timeIm.getWidth(), LINE_GAP);
+    hudG.drawImage(secsIm, x, LINE_GAP, null);
+  }  // end of update()
+
+
+  private void clear(Graphics2D g2, BufferedImage im)
+  // make the image transparent
+  { g2.setComposite(AlphaComposite.Clear);
+    g2.fillRect(0, 0, im.getWidth(), im.getHeight());
+    g2.setComposite(AlphaComposite.SrcOver);
+  }  // end of clear()
+
+
+  private int drawNumber(Graphics2D g2, BufferedImage strip, int n, int x, int y)
+  /* Copy the digits of n from the glyph strip to (x,y) using g2,
+     and return the x-coord after the last one. */
+  {
+    if (n < 0)
+      n = 0;    // no minus glyph
+    int numDigits = 0;
+    do {
+      digits[numDigits++] = n % 10;
+      n = n / 10;
+    } while (n > 0);
+
+    int d;
+    for (int i=numDigits-1; i >= 0; i--) {
+      d = digits[i];
+      g2.drawImage(strip, x, y, x+cellWidth, y+cellHeight,
+                     d*cellWidth, 0, (d+1)*cellWidth, cellHeight, null);
+      x += digitWidths[d];
+    }
+    return x;
+  }  // end of drawNumber()
+
+
+  public void draw(Graphics g, int x, int y)
+  // draw the HUD with the first line's baseline at (x,y)
+  {  g.drawImage(hudIm, x, y-ascent, null);  }
+
+
+  public void drawGameOver(Graphics g, int score, int xCenter, int y)
+  /* Draw the game-over message, centered on xCenter, with its
+     baseline at y. Its image is redrawn if the score has changed. */
+  {
+    if (score != shownScore) {
+      shownScore = score;
+      clear(gameOverG, gameOverIm);
+      gameOverG.drawImage(gameOverLabelIm, 0, 0, null);
+      gameOverWidth = drawNumber(gameOverG, msgDigitsIm, score,
+                                      gameOverLabelIm.getWidth(), 0);
+    }
+    g.drawImage(gameOverIm, xCenter - gameOverWidth/2, y-ascent, null);
+  }  // end of drawGameOver()
+
+}  // end of HudLayer class
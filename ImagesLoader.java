@@ -34,6 +34,15 @@
 
     The images are stored as BufferedImage objects, so they will be 
     manipulated as 'managed' images by the JVM (when possible).
+
+    A CollisionMask of each image's solid pixels is made when it
+    is loaded, for pixel-accurate collision tests (see getMask()).
+    The animations of the images are AnimClips, which are made
+    once and shared (see getClip()).
+
+    In a headless JVM (e.g. when benchmarking) there is no screen
+    device, so plain INT_RGB / INT_ARGB images are made instead of
+    ones compatible with the screen.
 */
 
 
@@ -57,6 +66,14 @@ public class ImagesLoader
        ArrayList of filename prefixes for the group. This is used to 
        access a group image by its 'g' name and filename. */
 
+  private HashMap masksMap;
+    /* The key is a BufferedImage, the object is its CollisionMask,
+       made when the image is loaded. */
+  private HashMap clipsMap;
+    /* The key is the filename prefix, the object is an ArrayList
+       of the AnimClips of its images made by getClip(), one for
+       each timing (period, duration, and repeating or not). */
+
   private GraphicsConfiguration gc;
 
 
@@ -74,12 +91,29 @@ public class ImagesLoader
   {
     imagesMap = new HashMap();
     gNamesMap = new HashMap();
+    masksMap = new HashMap();
+    clipsMap = new HashMap();
 
-    GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-    gc = ge.getDefaultScreenDevice().getDefaultConfiguration();
+    if (GraphicsEnvironment.isHeadless())
+      gc = null;    // no screen, see makeImage()
+    else {
+      GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
+      gc = ge.getDefaultScreenDevice().getDefaultConfiguration();
+    }
   }  // end of initLoader()
 
 
+  private BufferedImage makeImage(int width, int height, int transparency)
+  // a blank image compatible with the screen, if there is one
+  {
+    if (gc != null)
+      return gc.createCompatibleImage(width, height, transparency);
+    if (transparency == Transparency.OPAQUE)
+      return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+  }  // end of makeImage()
+
+
   private void loadImagesFile(String fnm)
   /* Formats:
         o <fnm>                     // a single image
@@ -93,7 +127,12 @@ public class ImagesLoader
     String imsFNm = IMAGE_DIR + fnm;
     System.out.println("Reading file: " + imsFNm);
     try {
-      InputStream in = this.getClass().getResourceAsStream(imsFNm);
+      InputStream in;
+      AssetPack pack = AssetPack.getDefault();
+      if ((pack != null) && pack.contains(imsFNm))
+        in = pack.getStream(imsFNm);
+      else
+        in = this.getClass().getResourceAsStream(imsFNm);
       BufferedReader br = new BufferedReader( new InputStreamReader(in));
       // BufferedReader br = new BufferedReader( new FileReader(imsFNm));
       String line;
@@ -156,6 +195,7 @@ public class ImagesLoader
     if (bi != null) {
       ArrayList imsList = new ArrayList();
       imsList.add(bi);
+      addMasks(imsList);
       imagesMap.put(name, imsList);
       System.out.println("  Stored " + name + "/" + fnm);
       return true;
@@ -272,8 +312,10 @@ public class ImagesLoader
 
     if (loadCount == 0)
       System.out.println("No images loaded for " + prefix);
-    else 
+    else {
+      addMasks(imsList);
       imagesMap.put(prefix, imsList);
+    }
 
     return loadCount;
   }  // end of loadNumImages()
@@ -336,8 +378,10 @@ public class ImagesLoader
 
     if (loadCount == 0)
       System.out.println("No images loaded for " + name);
-    else 
+    else {
+      addMasks(imsList);
       imagesMap.put(name, imsList);
+    }
 
     return loadCount;
   }  // end of loadStripImages()
@@ -411,6 +455,7 @@ public class ImagesLoader
     if (loadCount == 0)
       System.out.println("No images loaded for " + name);
     else {
+      addMasks(imsList);
       imagesMap.put(name, imsList);
       gNamesMap.put(name, nms);
     }
@@ -565,6 +610,48 @@ public class ImagesLoader
   } // end of numImages()
 
 
+  public CollisionMask getMask(BufferedImage im)
+  // return the collision mask of a loaded image, or null
+  {  return (CollisionMask) masksMap.get(im);  }
+
+
+  public AnimClip getClip(String name, int animPeriod, double seqDuration,
+                                               boolean isRepeating)
+  /* Return an AnimClip of the images stored under name. A clip is
+     kept for each timing asked for, and returned whenever that
+     timing is asked for again, so the sprites using name's images
+     with the same timing share one clip. A name can be used with
+     several timings without clips being remade. */
+  {
+    ArrayList clips = (ArrayList) clipsMap.get(name);
+    if (clips == null) {
+      clips = new ArrayList();
+      clipsMap.put(name, clips);
+    }
+
+    AnimClip clip;
+    for (int i=0; i < clips.size(); i++) {   // an index, so no Iterator
+      clip = (AnimClip) clips.get(i);
+      if (clip.matches(animPeriod, seqDuration, isRepeating))
+        return clip;
+    }
+    clip = new AnimClip(name, animPeriod, seqDuration, isRepeating, this);
+    clips.add(clip);
+    return clip;
+  }  // end of getClip()
+
+
+  private void addMasks(ArrayList imsList)
+  // make the collision masks for the images in imsList
+  {
+    BufferedImage im;
+    for (int i=0; i < imsList.size(); i++) {
+      im = (BufferedImage) imsList.get(i);
+      masksMap.put(im, new CollisionMask(im));
+    }
+  }  // end of addMasks()
+
+
   // ------------------- Image Input ------------------
 
   /* There are three versions of loadImage() here! They use:
@@ -579,18 +666,34 @@ public class ImagesLoader
    /* Load the image from <fnm>, returning it as a BufferedImage
       which is compatible with the graphics device being used.
       Uses ImageIO.
+
+      The image is decoded straight from the asset pack's mapping
+      if it is in the pack.
    */
    {
      try {
-       BufferedImage im =  ImageIO.read( 
-                      getClass().getResource(IMAGE_DIR + fnm) );
+       BufferedImage im;
+       AssetPack pack = AssetPack.getDefault();
+       if ((pack != null) && pack.contains(IMAGE_DIR + fnm))
+         im = ImageIO.read( pack.getImageStream(IMAGE_DIR + fnm) );
+       else {
+         java.net.URL url = getClass().getResource(IMAGE_DIR + fnm);
+         if (url == null) {
+           System.out.println("No image file: " + IMAGE_DIR + fnm);
+           return null;
+         }
+         im = ImageIO.read(url);
+       }
+       if (im == null) {
+         System.out.println("Unreadable image file: " + IMAGE_DIR + fnm);
+         return null;
+       }
        // An image returned from ImageIO in J2SE <= 1.4.2 is 
        // _not_ a managed image, but is after copying!
 
        int transparency = im.getColorModel().getTransparency();
-       BufferedImage copy =  gc.createCompatibleImage(
-                                im.getWidth(), im.getHeight(),
-		                        transparency );
+       BufferedImage copy =  makeImage(im.getWidth(), im.getHeight(),
+		                               transparency );
        // create a graphics context
        Graphics2D g2d = copy.createGraphics();
        // g2d.setComposite(AlphaComposite.Src);
@@ -728,7 +831,7 @@ public class ImagesLoader
 
     // each BufferedImage from the strip file is stored in strip[]
     for (int i=0; i < number; i++) {
-      strip[i] =  gc.createCompatibleImage(imWidth, height, transparency);
+      strip[i] =  makeImage(imWidth, height, transparency);
        
       // create a graphics context
       stripGC = strip[i].createGraphics();
@@ -17,8 +17,10 @@
    called. The intention is that updateTick() will be called periodically
    from the update() method in the top-level animation framework.
 
-   The current animation time is calculated when updateTick()
-   is called, and used to calculate imPosition, imPosition
+   The images shown are looked up in an AnimClip's frame table
+   (shared with anything else animating the same images with the
+   same timing; see ImagesLoader.getClip()), using the number of
+   updateTick() calls since the start. imPosition
    specifies which image should be returned when getCurrentImage() 
    is called.
 
@@ -38,16 +40,9 @@ public class ImagesPlayer
 {
   private String imName;
   private boolean isRepeating, ticksIgnored;
-  private ImagesLoader imsLoader;
 
-  private int animPeriod;
-         // period used by animation loop (in ms)
-  private long animTotalTime;
-
-  private int showPeriod;     
-         // period the current image is shown (in ms)
-  private double seqDuration;   
-         // total duration of the entire image sequence (in secs)
+  private AnimClip clip;      // the images' frame table
+  private long ticks;         // updates since the start of the sequence
 
   private int numImages;
   private int imPosition;     // position of current displayable image
@@ -59,29 +54,20 @@ public class ImagesPlayer
                                 boolean isr, ImagesLoader il) 
   {
     imName = nm;
-    animPeriod = ap; 
-    seqDuration = d;
     isRepeating = isr;
-    imsLoader = il;
-
-    animTotalTime = 0L;
+    ticks = 0L;
 
-    if (seqDuration < 0.5) {
-      System.out.println("Warning: minimum sequence duration is 0.5 sec.");
-      seqDuration = 0.5;
-    }
-
-    if (!imsLoader.isLoaded(imName)) {
+    if (!il.isLoaded(imName)) {
       System.out.println(imName + " is not known by the ImagesLoader");
       numImages = 0;
       imPosition = -1;
       ticksIgnored = true;
     }
     else {
-      numImages = imsLoader.numImages(imName);
+      clip = il.getClip(imName, ap, d, isRepeating);
+      numImages = clip.getNumImages();
       imPosition = 0;
       ticksIgnored = false;
-      showPeriod = (int) (1000 * seqDuration / numImages);
     }
   } // end of ImagesPlayer()
 
@@ -91,12 +77,9 @@ public class ImagesPlayer
   /* We assume that this method is called every animPeriod ms */
   {
     if (!ticksIgnored) {
-      // update total animation time, modulo the animation sequence duration
-      animTotalTime = (animTotalTime + animPeriod) % (long)(1000 * seqDuration);
-
-      // calculate current displayable image position
-      imPosition = (int) (animTotalTime / showPeriod);   // in range 0 to num-1
-      if ((imPosition == numImages-1) && (!isRepeating)) {  // at end of sequence
+      ticks++;
+      imPosition = clip.getPosition(ticks);   // in range 0 to num-1
+      if (clip.isFinished(ticks)) {  // at end of a non-repeating sequence
         ticksIgnored = true;   // stop at this image
         if (watcher != null)
           watcher.sequenceEnded(imName);   // call callback
@@ -108,7 +91,7 @@ public class ImagesPlayer
 
   public BufferedImage getCurrentImage()
   { if (numImages != 0)
-      return imsLoader.getImage(imName, imPosition); 
+      return clip.getImage(ticks);
     else
       return null; 
   } // end of getCurrentImage()
@@ -125,7 +108,7 @@ public class ImagesPlayer
 
   public void stop()
   /* updateTick() calls will no longer update the
-     total animation time or imPosition. */
+     animation ticks or imPosition. */
   {  ticksIgnored = true;  }
 
 
@@ -141,7 +124,7 @@ public class ImagesPlayer
 
   public void restartAt(int imPosn)
   /* Start showing the images again, starting with image number
-     imPosn. This requires a resetting of the animation time as 
+     imPosn. This requires a resetting of the animation ticks as 
      well. */
   {
     if (numImages != 0) {
@@ -151,8 +134,8 @@ public class ImagesPlayer
       }
 
       imPosition = imPosn;
-      // calculate a suitable animation time
-      animTotalTime = (long) imPosition * showPeriod;
+      // find a suitable number of ticks
+      ticks = clip.getTicksTo(imPosition);
       ticksIgnored = false;
     }
   }  // end of restartAt()
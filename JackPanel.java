@@ -18,7 +18,11 @@
    There is a fireball sprite which tries to hit jack. It shoots
    out horizontally from the right hand edge of the panel. After
    MAX_HITS hits, the game is over. Each hit is accompanied 
-   by an animated explosion and sound effect.
+   by an animated explosion and sound effect. The explosions come
+   from an ExplosionPool, so a hit during another explosion gets
+   its own. Each hit also throws out a burst of sparks, and dust
+   is kicked up when jack lands, from a ParticleSystem with at
+   most -Djj.particles=<n> particles (MAX_PARTICLES by default).
 
    The game begins with a simple introductory screen, which
    doubles as a help window during the course of play. When
@@ -26,6 +30,17 @@
 
    The game is controlled only from the keyboard, no mouse
    events are caught.
+
+   The Benchmarks class drives a panel without a window or an
+   animation thread, through pressKey(), tick() and renderFrame().
+
+   With -Djj.blitter=true, the back buffer is a TYPE_INT_RGB
+   BufferedImage, and the ribbons, bricks, sprites and explosion
+   are drawn into its pixels by a RasterBlitter (see setBlitTarget()).
+   With -Djj.bands=<n> as well, those draws are recorded, and then
+   carried out by n threads, each drawing a horizontal band of the
+   frame (see setBands() and BandCompositor). The messages are drawn
+   over the frame afterwards.
 */
 
 import javax.swing.*;
@@ -71,6 +86,23 @@ public class JackPanel extends JPanel
 
   private JumperSprite jack;          // the sprites
   private FireBallSprite fireball;
+
+  // extra fireballs, spawned at a rate which can ramp up during a game
+  private static final int MAX_FIREBALLS = 4096;
+  private ProjectileSystem fireballs;
+  private int fireballIm;           // the fireball image's handle
+  private double startRate = 0;     // fireballs spawned per tick at the start
+  private double spawnRate, spawnRamp;   // per tick, and added each tick
+  private double spawnDue = 0;      // fireballs due to be spawned
+
+  // collisions between jack and the fireballs
+  private static final int CELL_SIZE = 64;     // of the collision grid
+  private static final int JACK = 1;           // collision groups
+  private static final int FIREBALL = 2;
+  private static final int EXTRA_FIREBALL = 4;
+  private CollisionWorld collisions;
+  private Rectangle jackBox = new Rectangle();   // reused each tick
+  private CollisionMask fireballMask;    // for the extra fireballs
   private RibbonsManager ribsMan;     // the ribbons manager
   private BricksManager bricksMan;    // the bricks manager
 
@@ -85,6 +117,16 @@ public class JackPanel extends JPanel
   private Font msgsFont;
   private FontMetrics metrics;
 
+  private HudLayer hud;
+    /* draws the messages from cached images: the hits/time HUD is
+       redrawn only when its values change, and the game-over
+       message only when the score changes */
+
+  // drawing straight into the back buffer's pixels (optional)
+  private RasterBlitter blitter = null;
+  private DrawList drawList = null;
+  private BandCompositor compositor = null;   // carries out drawList
+
   // off-screen rendering
   private Graphics dbg; 
   private Image dbImage = null;
@@ -92,18 +134,25 @@ public class JackPanel extends JPanel
   // to display the title/help screen
   private boolean showHelp;
   private BufferedImage helpIm;
+  private static final String[] HELP_LINES = {
+    "Jumping Jack", " ", "Left/Right arrows: run", "Up arrow: jump",
+    "Down arrow: stop", "h: show/hide this help", "Esc, q, End: quit" };
+       // used for the help screen if there's no title image
 
   // explosion-related
-  private ImagesPlayer explosionPlayer = null;
-  private boolean showExplosion = false;
-  private int explWidth, explHeight;   // image dimensions
-  private int xExpl, yExpl;   // coords where image is drawn
+  private static final int MAX_EXPLOSIONS = 64;   // shown at once
+  private ExplosionPool explosions = null;
+
+  // particle effects
+  private static final int MAX_PARTICLES = 2048;
+  private ParticleSystem particles;
+  private ParticleEmitter sparks;    // for a fireball hitting jack
 
   private int numHits = 0;   // the number of times 'jack' has been hit
 
 
 
-  public JackPanel(JumpingJack jj, long period)
+  public JackPanel(JumpingJack jj, long period, AudioBackend audio)
   {
     jackTop = jj;
     this.period = period;
@@ -117,55 +166,82 @@ public class JackPanel extends JPanel
 
 	addKeyListener( new KeyAdapter() {
        public void keyPressed(KeyEvent e)
-       { processKey(e);  }
+       { processKey(e.getKeyCode(), e.isControlDown());  }
      });
 
     // initialise the loaders
     ImagesLoader imsLoader = new ImagesLoader(IMS_INFO); 
-    clipsLoader = new ClipsLoader(SNDS_FILE); 
+    clipsLoader = new ClipsLoader(SNDS_FILE, audio); 
 
     // initialise the game entities
     bricksMan = new BricksManager(PWIDTH, PHEIGHT, BRICKS_INFO, imsLoader);
     int brickMoveSize = bricksMan.getMoveSize();
 
     ribsMan = new RibbonsManager(PWIDTH, PHEIGHT, brickMoveSize, imsLoader);
+    ribsMan.setFloorY( bricksMan.getOpaqueFloorY() );
+    if ("false".equals(System.getProperty("jj.cull")))
+      ribsMan.setCulling(false);     // draw the ribbons whole
 
     jack = new JumperSprite(PWIDTH, PHEIGHT, brickMoveSize, bricksMan, 
                                imsLoader, (int)(period/1000000L) ); // in ms
 
-    fireball = new FireBallSprite(PWIDTH, PHEIGHT, imsLoader, this, jack);
-
+    fireball = new FireBallSprite(PWIDTH, PHEIGHT, imsLoader, this);
 
-    // prepare the explosion animation
-    explosionPlayer =  new ImagesPlayer("explosion", (int)(period/1000000L), 
-                                                0.5, false, imsLoader);
-    BufferedImage explosionIm = imsLoader.getImage("explosion");
-    explWidth = explosionIm.getWidth();
-    explHeight = explosionIm.getHeight();
-    explosionPlayer.setWatcher(this);     // report animation's end back here
+    fireballs = new ProjectileSystem(PWIDTH, PHEIGHT, MAX_FIREBALLS);
+    fireballIm = fireballs.addImage( imsLoader.getImage("fireball") );
+    fireballMask = imsLoader.getMask( imsLoader.getImage("fireball") );
+    try {
+      setFireballRamp( Double.parseDouble( System.getProperty("jj.fireball.ramp", "0")));
+    }
+    catch (NumberFormatException e)
+    {  System.out.println("jj.fireball.ramp must be a number");  }
+    collisions = new CollisionWorld(PWIDTH, PHEIGHT, CELL_SIZE);
+
+
+    // prepare the explosion animations
+    explosions = new ExplosionPool("explosion", (int)(period/1000000L),
+                                      0.5, MAX_EXPLOSIONS, imsLoader);
+    explosions.setWatcher(this);     // report animations' ends back here
+
+    // prepare the particles: yellow to red sparks, and brown dust
+    particles = new ParticleSystem(PWIDTH, PHEIGHT,
+                   Integer.getInteger("jj.particles", MAX_PARTICLES).intValue());
+    int sparkColor = particles.addColor(0xffff60);
+    particles.addColor(0xffc020);
+    particles.addColor(0xff8000);
+    particles.addColor(0xe02000);
+    sparks = new ParticleEmitter(40, 7, 90, 360, 24, sparkColor, 4);
+    int dustColor = particles.addColor(0xa08060);
+    particles.addColor(0x806040);
+    particles.addColor(0xc0b090);
+    jack.setLandingEmitter(particles,
+                 new ParticleEmitter(12, 3, 90, 140, 12, dustColor, 3));
 
     // prepare title/help screen
     helpIm = imsLoader.getImage("title");
+    if (helpIm == null)
+      helpIm = makeHelpImage();
     showHelp = true;    // show at start-up
     isPaused = true;
 
     // set up message font
     msgsFont = new Font("SansSerif", Font.BOLD, 24);
     metrics = this.getFontMetrics(msgsFont);
+    hud = new HudLayer(msgsFont, Color.red, Color.black, MAX_HITS);
+
+    gameStartTime = J3DTimer.getValue();   // reset when run() starts
   }  // end of JackPanel()
 
 
-  private void processKey(KeyEvent e)
+  private void processKey(int keyCode, boolean isControlDown)
   // handles termination, help, and game-play keys
   {
-    int keyCode = e.getKeyCode();
-
     // termination keys
 	// listen for esc, q, end, ctrl-c on the canvas to
 	// allow a convenient exit from the full screen configuration
     if ((keyCode == KeyEvent.VK_ESCAPE) || (keyCode == KeyEvent.VK_Q) ||
         (keyCode == KeyEvent.VK_END) ||
-        ((keyCode == KeyEvent.VK_C) && e.isControlDown()) )
+        ((keyCode == KeyEvent.VK_C) && isControlDown) )
       running = false;
 
     // help controls
@@ -204,28 +280,118 @@ public class JackPanel extends JPanel
   }  // end of processKey()
 
 
+  // ------------- used by Benchmarks ------------------
+
+  void pressKey(int keyCode)
+  // act as if the key was pressed
+  {  processKey(keyCode, false);  }
+
+  void tick()
+  // one game update, without rendering
+  {  gameUpdate();  }
+
+  void renderFrame(Graphics g)
+  // draw the current frame with g, instead of into dbImage
+  {  drawFrame(g);  }
+
+  boolean isGameOver()
+  {  return gameOver;  }
+
+  void newGame()
+  // start again after the game is over
+  { numHits = 0;
+    gameOver = false;
+    explosions.clear();
+    particles.clear();
+    fireballs.clear();
+    spawnRate = startRate;
+    spawnDue = 0;
+  }  // end of newGame()
+
+  void setFireballRate(double perSec)
+  // the number of extra fireballs spawned each second, at the start
+  { startRate = perSec * period / 1000000000.0;
+    spawnRate = startRate;
+  }
+
+  void setFireballRamp(double perSec)
+  // how much the spawn rate (fireballs/sec) goes up each second
+  { double ticksPerSec = 1000000000.0 / period;
+    spawnRamp = perSec / (ticksPerSec*ticksPerSec);
+  }
+
+  int getNumFireballs()
+  {  return fireballs.getNumActive();  }
+
+  int getNumExplosions()
+  {  return explosions.getNumActive();  }
+
+  int getNumParticles()
+  {  return particles.getNumActive();  }
+
+  ClipsLoader getClipsLoader()
+  {  return clipsLoader;  }
+
+  double getOverdraw()
+  // of the ribbons in the last frame (see RibbonsManager)
+  {  return ribsMan.getOverdraw();  }
+
+  void setBlitTarget(BufferedImage im)
+  /* Draw the background and sprites with a RasterBlitter into im,
+     which must be the image drawn into by renderFrame(). If im is
+     null, or not a TYPE_INT_RGB image, they're drawn with Graphics. */
+  {
+    setBands(0);
+    blitter = null;
+    if (RasterBlitter.canDrawInto(im))
+      blitter = new RasterBlitter(im);
+    else if (im != null)
+      System.out.println("Can only blit into a TYPE_INT_RGB image");
+    ribsMan.setBlitter(blitter);
+    bricksMan.setBlitter(blitter);
+  }  // end of setBlitTarget()
+
+  void setBands(int numBands)
+  /* Record the blitter's draws in each frame, and then carry them
+     out in numBands bands in parallel. Less than 2 bands, or no
+     blitter, means the draws are done straight away. */
+  {
+    if (compositor != null) {
+      compositor.close();
+      compositor = null;
+    }
+    drawList = null;
+    if (blitter == null)
+      return;
+    if (numBands < 2)
+      blitter.setDrawList(null);
+    else {
+      drawList = new DrawList();
+      blitter.setDrawList(drawList);
+      compositor = new BandCompositor(blitter, PHEIGHT, numBands);
+    }
+  }  // end of setBands()
+
+
   public void showExplosion(int x, int y)
-  // called by fireball sprite when it hits jack at (x,y)
-  { if (!showExplosion) {  // only allow a single explosion at a time
-      showExplosion = true;
-      xExpl = x - explWidth/2;   //\ (x,y) is the center of the explosion
-      yExpl = y - explHeight/2;
-
-      /* Play an explosion clip, but cycle through them.
-         This adds variety, and gets round not being able to 
-         play multiple instances of a clip at the same time. */
-      clipsLoader.play( exploNames[numHits%exploNames.length], false);
-      numHits++;
-    } 
+  /* Called when a fireball hits jack at (x,y), the center of
+     the explosion. Every hit gets an explosion, even if others
+     are still being shown. */
+  { explosions.spawn(x, y);
+    sparks.emit(particles, x, y);
+
+    /* Play an explosion clip, but cycle through them.
+       This adds variety; overlapping instances of the same
+       clip are handled by ClipsLoader's voices. */
+    clipsLoader.play( exploNames[numHits%exploNames.length], false);
+    numHits++;
   } // end of showExplosion()
 
 
   public void sequenceEnded(String imageName)
-  // called by ImagesPlayer when the explosion animation finishes
-  {  showExplosion = false;
-     explosionPlayer.restartAt(0);   // reset animation for next time
-
-     if (numHits >= MAX_HITS) { 
+  /* Called by the ExplosionPool when an explosion animation finishes.
+     Several may finish in the same tick, but the game only ends once. */
+  {  if (!gameOver && (numHits >= MAX_HITS)) { 
        gameOver = true; 
        score = (int) ((J3DTimer.getValue() - gameStartTime)/1000000000L);
       clipsLoader.play("applause", false);
@@ -325,6 +491,7 @@ public class JackPanel extends JPanel
         skips++;
       }
 	}
+    clipsLoader.close();
     System.exit(0);   // so window disappears
   } // end of run()
 
@@ -339,19 +506,108 @@ public class JackPanel extends JPanel
       }
       ribsMan.update();   // update background and sprites
       bricksMan.update();
+      AnimClock.tick();   // move the animations on
       jack.updateSprite();
       fireball.updateSprite();
+      updateFireballs();
+      findCollisions();
 
-      if (showExplosion)
-        explosionPlayer.updateTick();  // update the animation
+      explosions.update();  // remove the finished explosions
+      particles.update();
     }
   }  // end of gameUpdate()
 
 
+  private void updateFireballs()
+  // Spawn the fireballs due this tick, raise the spawn rate, and move them all
+  {
+    spawnDue += spawnRate;
+    spawnRate += spawnRamp;
+    while (spawnDue >= 1) {
+      spawnFireball();
+      spawnDue--;
+    }
+
+    fireballs.update();
+  }  // end of updateFireballs()
+
+
+  private void findCollisions()
+  /* Add jack and the fireballs to the collision world, and explode
+     any fireballs whose solid pixels touch jack's. Only jack's mask
+     is set, so the fireballs aren't tested against each other. */
+  {
+    collisions.clear();
+    jack.getMyRectangle(jackBox);
+    collisions.add(0, JACK, FIREBALL | EXTRA_FIREBALL,
+                   jackBox.x, jackBox.y, jackBox.width, jackBox.height);
+    collisions.add(0, FIREBALL, 0, fireball.getXPosn(), fireball.getYPosn(),
+                   fireball.getWidth(), fireball.getHeight());
+    fireballs.addBodies(collisions, EXTRA_FIREBALL, 0);
+
+    int numPairs = collisions.findPairs();
+    CollisionMask jackMask = jack.getMask();
+    int ball;
+    for (int i=0; i < numPairs; i++) {
+      ball = collisions.getPairB(i);     // A is always jack
+      if (collisions.getGroup(ball) == FIREBALL) {
+        if (touches(jackMask, fireball.getMask(), ball))
+          fireball.hitJack();
+      }
+      else if (touches(jackMask, fireballMask, ball)) {
+        showExplosion(collisions.getX(ball),
+                      collisions.getY(ball) + collisions.getHeight(ball)/2);
+        fireballs.despawn( collisions.getId(ball) );
+      }
+    }
+  }  // end of findCollisions()
+
+
+  private boolean touches(CollisionMask jackMask, CollisionMask ballMask, int ball)
+  /* Do jack's solid pixels touch those of the ball body? Without
+     masks, the boxes overlapping is enough. */
+  {
+    if ((jackMask == null) || (ballMask == null))
+      return true;
+    return CollisionMask.overlaps(jackMask, jackBox.x, jackBox.y,
+               ballMask, collisions.getX(ball), collisions.getY(ball));
+  }  // end of touches()
+
+
+  long getPairsTested()
+  // the total number of pairs tested for collisions
+  {  return collisions.getTotalTested();  }
+
+  long getCollisionHits()
+  {  return collisions.getTotalHits();  }
+
+
+  private void spawnFireball()
+  /* Start a fireball on the lower half of the rhs edge, moving
+     left, like the FireBallSprite. */
+  {
+    if (fireballIm == -1)   // no image
+      return;
+    int h = PHEIGHT/2 + ((int)(PHEIGHT * Math.random())/2);
+    if (h + fireballs.getImageHeight(fireballIm) > PHEIGHT)
+      h -= fireballs.getImageHeight(fireballIm);    // so all on screen
+    int dx = -10 + ((int)(4 * Math.random())) - 2;    // -10 +/- 2
+    fireballs.spawn(PWIDTH, h, dx, 0, ProjectileSystem.FOREVER, fireballIm);
+  }  // end of spawnFireball()
+
+
   private void gameRender()
   {
     if (dbImage == null){
-      dbImage = createImage(PWIDTH, PHEIGHT);
+      int numBands = Integer.getInteger("jj.bands", 0).intValue();
+      if (Boolean.getBoolean("jj.blitter") || (numBands > 0)) {
+        // draw into its pixels
+        dbImage = new BufferedImage(PWIDTH, PHEIGHT, BufferedImage.TYPE_INT_RGB);
+        setBlitTarget( (BufferedImage) dbImage );
+        setBands(numBands);
+      }
+      else
+        dbImage = createImage(PWIDTH, PHEIGHT);
       if (dbImage == null) {
         System.out.println("dbImage is null");
         return;
@@ -359,29 +615,40 @@ public class JackPanel extends JPanel
       else
         dbg = dbImage.getGraphics();
     }
+    drawFrame(dbg);
+  }  // end of gameRender()
+
 
-    // draw a white background
-    dbg.setColor(Color.white);
-    dbg.fillRect(0, 0, PWIDTH, PHEIGHT);
+  private void drawFrame(Graphics g)
+  {
+    // draw a white background, unless a ribbon will hide it
+    if (!ribsMan.coversPanel()) {
+      g.setColor(Color.white);
+      g.fillRect(0, 0, PWIDTH, PHEIGHT);
+    }
 
     // draw the game elements: order is important
-    ribsMan.display(dbg);       // the background ribbons
-    bricksMan.display(dbg);     // the bricks
-    jack.drawSprite(dbg);       // the sprites
-    fireball.drawSprite(dbg); 
+    ribsMan.display(g);       // the background ribbons
+    bricksMan.display(g);     // the bricks
+    jack.drawSprite(g, blitter);       // the sprites
+    fireball.drawSprite(g, blitter); 
+    fireballs.draw(g, blitter);
 
-    if (showExplosion)      // draw the explosion (in front of jack)
-      dbg.drawImage(explosionPlayer.getCurrentImage(), xExpl, yExpl, null);
+    explosions.draw(g, blitter);   // the explosions (in front of jack)
+    particles.draw(g, blitter);    // and their sparks
 
-    reportStats(dbg);
+    if (compositor != null)   // carry out the recorded draws
+      compositor.composite(drawList);
+
+    reportStats(g);
 
     if (gameOver)
-      gameOverMessage(dbg);
+      gameOverMessage(g);
 
     if (showHelp)    // draw the help at the very front (if switched on)
-      dbg.drawImage(helpIm, (PWIDTH-helpIm.getWidth())/2, 
+      g.drawImage(helpIm, (PWIDTH-helpIm.getWidth())/2, 
                           (PHEIGHT-helpIm.getHeight())/2, null);
-  }  // end of gameRender()
+  }  // end of drawFrame()
 
 
   private void reportStats(Graphics g)
@@ -390,27 +657,45 @@ public class JackPanel extends JPanel
     if (!gameOver)    // stop incrementing the timer once the game is over
       timeSpentInGame = 
           (int) ((J3DTimer.getValue() - gameStartTime)/1000000000L);  // ns --> secs
-	g.setColor(Color.red);
-    g.setFont(msgsFont);
-	g.drawString("Hits: " + numHits + "/" + MAX_HITS, 15, 25);
-	g.drawString("Time: " + timeSpentInGame + " secs", 15, 50);
-	g.setColor(Color.black);
+    hud.update(numHits, timeSpentInGame);   // only redrawn if they've changed
+    hud.draw(g, 15, 25);
   }  // end of reportStats()
 
 
   private void gameOverMessage(Graphics g)
   // Center the game-over message in the panel.
   {
-    String msg = "Game Over. Your score: " + score;
-
-	int x = (PWIDTH - metrics.stringWidth(msg))/2; 
-	int y = (PHEIGHT - metrics.getHeight())/2;
-	g.setColor(Color.black);
-    g.setFont(msgsFont);
-	g.drawString(msg, x, y);
+	int y = (PHEIGHT - metrics.getHeight())/2;    // the text's baseline
+    hud.drawGameOver(g, score, PWIDTH/2, y);
   }  // end of gameOverMessage()
 
 
+  private BufferedImage makeHelpImage()
+  /* Render the HELP_LINES text once, onto a white panel, for use
+     as the help screen. */
+  {
+    Font font = new Font("SansSerif", Font.BOLD, 18);
+    FontMetrics fm = getFontMetrics(font);
+    int width = 0;
+    for (int i=0; i < HELP_LINES.length; i++)
+      width = Math.max(width, fm.stringWidth(HELP_LINES[i]));
+    int lineHeight = fm.getHeight();
+
+    BufferedImage im = new BufferedImage(width + 2*lineHeight,
+                     (HELP_LINES.length+2)*lineHeight, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2 = im.createGraphics();
+    g2.setColor(Color.white);
+    g2.fillRect(0, 0, im.getWidth(), im.getHeight());
+    g2.setColor(Color.blue);
+    g2.drawRect(0, 0, im.getWidth()-1, im.getHeight()-1);
+    g2.setFont(font);
+    for (int i=0; i < HELP_LINES.length; i++)
+      g2.drawString(HELP_LINES[i], lineHeight, (i+1)*lineHeight + fm.getAscent());
+    g2.dispose();
+    return im;
+  }  // end of makeHelpImage()
+
+
   private void paintScreen()
   // use active rendering to put the buffered image on-screen
   { 
@@ -22,7 +22,12 @@
    A sprite will start falling if it walks off a brick into space.
 
    Brick queries (mostly about collision detection) are sent
-   to the BricksManager object.
+   to the BricksManager object. Rising and falling are swept
+   through the bricks map (see BricksManager.sweepBox()), so the
+   vertical step can be any size without passing through a brick.
+
+   When the sprite lands, it can start a burst of particles at its
+   feet (see setLandingEmitter()).
 */
 
 import java.awt.*;
@@ -39,6 +44,9 @@ public class JumperSprite extends Sprite
   // used by vertMoveMode 
   //  (in J2SE 1.5 we could use a enumeration for these)
 
+  private static final double STEP_UP = 0.2;
+    // the fraction of the sprite's height it can walk up onto
+
   private static final int MAX_UP_STEPS = 8;
     // max number of steps to take when rising upwards in a jump
 
@@ -54,6 +62,10 @@ public class JumperSprite extends Sprite
 
   private BricksManager brickMan;
   private int moveSize;   // obtained from BricksManager
+  private SweepResult sweep = new SweepResult();   // reused by sweepDown/Up()
+
+  private ParticleSystem particles = null;   // for the dust when landing
+  private ParticleEmitter landingEmitter = null;
 
   private int xWorld, yWorld;
     /* the current position of the sprite in 'world' coordinates.
@@ -88,6 +100,13 @@ public class JumperSprite extends Sprite
   }  // end of JumperSprite()
 
 
+  public void setLandingEmitter(ParticleSystem ps, ParticleEmitter em)
+  // em's particles are started in ps at the sprite's feet when it lands
+  {  particles = ps;
+     landingEmitter = em;
+  }
+
+
   public void moveLeft()
   /* Request that the sprite move to the left. It doesn't
      actually move, but changes its image and status flags. */
@@ -131,7 +150,13 @@ public class JumperSprite extends Sprite
 
 
   public boolean willHitBrick()
-  /* Test if the next x position is inside a brick
+  /* Test if the solid pixels of the sprite's image, at the next
+     x position, will overlap a brick's. Only the half of the image
+     facing the way the sprite is moving is tested, so a sprite
+     which has landed partly inside a brick can still walk out.
+     The bottom STEP_UP part of the image isn't tested, so the
+     sprite can walk up a low step (checkIfFalling() lifts it onto
+     the step).
      Ignore any y motion. This method should always
      be called before updateSprite() makes the actual
      move. */
@@ -139,17 +164,14 @@ public class JumperSprite extends Sprite
     if (isStill)
       return false;   // can't hit anything if not moving
 
-    int xTest;   // for testing the new x- position
-    if (isFacingRight)   // moving right
-      xTest = xWorld + moveSize;
-    else // moving left
-      xTest = xWorld - moveSize;
-
-    // test a point near the base of the sprite
-    int xMid = xTest + getWidth()/2;
-    int yMid = yWorld + (int)(getHeight()*0.8);   // use current y posn
-
-    return brickMan.insideBrick(xMid,yMid);  
+    int halfWidth = getWidth()/2;
+    int yStep = (int)(getHeight()*(1-STEP_UP));    // rows tested: 0 to yStep-1
+    if (isFacingRight)   // moving right; test the right half
+      return brickMan.hitsBrick(getMask(), xWorld + moveSize, yWorld,
+                                   halfWidth, 0, getWidth(), yStep);
+    else  // moving left; test the left half
+      return brickMan.hitsBrick(getMask(), xWorld - moveSize, yWorld,
+                                   0, 0, halfWidth, yStep);
   }  // end of willHitBrick()
 
 
@@ -187,8 +209,7 @@ public class JumperSprite extends Sprite
   {
     // could the sprite move downwards if it wanted to?
     // test its center x-coord, base y-coord
-    int yTrans = brickMan.checkBrickTop( xWorld+(getWidth()/2), 
-                     yWorld+getHeight()+vertStep, vertStep);
+    int yTrans = sweepDown(vertStep);
     // System.out.println("checkIfFalling: " + yTrans);
     if (yTrans != 0)   // yes it could
       vertMoveMode = FALLING;   // set it to be in falling mode
@@ -206,8 +227,7 @@ public class JumperSprite extends Sprite
       upCount = 0;
     }
     else {
-      int yTrans = brickMan.checkBrickBase(xWorld+(getWidth()/2), 
-                                      yWorld-vertStep, vertStep);
+      int yTrans = sweepUp(vertStep);
       if (yTrans == 0) {   // hit the base of a brick
         vertMoveMode = FALLING;   // start falling
         upCount = 0;
@@ -230,8 +250,7 @@ public class JumperSprite extends Sprite
      sequence, for instance, when the sprite walks off a cliff.
   */
   {
-    int yTrans = brickMan.checkBrickTop(xWorld+(getWidth()/2), 
-                        yWorld+getHeight()+vertStep, vertStep);
+    int yTrans = sweepDown(vertStep);
     if (yTrans == 0)   // hit the top of a brick
       finishJumping();
     else {    // can move downwards another step
@@ -241,11 +260,47 @@ public class JumperSprite extends Sprite
   }  // end of updateFalling()
 
 
+  private int sweepDown(int step)
+  /* How far can the sprite fall, up to step pixels, before the
+     pixel at its center x-coord, base y-coord, touches the top of
+     a brick? The move is swept, so no brick is skipped, however
+     big step is. If the pixel is already inside a brick (the
+     sprite has walked into a higher floor), the result is the
+     (negative) move up onto the brick. */
+  {
+    int xMid = xWorld+(getWidth()/2);
+    int yBase = yWorld+getHeight()-1;
+    if (brickMan.insideBrick(xMid, yBase))
+      return brickMan.getRowTop(yBase) - (yBase+1);
+
+    brickMan.sweepBox(xMid, yBase, 1, 1, 0, step, sweep);
+    return sweep.getMoveY();
+  }  // end of sweepDown()
+
+
+  private int sweepUp(int step)
+  /* How far can the sprite rise, up to step pixels, before the
+     pixel at its center x-coord, top y-coord, touches the base of
+     a brick? If it's already inside a brick, the result is the
+     (negative) move down to the brick's base. */
+  {
+    int xMid = xWorld+(getWidth()/2);
+    if (brickMan.insideBrick(xMid, yWorld))
+      return yWorld - (brickMan.getRowTop(yWorld) + brickMan.getBrickHeight());
+
+    brickMan.sweepBox(xMid, yWorld, 1, 1, 0, -step, sweep);
+    return -sweep.getMoveY();
+  }  // end of sweepUp()
+
+
   private void finishJumping()
   {
     vertMoveMode = NOT_JUMPING;
     upCount = 0;
 
+    if (landingEmitter != null)   // kick up some dust
+      landingEmitter.emit(particles, locx+getWidth()/2, locy+getHeight());
+
     if (isStill) {    // change to running image, but not looping yet
       if (isFacingRight)
         setImage("runningRight");
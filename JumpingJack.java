@@ -48,13 +48,18 @@ public class JumpingJack extends JFrame implements WindowListener
   public JumpingJack(long period)
   { super("JumpingJack");
 
+    AudioBackend audio = makeAudioBackend();
+
     // load the background MIDI sequence
-    midisLoader = new MidisLoader();
-    midisLoader.load("jjf", "jumping_jack_flash.mid");
+    midisLoader = new MidisLoader(audio);
+    if (Boolean.getBoolean("jj.midi.prerender"))   // play a PCM rendering
+      midisLoader.loadRendered("jjf", "jumping_jack_flash.mid");
+    else
+      midisLoader.load("jjf", "jumping_jack_flash.mid");
     midisLoader.play("jjf", true);   // repeatedly play it
 
     Container c = getContentPane();    // default BorderLayout used
-    jp = new JackPanel(this, period);
+    jp = new JackPanel(this, period, audio);
     c.add(jp, "Center");
 
     addWindowListener( this );
@@ -64,6 +69,26 @@ public class JumpingJack extends JFrame implements WindowListener
   }  // end of JumpingJack() constructor
 
 
+  private AudioBackend makeAudioBackend()
+  /* The "jj.audio" system property chooses how sounds are played:
+       line (the default), mixer, null (silent), or record
+     The silent backends don't open any sound devices. */
+  {
+    String kind = System.getProperty("jj.audio", "line");
+    if (kind.equals("mixer"))
+      return new MixerAudioBackend();
+    else if (kind.equals("null"))
+      return new NullAudioBackend();
+    else if (kind.equals("record"))
+      return new RecordingAudioBackend();
+    else {
+      if (!kind.equals("line"))
+        System.out.println("Unknown audio backend " + kind + "; using line");
+      return new LineAudioBackend();
+    }
+  }  // end of makeAudioBackend()
+
+
   // ----------------- window listener methods -------------
 
   public void windowActivated(WindowEvent e) 
@@ -0,0 +1,58 @@
+
+// KernelsLoader.java
+
+/* Chooses the CollisionKernels used by the whole game, the first
+   time getKernels() is called. The "jj.kernels" system property
+   can be:
+      auto     VectorKernels if it can be loaded, otherwise
+               ScalarKernels (the default)
+      vector   the same, but a message is printed if the vector
+               kernels can't be loaded
+      scalar   always ScalarKernels
+
+   VectorKernels is loaded by name, so the rest of the game
+   compiles and runs without the jdk.incubator.vector module.
+   Loading fails if the class wasn't compiled (it's in vector/),
+   or the JVM wasn't started with --add-modules jdk.incubator.vector.
+*/
+
+public class KernelsLoader
+{
+  private static CollisionKernels kernels = null;
+
+
+  public static synchronized CollisionKernels getKernels()
+  {
+    if (kernels == null) {
+      String kind = System.getProperty("jj.kernels", "auto");
+      if (kind.equals("scalar"))
+        kernels = new ScalarKernels();
+      else {
+        if (!kind.equals("auto") && !kind.equals("vector"))
+          System.out.println("Unknown kernels " + kind + "; using auto");
+        kernels = loadVectorKernels( kind.equals("vector") );
+      }
+    }
+    return kernels;
+  }  // end of getKernels()
+
+
+  private static CollisionKernels loadVectorKernels(boolean isWanted)
+  // load VectorKernels, or return ScalarKernels if it can't be
+  {
+    try {
+      Class c = Class.forName("VectorKernels");
+      return (CollisionKernels) c.getDeclaredConstructor().newInstance();
+    }
+    catch (Exception e) {    // not compiled
+      if (isWanted)
+        System.out.println("No vector kernels: " + e + "; using scalar");
+    }
+    catch (LinkageError e) {   // no jdk.incubator.vector module
+      if (isWanted)
+        System.out.println("No vector kernels: " + e + "; using scalar");
+    }
+    return new ScalarKernels();
+  }  // end of loadVectorKernels()
+
+}  // end of KernelsLoader class
@@ -0,0 +1,32 @@
+// LineAudioBackend.java
+
+/* The default AudioBackend. Each clip is a ClipInfo, which
+   plays with its own pool of Clip lines, and long sounds are
+   streamed by a StreamedClip.
+*/
+
+public class LineAudioBackend implements AudioBackend
+{
+  private final static long STREAM_THRESHOLD = 1024*1024;
+    /* sounds whose decoded size (in bytes) is at least this are
+       streamed; it can be changed with "jj.stream.threshold" */
+
+
+  public SoundClip loadClip(String name, String fnm, int numVoices)
+  {
+    if (StreamedClip.isLong(fnm, getStreamThreshold()))
+      return new StreamedClip(name, fnm);
+    return new ClipInfo(name, fnm, numVoices);
+  }  // end of loadClip()
+
+
+  public static long getStreamThreshold()
+  {  return Long.getLong("jj.stream.threshold", STREAM_THRESHOLD).longValue();  }
+
+
+  public boolean usesDevices()
+  {  return true;  }
+
+  public void close() {}
+
+}  // end of LineAudioBackend class
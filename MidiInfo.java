@@ -5,24 +5,38 @@
 /* Hold a single midi sequence, and allow it to be played,
    stopped, paused, resumed, and made to loop.
 
-   Looping is controlled by MidisLoader by calling tryLooping().
+   Looping is done by the sequencer, using loop points which
+   cover the whole sequence, so there's no gap when the sequence
+   restarts. MidisLoader can also call tryLooping() when the
+   sequence reaches its end, in case the sequencer doesn't loop.
+
+   As a looping sequence never reaches its end, a marker meta
+   event (LOOP_MARKER) is added at its start, which the sequencer
+   sends again each time it loops back. MidisLoader passes it to
+   atLoopMarker(), so its watcher can still be told of every loop.
 
    MidisLoader passes a reference to its sequencer to each
-   MidiInfo object, so that it can play its sequence.
+   MidiInfo object, so that it can play its sequence. The
+   reference may be passed later (with setSequencer()) if
+   MidisLoader is still opening the sequencer.
 */
 
 import java.io.*;
 import javax.sound.midi.*;
 
 
-public class MidiInfo
+public class MidiInfo implements SoundClip
 {
   private final static String SOUND_DIR = "Sounds/";
 
+  private final static int MARKER = 6;    // meta message type
+  private final static String LOOP_MARKER = "jj-loop";
+
   private String name, filename;
   private Sequence seq = null;
   private Sequencer sequencer;   // passed in from MidisLoader
   private boolean isLooping = false;
+  private boolean hasStarted = false;   // has the loop marker been played?
 
 
   public MidiInfo(String nm, String fnm, Sequencer sqr)
@@ -38,7 +52,11 @@ public class MidiInfo
   // load the Midi sequence
   { 
     try {
-      seq = MidiSystem.getSequence( getClass().getResource(filename) );
+      AssetPack pack = AssetPack.getDefault();
+      if ((pack != null) && pack.contains(filename))
+        seq = MidiSystem.getSequence( pack.getStream(filename) );
+      else
+        seq = MidiSystem.getSequence( getClass().getResource(filename) );
     }
     catch (InvalidMidiDataException e) {
       System.out.println("Unreadable/unsupported midi file: " + filename);
@@ -49,9 +67,45 @@ public class MidiInfo
     catch (Exception e) {
       System.out.println("Problem with " + filename);
     }
+    if (seq != null)
+      addLoopMarker();
   } // end of loadMidi()
 
 
+  private void addLoopMarker()
+  // add the loop marker at the start of the first track
+  {
+    Track[] tracks = seq.getTracks();
+    if (tracks.length == 0)
+      return;
+    try {
+      MetaMessage marker = new MetaMessage();
+      byte[] text = LOOP_MARKER.getBytes();
+      marker.setMessage(MARKER, text, text.length);
+      tracks[0].add( new MidiEvent(marker, 0) );
+    }
+    catch (InvalidMidiDataException e) {
+      System.out.println("Could not mark the loop of " + filename);
+    }
+  }  // end of addLoopMarker()
+
+
+  public static boolean isLoopMarker(MetaMessage meta)
+  // is meta the loop marker added by addLoopMarker()?
+  {  return (meta.getType() == MARKER) &&
+            LOOP_MARKER.equals( new String(meta.getData()) );
+  }
+
+
+
+  public void play(boolean toLoop, int priority)
+  // there is only one sequencer, so the priority is ignored
+  {  play(toLoop);  }
+
+
+  public void setSequencer(Sequencer sqr)
+  {  sequencer = sqr;  }
+
 
   public void play(boolean toLoop)
   { if ((sequencer != null) && (seq != null)) {
@@ -59,6 +113,8 @@ public class MidiInfo
         sequencer.setSequence(seq);   // load MIDI sequence into the sequencer
         sequencer.setTickPosition(0); // reset to the start
         isLooping = toLoop;
+        hasStarted = false;
+        setLoopPoints(toLoop);
         sequencer.start();            // play it
       }
       catch (InvalidMidiDataException e) {
@@ -68,6 +124,20 @@ public class MidiInfo
   } // end of play()
 
 
+  private void setLoopPoints(boolean toLoop)
+  /* Let the sequencer loop over the whole sequence, which it
+     does without stopping. */
+  {
+    if (toLoop) {
+      sequencer.setLoopStartPoint(0);
+      sequencer.setLoopEndPoint(-1);    // the end of the sequence
+      sequencer.setLoopCount(Sequencer.LOOP_CONTINUOUSLY);
+    }
+    else
+      sequencer.setLoopCount(0);
+  }  // end of setLoopPoints()
+
+
 
   public void stop()
   /* Stop the sequence. We want this to trigger an 'end-of-track'
@@ -77,6 +147,7 @@ public class MidiInfo
   */
   { if ((sequencer != null) && (seq != null)) {
       isLooping = false;
+      sequencer.setLoopCount(0);    // or moving to the end would loop
       if (!sequencer.isRunning())   // the sequence may be paused
         sequencer.start();
       sequencer.setTickPosition( sequencer.getTickLength() );  
@@ -101,21 +172,39 @@ public class MidiInfo
   }
 
 
+  public long getMicrosecondPosition()
+  // the position reached in the sequence (in a loop, since its start)
+  { if (sequencer != null)
+      return sequencer.getMicrosecondPosition();
+    return 0;
+  }
+
+
+  public boolean atLoopMarker()
+  /* Called by MidisLoader when the loop marker has been played.
+     Report whether the sequence has looped back to its start,
+     rather than just been started. */
+  { boolean hasLooped = hasStarted && isLooping;
+    hasStarted = true;
+    return hasLooped;
+  }  // end of atLoopMarker()
+
+
   public boolean tryLooping()
   /* Loop the music if it's been set to be loopable,
      and report whether looping has occurred.
      Called by MidisLoader from meta() when it has received 
      an 'end-of-track' meta message.
  
-     In other words, the sequence is not set in 'looping mode'
-     (which is possible with new methods in J2SE 1.5), but instead
-     is made to play repeatedly by the MidisLoader.
+     The sequence is normally set in 'looping mode' by play(),
+     so this is only a fallback for sequencers which don't loop.
   */
   { if ((sequencer != null) && (seq != null)) {
       if (sequencer.isRunning())
         sequencer.stop();
       sequencer.setTickPosition(0);
       if (isLooping) {    // play it again
+        hasStarted = false;   // the loop has already been reported
         sequencer.start();
         return true;
       }
@@ -124,6 +213,13 @@ public class MidiInfo
   } // end of tryLooping()
 
 
+  public void close() {}
+    // the sequencer is closed by MidisLoader
+
+  public void setWatcher(SoundsWatcher sw)
+  {  System.out.println("Set a watcher for " + name + " with MidisLoader");  }
+
+
   // -------------- other access methods -------------------
 
   public String getName()
@@ -0,0 +1,252 @@
+// MidiRenderer.java
+
+/* Render a MIDI sequence to a PCM WAV file, so it can be played
+   by a StreamedClip instead of by a sequencer and the software
+   synthesizer, which use a lot of CPU while they are playing.
+
+   The rendering is done offline with the synthesizer's audio
+   stream mode (openStream() in the JDK's software synthesizer,
+   Gervill): every event of the sequence is sent to the synth with
+   its timestamp, then the synth's output is read for the length
+   of the sequence plus TAIL_SECS.
+
+   The tail is only for a sequence which is played once. A looping
+   one should restart at the end of the sequence, not of the file,
+   as the sequencer does, so the tail isn't heard as a gap: see
+   getLoopFrames(), which StreamedClip.setLoopEnd() uses.
+
+   Rendering can take several seconds, so MidisLoader does it on
+   a separate thread, and plays the sequence with the sequencer
+   until the rendering is ready.
+
+   Rendered files are cached in CACHE_DIR (or the directory named
+   by the "jj.midi.cache" property). A file's name is a hash of
+   the MIDI file's bytes and the synth's soundbank, so a changed
+   MIDI file or soundbank gets a new rendering.
+
+   openStream() is not part of the public javax.sound API, and is
+   found by reflection. On Java 9+ the JVM must be run with
+      --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED
+   otherwise render() reports the problem and returns null, and
+   the sequence should be played with a sequencer as usual.
+*/
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.security.*;
+import java.util.*;
+import javax.sound.midi.*;
+import javax.sound.sampled.*;
+
+
+public class MidiRenderer
+{
+  private final static String SOUND_DIR = "Sounds/";
+  private final static String CACHE_DIR = "cache";
+
+  private final static double TAIL_SECS = 2.0;
+     // extra time rendered after the last event, for notes to die away
+
+  private final static int SET_TEMPO = 0x51;   // meta message type
+
+  private final static AudioFormat FORMAT =
+       new AudioFormat(44100.0f, 16, 2, true, false);   // little endian
+
+
+  public static File render(String fnm)
+  /* Return the cached WAV file rendered from the MIDI file
+     Sounds/fnm, rendering it first if necessary. Return null
+     if it can't be rendered. */
+  {
+    String midiFnm = SOUND_DIR + fnm;
+    try {
+      byte[] midiBytes = readMidiFile(midiFnm);
+      Synthesizer synth = MidiSystem.getSynthesizer();
+      String key = makeKey(midiBytes, synth);
+
+      File cacheDir = new File( System.getProperty("jj.midi.cache", CACHE_DIR) );
+      File wavFile = new File(cacheDir, key + ".wav");
+      if (wavFile.exists()) {
+        System.out.println("Using rendered " + midiFnm + ": " + wavFile);
+        return wavFile;
+      }
+
+      cacheDir.mkdirs();
+      Sequence seq = MidiSystem.getSequence( new ByteArrayInputStream(midiBytes) );
+      long startTime = System.currentTimeMillis();
+      File tmpFile = new File(cacheDir, key + ".tmp");
+      renderSequence(seq, synth, tmpFile);
+      if (!tmpFile.renameTo(wavFile)) {
+        tmpFile.delete();
+        throw new IOException("Could not rename " + tmpFile);
+      }
+      System.out.println("Rendered " + midiFnm + " to " + wavFile + " in " +
+                   (System.currentTimeMillis() - startTime) + " ms");
+      return wavFile;
+    }
+    catch (Exception e) {
+      System.out.println("Could not render " + midiFnm + ": " + e);
+      if (e instanceof IllegalAccessException)
+        System.out.println("  Run with --add-exports " +
+                            "java.desktop/com.sun.media.sound=ALL-UNNAMED");
+      return null;
+    }
+  }  // end of render()
+
+
+  public static long getLoopFrames(File wavFile)
+  /* The number of frames of the rendered sequence, without the
+     tail, or -1 if the file can't be read. */
+  {
+    try {
+      AudioInputStream s = AudioSystem.getAudioInputStream(wavFile);
+      long numFrames = s.getFrameLength();
+      s.close();
+      if (numFrames == AudioSystem.NOT_SPECIFIED)
+        return -1;
+      return Math.max(numFrames - (long) (FORMAT.getFrameRate() * TAIL_SECS), 0);
+    }
+    catch (Exception e) {
+      System.out.println("Could not read: " + wavFile);
+      return -1;
+    }
+  }  // end of getLoopFrames()
+
+
+  public static long toFrames(long microsecs)
+  // the frame of a rendering played after microsecs
+  {  return (long) (FORMAT.getFrameRate() * microsecs / 1000000.0);  }
+
+
+  private static byte[] readMidiFile(String midiFnm) throws IOException
+  {
+    InputStream in;
+    AssetPack pack = AssetPack.getDefault();
+    if ((pack != null) && pack.contains(midiFnm))
+      in = pack.getStream(midiFnm);
+    else
+      in = MidiRenderer.class.getResourceAsStream(midiFnm);
+    if (in == null)
+      throw new FileNotFoundException(midiFnm);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buf = new byte[8192];
+    int n;
+    while ((n = in.read(buf)) != -1)
+      bytes.write(buf, 0, n);
+    in.close();
+    return bytes.toByteArray();
+  }  // end of readMidiFile()
+
+
+  private static String makeKey(byte[] midiBytes, Synthesizer synth)
+                             throws NoSuchAlgorithmException, IOException
+  // a hash of the MIDI data, the soundbank, and the output format
+  {
+    MessageDigest md = MessageDigest.getInstance("SHA-1");
+    md.update(midiBytes);
+
+    Soundbank sb = synth.getDefaultSoundbank();
+    String sbDesc = (sb == null) ? "no soundbank" :
+           sb.getName() + "/" + sb.getVersion() + "/" + sb.getVendor();
+    md.update( (sbDesc + "/" + FORMAT).getBytes("UTF-8") );
+
+    byte[] digest = md.digest();
+    StringBuffer sb16 = new StringBuffer();
+    for (int i=0; i < digest.length; i++) {
+      String hex = Integer.toHexString(digest[i] & 0xFF);
+      if (hex.length() == 1)
+        sb16.append('0');
+      sb16.append(hex);
+    }
+    return sb16.toString();
+  }  // end of makeKey()
+
+
+  // ----------------------- rendering ---------------------------
+
+
+  private static void renderSequence(Sequence seq, Synthesizer synth,
+                                             File outFile) throws Exception
+  {
+    AudioInputStream synthStream = openStream(synth);
+    try {
+      Receiver rcv = synth.getReceiver();
+      long lastTime = sendEvents(seq, rcv);
+
+      long numFrames = (long) (FORMAT.getFrameRate() *
+                               (lastTime/1000000.0 + TAIL_SECS));
+      AudioInputStream out = new AudioInputStream(synthStream, FORMAT, numFrames);
+      AudioSystem.write(out, AudioFileFormat.Type.WAVE, outFile);
+    }
+    finally {
+      synth.close();
+    }
+  }  // end of renderSequence()
+
+
+  private static AudioInputStream openStream(Synthesizer synth)
+                                          throws Exception
+  // call synth.openStream(FORMAT, null) by reflection
+  {
+    Method m = synth.getClass().getMethod("openStream",
+                           new Class[] {AudioFormat.class, Map.class});
+    try {
+      return (AudioInputStream) m.invoke(synth, new Object[] {FORMAT, null});
+    }
+    catch (InvocationTargetException e) {
+      throw (Exception) e.getCause();
+    }
+  }  // end of openStream()
+
+
+  private static long sendEvents(Sequence seq, Receiver rcv)
+  /* Send all the sequence's events (apart from meta messages)
+     to the receiver, timestamped in microsecs. The events of all
+     the tracks are merged in tick order, so that tempo changes are
+     applied to later events in every track. Return the time of
+     the last event. */
+  {
+    Track[] tracks = seq.getTracks();
+    int[] posns = new int[tracks.length];   // next event in each track
+
+    boolean isPPQ = (seq.getDivisionType() == Sequence.PPQ);
+    double usPerTick;
+    if (isPPQ)
+      usPerTick = 500000.0 / seq.getResolution();   // default tempo: 120 bpm
+    else
+      usPerTick = 1000000.0 / (seq.getDivisionType() * seq.getResolution());
+
+    long lastTick = 0;
+    double time = 0;     // in microsecs, at lastTick
+    while (true) {
+      // find the track with the earliest next event
+      int t = -1;
+      for (int i=0; i < tracks.length; i++) {
+        if ((posns[i] < tracks[i].size()) && ((t == -1) ||
+            (tracks[i].get(posns[i]).getTick() < tracks[t].get(posns[t]).getTick())))
+          t = i;
+      }
+      if (t == -1)
+        break;
+
+      MidiEvent ev = tracks[t].get(posns[t]++);
+      time += (ev.getTick() - lastTick) * usPerTick;
+      lastTick = ev.getTick();
+
+      MidiMessage msg = ev.getMessage();
+      if (msg instanceof MetaMessage) {
+        MetaMessage meta = (MetaMessage) msg;
+        if (isPPQ && (meta.getType() == SET_TEMPO)) {
+          byte[] d = meta.getData();
+          int usPerQuarter = ((d[0] & 0xFF) << 16) | ((d[1] & 0xFF) << 8) | (d[2] & 0xFF);
+          usPerTick = (double) usPerQuarter / seq.getResolution();
+        }
+      }
+      else
+        rcv.send(msg, (long) time);
+    }
+    return (long) time;
+  }  // end of sendEvents()
+
+}  // end of MidiRenderer class
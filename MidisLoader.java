@@ -22,6 +22,30 @@
    A reference to the sequencer is passed to each MidiInfo object,
    which are responsible for playing, stopping, resuming and looping
    their sequences.
+
+   Opening the sequencer and linking it to the synthesizer can be
+   slow, so it's done by a separate thread (see startSequencer()),
+   and the MidisLoader constructors return immediately. Sequences
+   can be loaded and played before the sequencer is ready; a play
+   request is remembered, and started when the sequencer is ready.
+
+   loadRendered() renders a sequence to PCM ahead of time (see
+   MidiRenderer), and plays it as a StreamedClip, which avoids the
+   cost of running the synthesizer during the game. The rendering
+   is done by a separate thread, so it doesn't hold up the game's
+   start; until it's ready, the sequence is played by the sequencer,
+   and the StreamedClip then takes over from the same point. Once
+   every loaded sequence has been rendered, the sequencer and its
+   synthesizer are closed; they're opened again if a sequence is
+   loaded later.
+
+   The clips which aren't played by the sequencer (renderings, and
+   the backend's clips) report their ends to a ClipWatcher, which
+   forwards them to the MidisLoader's watcher, like meta() does.
+
+   If MidisLoader is given an AudioBackend which doesn't use the
+   sound devices (e.g. NullAudioBackend), no sequencer is opened,
+   and the sequences are loaded as clips by the backend instead.
 */
 
 
@@ -39,36 +63,121 @@ public class MidisLoader implements MetaEventListener
 
   private final static String SOUND_DIR = "Sounds/";
 
-  private Sequencer sequencer;
+  private Sequencer sequencer = null;
+  private Synthesizer synthesizer = null;   // linked to the sequencer
+  private boolean isStarting = false;   // is the sequencer being opened?
+  private boolean isClosed = false;
+  private boolean allRendered = false;
+     // was the sequencer closed since every sequence has been rendered?
+
+  // a play request made before the sequencer was ready
+  private boolean isPending = false;
+  private boolean pendingLoop, pendingPaused;
+
+  // how the current sequence is being played
+  private boolean currentLoop = false;
+  private boolean currentPaused = false;
 
   private HashMap midisMap;
-  private MidiInfo currentMidi = null;   
-        // reference to currently playing MidiInfo object
+  private SoundClip currentMidi = null;   
+        /* reference to currently playing MidiInfo object
+           (or backend clip, if there's no sequencer) */
+
+  private AudioBackend backend = null;
 
   private SoundsWatcher watcher = null;
+  private ClipWatcher clipWatcher = new ClipWatcher();
 
 
   public MidisLoader() 
   {midisMap = new HashMap();
-    initSequencer();
+    startSequencer();
   }
 
   public MidisLoader(String soundsFnm) 
   { midisMap = new HashMap();
-    initSequencer();
+    startSequencer();
+    loadSoundsFile(soundsFnm);
+  }
+
+  public MidisLoader(AudioBackend ab)
+  { midisMap = new HashMap();
+    backend = ab;
+    if (backend.usesDevices())
+      startSequencer();
+  }
+
+  public MidisLoader(String soundsFnm, AudioBackend ab)
+  { this(ab);
     loadSoundsFile(soundsFnm);
   }
 
 
-  private void initSequencer() 
+  private void startSequencer()
+  // initialise the sequencer in a separate thread
+  {
+    isStarting = true;
+    Thread t = new Thread("MidiInit") {
+      public void run()
+      {  sequencerReady( initSequencer() );  }
+    };
+    t.setDaemon(true);
+    t.start();
+  }  // end of startSequencer()
+
+
+  private synchronized void sequencerReady(Sequencer sqr)
+  /* Called by the initialisation thread. Pass the sequencer
+     to the loaded MidiInfo objects, and start any pending
+     play request. */
+  {
+    isStarting = false;
+    if (isClosed) {    // close() was called while waiting
+      if (sqr != null)
+        sqr.close();
+      return;
+    }
+    sequencer = sqr;
+    if (sequencer == null) {   // the sequences can't be played
+      Iterator it = midisMap.values().iterator();
+      while (it.hasNext())
+        if (it.next() instanceof MidiInfo)
+          it.remove();
+      if (currentMidi instanceof MidiInfo) {
+        currentMidi = null;
+        isPending = false;
+      }
+      return;
+    }
+
+    Iterator it = midisMap.values().iterator();
+    Object mi;
+    while (it.hasNext()) {
+      mi = it.next();
+      if (mi instanceof MidiInfo)    // not a rendered sequence
+        ((MidiInfo) mi).setSequencer(sequencer);
+    }
+
+    if (isPending && (currentMidi != null)) {
+      isPending = false;
+      currentMidi.play(pendingLoop);
+      if (pendingPaused)
+        currentMidi.pause();
+    }
+    closeIfRendered();    // in case the renderings were quicker
+  }  // end of sequencerReady()
+
+
+  private Sequencer initSequencer() 
   /* Set up the MIDI sequencer, and the sequencer's meta-event
      listener. No synthesizer is used here. */
   {
+    Sequencer sequencer = null;
     try {
       sequencer = MidiSystem.getSequencer();
       if (sequencer == null) {
         System.out.println("Cannot get a sequencer");
-        return;
+        return null;
       }
 
       sequencer.open();
@@ -78,16 +187,22 @@ public class MidisLoader implements MetaEventListener
       // so link sequencer --> synth (this is required in J2SE 1.5)
       if (!(sequencer instanceof Synthesizer)) {
         System.out.println("Linking the MIDI sequencer and synthesizer");
-        Synthesizer synthesizer = MidiSystem.getSynthesizer();
-        Receiver synthReceiver = synthesizer.getReceiver();
+        Synthesizer synth = MidiSystem.getSynthesizer();
+        synchronized(this) {
+          synthesizer = synth;
+        }
+        Receiver synthReceiver = synth.getReceiver();
         Transmitter seqTransmitter = sequencer.getTransmitter();
         seqTransmitter.setReceiver(synthReceiver);
       }
     }
     catch (MidiUnavailableException e){
       System.out.println("No sequencer available");
+      if (sequencer != null)
+        sequencer.close();
       sequencer = null;
     }
+    return sequencer;
   } // end of initSequencer()
 
 
@@ -101,7 +216,12 @@ public class MidisLoader implements MetaEventListener
     String sndsFNm = SOUND_DIR + soundsFnm;
     System.out.println("Reading file: " + sndsFNm);
     try {
-      InputStream in = this.getClass().getResourceAsStream(sndsFNm);
+      InputStream in;
+      AssetPack pack = AssetPack.getDefault();
+      if ((pack != null) && pack.contains(sndsFNm))
+        in = pack.getStream(sndsFNm);
+      else
+        in = this.getClass().getResourceAsStream(sndsFNm);
       BufferedReader br = new BufferedReader( new InputStreamReader(in));
       // BufferedReader br = new BufferedReader( new FileReader(sndsFNm));
       StringTokenizer tokens;
@@ -130,13 +250,23 @@ public class MidisLoader implements MetaEventListener
   }  // end of loadSoundsFile()
 
 
-  public void close()
+  public synchronized void close()
   /* Close down the sequencer (and any playing sequence).
      This is different from close() in ClipsLoader in
      that it is dealing with the sequencer primarily, rather
      than a particular midi sequence. 
   */
   { stop();    // stop the playing sequence
+    isClosed = true;
+    closeSequencer();
+  }  // end of close()
+
+
+  private void closeSequencer()
+  /* Close the sequencer, and the synthesizer linked to it. The
+     default synthesizer which MidiSystem connected the sequencer to
+     is closed with it. */
+  {
     if (sequencer != null) {
       if (sequencer.isRunning())
         sequencer.stop();
@@ -145,7 +275,27 @@ public class MidisLoader implements MetaEventListener
       sequencer.close();
       sequencer = null;
     }
-  }  // end of close()
+    if (synthesizer != null) {
+      synthesizer.close();
+      synthesizer = null;
+    }
+  }  // end of closeSequencer()
+
+
+  private void closeIfRendered()
+  /* If every loaded sequence has been rendered, no sequence needs
+     the sequencer, so close it, and its synthesizer. */
+  {
+    if ((sequencer == null) || midisMap.isEmpty())
+      return;
+    Iterator it = midisMap.values().iterator();
+    while (it.hasNext())
+      if (it.next() instanceof MidiInfo)
+        return;     // still played by the sequencer
+    closeSequencer();
+    allRendered = true;
+    System.out.println("Closed the MIDI sequencer: all the sequences are rendered");
+  }  // end of closeIfRendered()
 
 
   public void setWatcher(SoundsWatcher sw)
@@ -156,14 +306,24 @@ public class MidisLoader implements MetaEventListener
   // ----------- manipulate a particular midi sequence --------
 
 
-  public void load(String name, String fnm)
-  // create a MidiInfo object, and store it under name
+  public synchronized void load(String name, String fnm)
+  /* Create a MidiInfo object, and store it under name. If the
+     sequencer is still being opened, the MidiInfo is given it later. */
   {
     if (midisMap.containsKey(name))
       System.out.println( "Error: " + name + "already stored");
-    else if (sequencer == null)
+    else if ((backend != null) && !backend.usesDevices()) {
+      SoundClip clip = backend.loadClip(name, fnm, 1);
+      clip.setWatcher(clipWatcher);
+      midisMap.put(name, clip);
+    }
+    else if ((sequencer == null) && !isStarting && !allRendered)
       System.out.println( "No sequencer for: " + name);
     else {
+      if (allRendered) {   // the sequencer is needed again
+        allRendered = false;
+        startSequencer();
+      }
       midisMap.put(name, new MidiInfo(name, fnm, sequencer) );
       System.out.println("-- " + name + "/" + fnm);
     }
@@ -171,10 +331,83 @@ public class MidisLoader implements MetaEventListener
 
 
 
-  public void play(String name, boolean toLoop)
-  // play (perhaps loop) the sequence
+  public synchronized void loadRendered(String name, String fnm)
+  /* Load the sequence normally, and render it to a (cached) WAV
+     file with MidiRenderer in a separate thread. A StreamedClip of
+     the rendering replaces the sequence when it's ready (see
+     renderReady()), so no synthesizer is needed while it plays. */
+  {
+    if (midisMap.containsKey(name))
+      System.out.println( "Error: " + name + "already stored");
+    else {
+      load(name, fnm);
+      if ((backend == null) || backend.usesDevices())
+        startRenderer(name, fnm);
+    }
+  }  // end of loadRendered()
+
+
+  private void startRenderer(final String name, final String fnm)
+  // render the sequence in a separate, low priority thread
+  {
+    Thread t = new Thread("MidiRender") {
+      public void run()
+      {  renderReady(name, MidiRenderer.render(fnm));  }
+    };
+    t.setPriority(Thread.MIN_PRIORITY);
+    t.setDaemon(true);
+    t.start();
+  }  // end of startRenderer()
+
+
+  private void renderReady(String name, File wavFile)
+  /* Called by the rendering thread. Store a StreamedClip of the
+     rendering in place of the sequence. If the sequence is playing,
+     it's stopped, and the StreamedClip carries on from the same
+     point. If it couldn't be rendered, the sequencer is kept. */
+  {
+    if (wavFile == null)
+      return;
+    StreamedClip sc = new StreamedClip(name, wavFile);   // opens a line
+    sc.setLoopEnd( MidiRenderer.getLoopFrames(wavFile) );   // skip the tail
+    sc.setWatcher(clipWatcher);
+
+    synchronized(this) {
+      if (isClosed) {
+        sc.close();
+        return;
+      }
+      Object mi = midisMap.put(name, sc);
+      System.out.println("-- " + name + " (rendered)");
+      if ((mi != null) && (currentMidi == mi)) {   // it's playing
+        currentMidi = sc;
+        if (isPending) {     // the sequencer hadn't started it
+          isPending = false;
+          sc.play(pendingLoop);
+          if (pendingPaused)
+            sc.pause();
+        }
+        else {
+          long frame = MidiRenderer.toFrames(
+                               ((MidiInfo) mi).getMicrosecondPosition() );
+          ((MidiInfo) mi).stop();
+             // its end-of-track is ignored by meta(), as it's no longer current
+          sc.playFrom(frame, currentLoop);
+          if (currentPaused)
+            sc.pause();
+        }
+      }
+      closeIfRendered();
+    }
+  }  // end of renderReady()
+
+
+
+  public synchronized void play(String name, boolean toLoop)
+  /* Play (perhaps loop) the sequence. If the sequencer isn't
+     ready yet, it will start playing when it is. */
   { 
-     MidiInfo mi = (MidiInfo) midisMap.get(name);
+     SoundClip mi = (SoundClip) midisMap.get(name);
      if (mi == null)
        System.out.println( "Error: " + name + "not stored");
      else {
@@ -183,32 +416,54 @@ public class MidisLoader implements MetaEventListener
                               " already playing");
        else {
         currentMidi = mi;   // store a reference to playing midi
-        mi.play(toLoop);
+        currentLoop = toLoop;
+        currentPaused = false;
+        if (isStarting && (mi instanceof MidiInfo)) {
+          isPending = true;
+          pendingLoop = toLoop;
+          pendingPaused = false;
+        }
+        else
+          mi.play(toLoop);
        }
      }
   } // end of play()
 
 
 
-  public void stop()
-  { if (currentMidi != null)
+  public synchronized void stop()
+  { if (isPending) {     // not started yet
+      isPending = false;
+      currentMidi = null;
+    }
+    else if (currentMidi != null) {
       currentMidi.stop();    // triggers an 'end-of-track' meta event
-    else                     // which causes meta() to be called here
+                             // which causes meta() to be called here
+      if (!(currentMidi instanceof MidiInfo))   // except for other clips
+        currentMidi = null;
+    }
+    else
       System.out.println("No music playing");
   } // end of stop()
 
 
 
-  public void pause()
-  { if (currentMidi != null)
+  public synchronized void pause()
+  { currentPaused = true;
+    if (isPending)
+      pendingPaused = true;
+    else if (currentMidi != null)
       currentMidi.pause();
     else
       System.out.println( "No music to pause");
   } // end of pause()
 
 
-  public void resume()
-  { if (currentMidi != null)
+  public synchronized void resume()
+  { currentPaused = false;
+    if (isPending)
+      pendingPaused = false;
+    else if (currentMidi != null)
       currentMidi.resume();
     else
       System.out.println("No music to resume");
@@ -222,27 +477,72 @@ public class MidisLoader implements MetaEventListener
   /* Called when a meta event occurs during sequence playing. 
      The code only deals with an end-of-track event, which can be 
      triggered by the MidisInfo object when a sequence reaches its end 
-     _or_ is stopped. However, a sequence at its end may be looping,
-     and so this is checked by calling tryLooping() in MidiInfo.
+     _or_ is stopped.
+
+     A looping sequence is looped by the sequencer itself (see
+     MidiInfo.play()), so it doesn't normally reach its end.
+     tryLooping() in MidiInfo restarts it if it does. Instead, each
+     loop is signalled by the loop marker event at the start of the
+     sequence (see MidiInfo.atLoopMarker()).
 
      If there is a watcher, it is notified of the status.
   */
   {
-    if (meta.getType() == END_OF_TRACK) {
-      String name = currentMidi.getName();
-      // System.out.println("  END_OF_TRACK for " + name);
-      boolean hasLooped = currentMidi.tryLooping();  // music still looping?
-      if (!hasLooped)   // no it's finished
-        currentMidi = null;
-
-      if (watcher != null) {   // tell the watcher
-        if (hasLooped)      // the music is playing again
-          watcher.atSequenceEnd(name, SoundsWatcher.REPLAYED);
-        else   // the music has finished
-          watcher.atSequenceEnd(name, SoundsWatcher.STOPPED);
+    boolean isEnd = (meta.getType() == END_OF_TRACK);
+    if (!isEnd && !MidiInfo.isLoopMarker(meta))
+      return;
+
+    String name;
+    boolean hasLooped;
+    synchronized(this) {
+      if (!(currentMidi instanceof MidiInfo))   // not played by the sequencer
+        return;
+      name = currentMidi.getName();
+      if (isEnd) {
+        // System.out.println("  END_OF_TRACK for " + name);
+        hasLooped = ((MidiInfo) currentMidi).tryLooping();  // music still looping?
+        if (!hasLooped)   // no it's finished
+          currentMidi = null;
       }
+      else if (((MidiInfo) currentMidi).atLoopMarker())
+        hasLooped = true;
+      else
+        return;    // the sequence has only just started
+    }
+
+    if (watcher != null) {   // tell the watcher
+      if (hasLooped)      // the music is playing again
+        watcher.atSequenceEnd(name, SoundsWatcher.REPLAYED);
+      else   // the music has finished
+        watcher.atSequenceEnd(name, SoundsWatcher.STOPPED);
     }
   } // end of meta()
 
 
+  private void clipEnded(String name, int status)
+  /* Called by the ClipWatcher when a clip not played by the
+     sequencer stops or loops. A stopped clip is no longer the
+     current one, and the watcher is told, as in meta(). */
+  {
+    synchronized(this) {
+      if ((status == SoundsWatcher.STOPPED) && (currentMidi != null) &&
+          !(currentMidi instanceof MidiInfo) &&
+          currentMidi.getName().equals(name))
+        currentMidi = null;
+    }
+    if (watcher != null)
+      watcher.atSequenceEnd(name, status);
+  }  // end of clipEnded()
+
+
+  // ---------------------------------------------------------
+
+  private class ClipWatcher implements SoundsWatcher
+  // passes the ends of the clips which aren't MidiInfos to clipEnded()
+  {
+    public void atSequenceEnd(String name, int status)
+    {  clipEnded(name, status);  }
+  }
+
+
 } // end of MidisLoader class
\ No newline at end of file
@@ -0,0 +1,34 @@
+// MixerAudioBackend.java
+
+/* An AudioBackend which plays all its clips through a single
+   SoundMixer line, as MixerClip objects. Long sounds are still
+   streamed by a StreamedClip, using its own line.
+*/
+
+public class MixerAudioBackend implements AudioBackend
+{
+  private SoundMixer mixer;
+
+
+  public MixerAudioBackend()
+  {  mixer = new SoundMixer();  }
+
+  public MixerAudioBackend(SoundMixer mx)
+  {  mixer = mx;  }
+
+
+  public SoundClip loadClip(String name, String fnm, int numVoices)
+  {
+    if (StreamedClip.isLong(fnm, LineAudioBackend.getStreamThreshold()))
+      return new StreamedClip(name, fnm);
+    return new MixerClip(name, fnm, numVoices, mixer);
+  }  // end of loadClip()
+
+
+  public boolean usesDevices()
+  {  return true;  }
+
+  public void close()
+  {  mixer.close();  }
+
+}  // end of MixerAudioBackend class
@@ -0,0 +1,174 @@
+// MixerClip.java
+
+/* A sound which is played by a SoundMixer rather than by its
+   own Clip lines (see ClipInfo).
+
+   The sound file is decoded once, when the MixerClip is created,
+   and converted to the mixer's format (16-bit stereo at
+   SoundMixer.SAMPLE_RATE). Sample rate conversion uses linear
+   interpolation.
+
+   The clip can play in up to numVoices of the mixer's voices
+   at once. play(), stop(), pause() and resume() only change the
+   mixer's voice table, so never block on the sound device.
+*/
+
+import java.io.*;
+import javax.sound.sampled.*;
+
+
+public class MixerClip implements SoundClip
+{
+  private final static String SOUND_DIR = "Sounds/";
+
+  private String name, filename;
+  private SoundMixer mixer;
+  private int numVoices;
+  private SoundsWatcher watcher = null;
+
+  private short[] samples = new short[0];
+     // interleaved stereo samples in the mixer's format
+  private int numFrames = 0;
+
+
+  public MixerClip(String nm, String fnm, int nVoices, SoundMixer mx)
+  { name = nm;
+    filename = SOUND_DIR + fnm;
+    mixer = mx;
+    numVoices = (nVoices < 1) ? 1 : nVoices;
+    loadSamples(filename);
+  }  // end of MixerClip()
+
+
+  private void loadSamples(String fnm)
+  /* Decode the file to 16-bit signed little-endian PCM at its
+     own sample rate, then resample it to the mixer's rate
+     and channels. */
+  {
+    try {
+      AudioInputStream stream;
+      AssetPack pack = AssetPack.getDefault();
+      if ((pack != null) && pack.contains(fnm))
+        stream = AudioSystem.getAudioInputStream( pack.getStream(fnm) );
+      else
+        stream = AudioSystem.getAudioInputStream(
+                          getClass().getResource(fnm) );
+
+      AudioFormat format = stream.getFormat();
+      AudioFormat pcmFormat = new AudioFormat(format.getSampleRate(), 16,
+                              format.getChannels(), true, false);
+      if (!format.matches(pcmFormat))
+        stream = AudioSystem.getAudioInputStream(pcmFormat, stream);
+
+      byte[] data = readAll(stream);
+      stream.close();
+
+      resample(data, pcmFormat.getChannels(), pcmFormat.getSampleRate());
+      System.out.println(fnm + ": " + numFrames + " mixer frames; " +
+                                numVoices + " voice(s)");
+    }
+    catch (UnsupportedAudioFileException audioException) {
+      System.out.println("Unsupported audio file: " + fnm);
+    }
+    catch (IOException ioException) {
+      System.out.println("Could not read: " + fnm);
+    }
+    catch (Exception e) {
+      System.out.println("Problem with " + fnm);
+    }
+  }  // end of loadSamples()
+
+
+  private byte[] readAll(AudioInputStream stream) throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buf = new byte[8192];
+    int n;
+    while ((n = stream.read(buf)) != -1)
+      bytes.write(buf, 0, n);
+    return bytes.toByteArray();
+  }  // end of readAll()
+
+
+  private void resample(byte[] data, int channels, float rate)
+  /* Convert little-endian 16-bit samples with the given channels
+     and rate into the mixer's stereo samples. A mono sound is
+     copied to both channels, and only the first two channels of
+     a multi-channel sound are used. */
+  {
+    int srcFrames = data.length / (2*channels);
+    if (srcFrames == 0)
+      return;
+    double step = rate / SoundMixer.SAMPLE_RATE;   // source frames per output frame
+    numFrames = (int) (srcFrames / step);
+    samples = new short[numFrames * SoundMixer.CHANNELS];
+
+    for (int f=0; f < numFrames; f++) {
+      double srcPosn = f * step;
+      int s0 = (int) srcPosn;
+      int s1 = Math.min(s0+1, srcFrames-1);
+      double frac = srcPosn - s0;
+      for (int c=0; c < SoundMixer.CHANNELS; c++) {
+        int srcChannel = Math.min(c, channels-1);
+        int a = getSample(data, s0, srcChannel, channels);
+        int b = getSample(data, s1, srcChannel, channels);
+        samples[f*SoundMixer.CHANNELS + c] = (short) (a + (b-a)*frac);
+      }
+    }
+  }  // end of resample()
+
+
+  private int getSample(byte[] data, int frame, int channel, int channels)
+  { int i = 2 * (frame*channels + channel);
+    return (short) ((data[i] & 0xFF) | (data[i+1] << 8));
+  }
+
+
+  // --------------- called by SoundMixer --------------------
+
+  public short[] getSamples()
+  {  return samples;  }
+
+  public int getNumFrames()
+  {  return numFrames;  }
+
+
+  public void voiceEnded(int status)
+  // one of the clip's voices has stopped, or looped
+  { if (watcher != null)
+      watcher.atSequenceEnd(name, status);
+  }
+
+
+  // ----------------- SoundClip methods ---------------------
+
+  public void play(boolean toLoop)
+  {  play(toLoop, ClipInfo.DEFAULT_PRIORITY);  }
+
+  public void play(boolean toLoop, int priority)
+  {  mixer.startVoice(this, toLoop, priority, numVoices);  }
+
+
+  public void stop()
+  { boolean wasBusy = mixer.stopVoices(this);
+    if ((watcher != null) && wasBusy)
+      watcher.atSequenceEnd(name, SoundsWatcher.STOPPED);
+  }
+
+  public void pause()
+  {  mixer.pauseVoices(this, true);  }
+
+  public void resume()
+  {  mixer.pauseVoices(this, false);  }
+
+  public void close()
+  {  mixer.stopVoices(this);  }
+
+
+  public void setWatcher(SoundsWatcher sw)
+  {  watcher = sw;  }
+
+  public String getName()
+  {  return name;  }
+
+}  // end of MixerClip class
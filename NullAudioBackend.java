@@ -0,0 +1,18 @@
+// NullAudioBackend.java
+
+/* An AudioBackend which plays nothing. Its clips are SilentClip
+   objects, which don't read their sound files, so loading is
+   immediate and no sound devices are opened.
+*/
+
+public class NullAudioBackend implements AudioBackend
+{
+  public SoundClip loadClip(String name, String fnm, int numVoices)
+  {  return new SilentClip(name, null);  }
+
+  public boolean usesDevices()
+  {  return false;  }
+
+  public void close() {}
+
+}  // end of NullAudioBackend class
@@ -0,0 +1,55 @@
+
+// ParticleEmitter.java
+
+/* Describes a burst of particles, such as the sparks of an
+   explosion, and starts one in a ParticleSystem with emit().
+
+   A burst is count particles, fired from the same point in
+   directions spread evenly at random across spread degrees,
+   centered on angle (0 is to the right, 90 is up). Each one has
+   a random speed between speed/2 and speed, a life between
+   life/2 and life ticks, and one of the numColors colours
+   starting at the index firstColor in the ParticleSystem.
+
+   FireBallSprite impacts (through JackPanel.showExplosion())
+   and JumperSprite landings are attached to emitters.
+*/
+
+
+public class ParticleEmitter
+{
+  private int count;
+  private float speed;           // in pixels/tick
+  private double angle, spread;  // in radians
+  private int life;              // in ticks
+  private int firstColor, numColors;
+
+
+  public ParticleEmitter(int count, float speed, double angle, double spread,
+                                  int life, int firstColor, int numColors)
+  {
+    this.count = count;
+    this.speed = speed;
+    this.angle = Math.toRadians(angle);
+    this.spread = Math.toRadians(spread);
+    this.life = life;
+    this.firstColor = firstColor;
+    this.numColors = (numColors < 1) ? 1 : numColors;
+  }  // end of ParticleEmitter()
+
+
+  public void emit(ParticleSystem ps, float x, float y)
+  // start a burst of particles at (x,y)
+  {
+    double a;
+    float s;
+    for (int i=0; i < count; i++) {
+      a = angle + spread*(Math.random() - 0.5);
+      s = speed * (float)(0.5 + Math.random()/2);
+      ps.spawn(x, y, s*(float)Math.cos(a), -s*(float)Math.sin(a),
+               life/2 + (int)(Math.random()*(life - life/2 + 1)),
+               firstColor + (int)(Math.random()*numColors));
+    }
+  }  // end of emit()
+
+}  // end of ParticleEmitter class
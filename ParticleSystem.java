@@ -0,0 +1,192 @@
+
+// ParticleSystem.java
+
+/* Small, short-lived coloured dots, such as the sparks of an
+   explosion, or the dust kicked up when jack lands. They are
+   started in bursts by ParticleEmitters.
+
+   Like ProjectileSystem, the particles are stored in parallel
+   arrays, one for each field (position, velocity, life left in
+   ticks, and colour index), and update() and draw() work
+   through them all in one loop. The live particles are packed
+   at the front of the arrays: when one dies, the last one is
+   copied into its place.
+
+   There is a hard cap on the number of particles, set when the
+   system is created (JackPanel uses -Djj.particles), so the cost
+   of the effects can be limited on a slow machine. When every
+   particle is in use, spawn() reuses the one at the recycle
+   position, which moves on by one each time. So a burst replaces
+   the particles spread over the whole array, rather than all
+   of one older burst, and no searching is needed.
+
+   The colours are registered with addColor(), which returns the
+   index used by spawn(). Each colour has a Color for drawing
+   with Graphics, and a solid SIZE*SIZE BlitImage, so the dots
+   can be written straight into the back buffer's pixels by a
+   RasterBlitter (which also works when its draws are recorded
+   for a BandCompositor).
+
+   Every particle falls under GRAVITY, and dies when its life
+   runs out, or it leaves the panel.
+   Nothing is allocated after the system and its colours have
+   been created.
+*/
+
+import java.awt.*;
+import java.awt.image.*;
+
+
+public class ParticleSystem
+{
+  private final static int MAX_COLORS = 32;
+  private final static int SIZE = 2;          // of a particle's square
+  private final static float GRAVITY = 0.4f;  // added to dy every tick
+
+  private int pWidth, pHeight;    // panel dimensions
+  private int capacity;
+
+  // the particles' fields, the live ones at 0 to numActive-1
+  private float[] xs, ys;       // top-left corners
+  private float[] dxs, dys;     // velocities, in pixels/tick
+  private int[] lives;          // ticks left
+  private int[] colors;         // colour indices
+  private int numActive = 0;
+  private int recycle = 0;      // the next particle reused when full
+
+  // the registered colours
+  private Color[] awtColors = new Color[MAX_COLORS];
+  private BlitImage[] dots = new BlitImage[MAX_COLORS];
+  private int numColors = 0;
+
+
+  public ParticleSystem(int w, int h, int capacity)
+  {
+    pWidth = w; pHeight = h;
+    if (capacity < 0)
+      capacity = 0;
+    this.capacity = capacity;
+
+    xs = new float[capacity];
+    ys = new float[capacity];
+    dxs = new float[capacity];
+    dys = new float[capacity];
+    lives = new int[capacity];
+    colors = new int[capacity];
+  }  // end of ParticleSystem()
+
+
+  public int addColor(int rgb)
+  // register an opaque colour, and return its index (or -1)
+  {
+    if (numColors == MAX_COLORS) {
+      System.out.println("Too many particle colours");
+      return -1;
+    }
+    awtColors[numColors] = new Color(rgb);
+    BufferedImage im = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+    for (int y=0; y < SIZE; y++)
+      for (int x=0; x < SIZE; x++)
+        im.setRGB(x, y, 0xff000000 | rgb);
+    dots[numColors] = new BlitImage(im);
+    return numColors++;
+  }  // end of addColor()
+
+
+
+  // ---------------------- spawning -----------------------------
+
+
+  public void spawn(float x, float y, float dx, float dy, int life, int color)
+  /* Start a particle at (x,y), moving by (dx,dy) each tick, for
+     life ticks. If the system is full, a live particle is reused. */
+  {
+    if ((capacity == 0) || (life <= 0) || (color < 0) || (color >= numColors))
+      return;
+    int i;
+    if (numActive < capacity)
+      i = numActive++;
+    else {
+      i = recycle;
+      recycle = (recycle+1) % capacity;
+    }
+    xs[i] = x;
+    ys[i] = y;
+    dxs[i] = dx;
+    dys[i] = dy;
+    lives[i] = life;
+    colors[i] = color;
+  }  // end of spawn()
+
+
+  public void clear()
+  // remove all the particles
+  {  numActive = 0;  }
+
+
+
+  // ------------------ batch update and draw ---------------------
+
+
+  public void update()
+  /* Move every particle, pulling it down by GRAVITY, and remove the
+     ones whose life has run out, or which are off the panel. */
+  {
+    int i = 0;
+    int last;
+    float x, y;
+    while (i < numActive) {
+      x = xs[i] + dxs[i];
+      y = ys[i] + dys[i];
+      lives[i]--;
+      if ((lives[i] <= 0) || (x + SIZE <= 0) || (x >= pWidth) ||
+                             (y + SIZE <= 0) || (y >= pHeight)) {
+        numActive--;      // copy the last particle into i
+        last = numActive;
+        xs[i] = xs[last];    ys[i] = ys[last];
+        dxs[i] = dxs[last];  dys[i] = dys[last];
+        lives[i] = lives[last];
+        colors[i] = colors[last];
+      }
+      else {
+        xs[i] = x;
+        ys[i] = y;
+        dys[i] += GRAVITY;
+        i++;
+      }
+    }
+    if (recycle >= numActive)
+      recycle = 0;
+  }  // end of update()
+
+
+  public void draw(Graphics g, RasterBlitter blitter)
+  // draw every particle, with blitter if it isn't null
+  {
+    if (blitter != null) {
+      for (int i=0; i < numActive; i++)
+        blitter.draw(dots[colors[i]], (int) xs[i], (int) ys[i]);
+    }
+    else {
+      int color = -1;
+      for (int i=0; i < numActive; i++) {
+        if (colors[i] != color) {    // only change colour when needed
+          color = colors[i];
+          g.setColor(awtColors[color]);
+        }
+        g.fillRect((int) xs[i], (int) ys[i], SIZE, SIZE);
+      }
+    }
+  }  // end of draw()
+
+
+
+  // ------------------------- accessors -------------------------
+
+  public int getNumActive()
+  {  return numActive;  }
+
+  public int getCapacity()
+  {  return capacity;  }
+
+}  // end of ParticleSystem class
@@ -0,0 +1,235 @@
+
+// ProjectileSystem.java
+
+/* A system of many small projectiles (e.g. fireballs), which
+   only move in straight lines, and are drawn with a single image.
+
+   Rather than being a Sprite object each, the projectiles are
+   stored in parallel arrays, one array for each field (positions,
+   velocities, lifetimes, image handles), indexed by a slot number.
+   update() and draw() work through all the projectiles in one
+   loop, without any method calls or objects per projectile.
+
+   The slots are allocated with a free-list: spawn() takes a slot
+   from the top of the free stack, and despawn() puts it back. The
+   slots in use are kept packed at the front of the active array,
+   so the loops only visit live projectiles; despawn() moves the
+   last active slot into the gap.
+
+   Images are registered once with addImage(), which returns a
+   handle used by spawn(). A projectile's bounding box is the size
+   of its image.
+
+   A projectile is despawned when its lifetime (in ticks) runs out,
+   or when it has gone off the panel and is moving away from it.
+   Collisions are found by adding the projectiles to a
+   CollisionWorld with addBodies().
+   Nothing is allocated after the system has been created.
+*/
+
+import java.awt.*;
+import java.awt.image.*;
+
+
+public class ProjectileSystem
+{
+  private final static int MAX_IMAGES = 16;
+  public final static int FOREVER = -1;    // a lifetime which never ends
+
+  private int pWidth, pHeight;    // panel dimensions
+  private int capacity;
+
+  // the projectiles' fields, indexed by slot
+  private float[] xs, ys;       // top-left corners
+  private float[] dxs, dys;     // velocities, in pixels/tick
+  private int[] lifetimes;      // ticks left, or FOREVER
+  private int[] imageIDs;       // image handles
+
+  private int[] freeSlots;      // a stack of the unused slots
+  private int numFree;
+  private int[] active;         // the used slots, packed at the front
+  private int numActive;
+  private int[] activePosn;     // slot --> its position in active[]
+
+  // the registered images
+  private BufferedImage[] images = new BufferedImage[MAX_IMAGES];
+  private int[] imWidths = new int[MAX_IMAGES];
+  private int[] imHeights = new int[MAX_IMAGES];
+  private int numImages = 0;
+
+
+  public ProjectileSystem(int w, int h, int capacity)
+  {
+    pWidth = w; pHeight = h;
+    this.capacity = capacity;
+
+    xs = new float[capacity];
+    ys = new float[capacity];
+    dxs = new float[capacity];
+    dys = new float[capacity];
+    lifetimes = new int[capacity];
+    imageIDs = new int[capacity];
+
+    freeSlots = new int[capacity];
+    for (int i=0; i < capacity; i++)
+      freeSlots[i] = capacity-1-i;   // so slot 0 is used first
+    numFree = capacity;
+    active = new int[capacity];
+    activePosn = new int[capacity];
+    numActive = 0;
+  }  // end of ProjectileSystem()
+
+
+  public int addImage(BufferedImage im)
+  // register an image, and return its handle (or -1)
+  {
+    if (im == null)
+      return -1;
+    if (numImages == MAX_IMAGES) {
+      System.out.println("Too many projectile images");
+      return -1;
+    }
+    images[numImages] = im;
+    imWidths[numImages] = im.getWidth();
+    imHeights[numImages] = im.getHeight();
+    return numImages++;
+  }  // end of addImage()
+
+
+
+  // ---------------------- spawning -----------------------------
+
+
+  public int spawn(float x, float y, float dx, float dy,
+                                 int lifetime, int imageID)
+  /* Start a projectile at (x,y), moving by (dx,dy) each tick, for
+     lifetime ticks (or FOREVER). Return its slot, or -1 if all
+     the slots are in use. */
+  {
+    if ((numFree == 0) || (imageID < 0) || (imageID >= numImages))
+      return -1;
+    int slot = freeSlots[--numFree];
+    xs[slot] = x;
+    ys[slot] = y;
+    dxs[slot] = dx;
+    dys[slot] = dy;
+    lifetimes[slot] = lifetime;
+    imageIDs[slot] = imageID;
+
+    active[numActive] = slot;
+    activePosn[slot] = numActive;
+    numActive++;
+    return slot;
+  }  // end of spawn()
+
+
+  public void despawn(int slot)
+  // remove the projectile in slot, and free the slot
+  {
+    int posn = activePosn[slot];
+    if ((posn >= numActive) || (active[posn] != slot))
+      return;    // not in use
+    numActive--;
+    int last = active[numActive];   // move the last active slot into the gap
+    active[posn] = last;
+    activePosn[last] = posn;
+    freeSlots[numFree++] = slot;
+  }  // end of despawn()
+
+
+  public void clear()
+  // despawn everything
+  { while (numActive > 0)
+      despawn(active[numActive-1]);
+  }
+
+
+
+  // ------------------ batch update and draw ---------------------
+
+
+  public void update()
+  /* Move every projectile, and despawn the ones whose lifetime has
+     run out, or which are off the panel and moving away from it. */
+  {
+    int i = 0;
+    int slot, id;
+    float x, y;
+    while (i < numActive) {
+      slot = active[i];
+      x = xs[slot] + dxs[slot];
+      y = ys[slot] + dys[slot];
+      xs[slot] = x;
+      ys[slot] = y;
+      id = imageIDs[slot];
+
+      if (lifetimes[slot] > 0)
+        lifetimes[slot]--;
+      if ((lifetimes[slot] == 0) ||
+          ((x + imWidths[id] <= 0) && (dxs[slot] <= 0)) ||    // off the left
+          ((x >= pWidth) && (dxs[slot] >= 0)) ||               // off the right
+          ((y + imHeights[id] <= 0) && (dys[slot] <= 0)) ||   // off the top
+          ((y >= pHeight) && (dys[slot] >= 0)))               // off the bottom
+        despawn(slot);    // the last active slot moves to i
+      else
+        i++;
+    }
+  }  // end of update()
+
+
+  public void draw(Graphics g, RasterBlitter blitter)
+  // draw every projectile, with blitter if it isn't null
+  {
+    int slot;
+    for (int i=0; i < numActive; i++) {
+      slot = active[i];
+      if (blitter != null)
+        blitter.draw(images[imageIDs[slot]], (int) xs[slot], (int) ys[slot]);
+      else
+        g.drawImage(images[imageIDs[slot]], (int) xs[slot], (int) ys[slot], null);
+    }
+  }  // end of draw()
+
+
+  public void addBodies(CollisionWorld world, int group, int mask)
+  // add every projectile's box to world, using its slot as the id
+  {
+    int slot, id;
+    for (int i=0; i < numActive; i++) {
+      slot = active[i];
+      id = imageIDs[slot];
+      world.add(slot, group, mask, (int) xs[slot], (int) ys[slot],
+                                   imWidths[id], imHeights[id]);
+    }
+  }  // end of addBodies()
+
+
+
+  // ------------------------- accessors -------------------------
+
+  public int getNumActive()
+  {  return numActive;  }
+
+  public int getCapacity()
+  {  return capacity;  }
+
+  public int getActiveSlot(int i)
+  // the slot of the i'th active projectile
+  {  return active[i];  }
+
+  public int getX(int slot)
+  {  return (int) xs[slot];  }
+
+  public int getY(int slot)
+  {  return (int) ys[slot];  }
+
+  public int getWidth(int slot)
+  {  return imWidths[imageIDs[slot]];  }
+
+  public int getHeight(int slot)
+  {  return imHeights[imageIDs[slot]];  }
+
+  public int getImageHeight(int imageID)
+  {  return imHeights[imageID];  }
+
+}  // end of ProjectileSystem class
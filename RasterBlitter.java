@@ -0,0 +1,191 @@
+
+// RasterBlitter.java
+
+/* A software blitter which draws BlitImages by writing straight
+   into the pixel array (the DataBufferInt) of a TYPE_INT_RGB
+   BufferedImage, such as JackPanel's back buffer.
+
+   drawImage() with source and destination rectangles goes through
+   Java2D's general loops, whose speed depends on the pipeline and
+   whether the images are accelerated. Here, an opaque span of
+   a row is copied with a single System.arraycopy(), and alpha is
+   only blended for the translucent spans. Transparent pixels are
+   skipped. So the cost is the same on every machine.
+
+   The ribbons and the bricks can be drawn with a RasterBlitter
+   (see setBlitter() in RibbonsManager and BricksManager). The rest
+   of the frame is drawn with Java2D into the same image as usual.
+   Using the image's DataBufferInt stops Java2D from accelerating
+   the image, which is why this path is optional.
+
+   Sprite images are drawn with draw(BufferedImage, x, y), which
+   prepares a BlitImage for each image the first time it's drawn,
+   and keeps it in a HashMap. So those images mustn't be changed
+   after they're first drawn.
+
+   If the blitter is given a DrawList (see setDrawList()), draws
+   are recorded in the list instead of being done, so they can be
+   done later by a BandCompositor, a band of rows at a time, with
+   drawList(). drawList() doesn't change the blitter's fields, so
+   several threads can draw different bands at once.
+*/
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+
+
+public class RasterBlitter
+{
+  private int[] dest;         // the destination's pixels
+  private int destWidth, destHeight;
+  private int scanStride;     // ints between the starts of rows
+  private int destOffset;     // index of the pixel at (0,0)
+
+  private HashMap blitImages = new HashMap();
+      // BufferedImage --> BlitImage, for draw(BufferedImage, x, y)
+  private DrawList recording = null;    // record draws here, if not null
+
+
+  public static boolean canDrawInto(BufferedImage im)
+  {  return (im != null) && (im.getType() == BufferedImage.TYPE_INT_RGB);  }
+
+
+  public RasterBlitter(BufferedImage im)
+  // im must be a TYPE_INT_RGB image (see canDrawInto())
+  {
+    WritableRaster raster = im.getRaster();
+    DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+    SinglePixelPackedSampleModel sm =
+               (SinglePixelPackedSampleModel) raster.getSampleModel();
+    dest = db.getData();
+    destWidth = im.getWidth();
+    destHeight = im.getHeight();
+    scanStride = sm.getScanlineStride();
+    destOffset = db.getOffset() -
+          (raster.getSampleModelTranslateY()*scanStride +
+           raster.getSampleModelTranslateX());
+  }  // end of RasterBlitter()
+
+
+  public void setDrawList(DrawList list)
+  // record draws in list, or do them straight away if list is null
+  {  recording = list;  }
+
+
+  public void draw(BufferedImage im, int dx, int dy)
+  // draw all of im with its top-left corner at (dx,dy)
+  {
+    BlitImage src = (BlitImage) blitImages.get(im);
+    if (src == null) {
+      src = new BlitImage(im);
+      blitImages.put(im, src);
+    }
+    draw(src, 0, 0, dx, dy, src.getWidth(), src.getHeight());
+  }  // end of draw()
+
+
+  public void draw(BlitImage src, int dx, int dy)
+  // draw all of src with its top-left corner at (dx,dy)
+  {  draw(src, 0, 0, dx, dy, src.getWidth(), src.getHeight());  }
+
+
+  public void draw(BlitImage src, int sx, int sy, int dx, int dy, int w, int h)
+  /* Draw the w*h rectangle of src whose top-left corner is at
+     (sx,sy), with that corner at (dx,dy) in the destination.
+     The rectangle is clipped to both images. */
+  {
+    if (recording != null)
+      recording.add(src, sx, sy, dx, dy, w, h);
+    else
+      draw(src, sx, sy, dx, dy, w, h, 0, destHeight);
+  }  // end of draw()
+
+
+  public void drawList(DrawList list, int y1, int y2)
+  /* Do the draws in list, in order, but only change the rows
+     of the destination from y1 to y2-1. */
+  {
+    int[] coords = list.getCoords();
+    int numDraws = list.size();
+    int i;
+    for (int d=0; d < numDraws; d++) {
+      i = 6*d;
+      draw(list.getImage(d), coords[i], coords[i+1], coords[i+2], coords[i+3],
+                             coords[i+4], coords[i+5], y1, y2);
+    }
+  }  // end of drawList()
+
+
+  private void draw(BlitImage src, int sx, int sy, int dx, int dy,
+                                    int w, int h, int y1, int y2)
+  // draw a rectangle of src, only changing destination rows y1 to y2-1
+  {
+    // clip to the destination's rows and columns
+    if (dx < 0) {  sx -= dx; w += dx; dx = 0;  }
+    if (dy < y1) {  sy += y1-dy; h -= y1-dy; dy = y1;  }
+    if (dx+w > destWidth)
+      w = destWidth - dx;
+    if (dy+h > y2)
+      h = y2 - dy;
+
+    // clip to the source
+    if (sx < 0) {  dx -= sx; w += sx; sx = 0;  }
+    if (sy < 0) {  dy -= sy; h += sy; sy = 0;  }
+    int srcWidth = src.getWidth();
+    if (sx+w > srcWidth)
+      w = srcWidth - sx;
+    if (sy+h > src.getHeight())
+      h = src.getHeight() - sy;
+    if ((w <= 0) || (h <= 0))
+      return;
+
+    int[] pixels = src.getPixels();
+    int srcRow, destRow;
+    for (int r=0; r < h; r++) {
+      srcRow = (sy+r)*srcWidth;
+      destRow = destOffset + (dy+r)*scanStride + dx - sx;
+          // so src column x goes to destRow + x
+      if (src.isOpaque())
+        System.arraycopy(pixels, srcRow+sx, dest, destRow+sx, w);
+      else
+        drawSpans(pixels, src.getRowSpans(sy+r), srcRow, destRow, sx, sx+w);
+    }
+  }  // end of draw()
+
+
+  private void drawSpans(int[] pixels, int[] spans, int srcRow, int destRow,
+                                                      int x1, int x2)
+  // draw the parts of a row's spans between columns x1 and x2-1
+  {
+    int start, end;
+    for (int i=0; i < spans.length; i += 3) {
+      start = Math.max(spans[i], x1);
+      end = Math.min(spans[i+1], x2);
+      if (start >= end)
+        continue;
+      if (spans[i+2] == BlitImage.OPAQUE)
+        System.arraycopy(pixels, srcRow+start, dest, destRow+start, end-start);
+      else
+        blend(pixels, srcRow, destRow, start, end);
+    }
+  }  // end of drawSpans()
+
+
+  private void blend(int[] pixels, int srcRow, int destRow, int start, int end)
+  // draw translucent pixels over the destination (SrcOver)
+  {
+    int s, d, alpha, inv, r, g, b;
+    for (int x = start; x < end; x++) {
+      s = pixels[srcRow+x];
+      d = dest[destRow+x];
+      alpha = s >>> 24;
+      inv = 255 - alpha;
+      r = (((s >> 16) & 0xff)*alpha + ((d >> 16) & 0xff)*inv) / 255;
+      g = (((s >> 8) & 0xff)*alpha + ((d >> 8) & 0xff)*inv) / 255;
+      b = ((s & 0xff)*alpha + (d & 0xff)*inv) / 255;
+      dest[destRow+x] = 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+  }  // end of blend()
+
+}  // end of RasterBlitter class
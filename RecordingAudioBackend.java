@@ -0,0 +1,74 @@
+// RecordingAudioBackend.java
+
+/* An AudioBackend which plays nothing, but records every sound
+   request (play, loop, stop, pause, resume, close) with the time
+   it was made, in ms since the backend was created.
+
+   The log is available from getLog(). When the backend is closed,
+   the log is written to the file named by the "jj.audio.log"
+   system property, or printed if there isn't one.
+
+   Like NullAudioBackend, no sound files are read and no sound
+   devices are opened.
+*/
+
+import java.io.*;
+import java.util.*;
+
+
+public class RecordingAudioBackend implements AudioBackend
+{
+  private long startTime;
+  private ArrayList log;     // of String lines
+
+
+  public RecordingAudioBackend()
+  { startTime = System.nanoTime();
+    log = new ArrayList();
+  }
+
+
+  public SoundClip loadClip(String name, String fnm, int numVoices)
+  { record(name, "load " + fnm, numVoices);
+    return new SilentClip(name, this);
+  }
+
+
+  public synchronized void record(String name, String action, int arg)
+  // called by the backend's SilentClip objects
+  { long ms = (System.nanoTime() - startTime)/1000000L;
+    log.add(ms + " " + name + " " + action + " " + arg);
+  }
+
+
+  public synchronized ArrayList getLog()
+  {  return new ArrayList(log);  }
+
+
+  public boolean usesDevices()
+  {  return false;  }
+
+
+  public void close()
+  {
+    ArrayList lines = getLog();
+    String logFnm = System.getProperty("jj.audio.log");
+    if (logFnm == null) {
+      System.out.println("Audio log (ms name action arg):");
+      for (int i=0; i < lines.size(); i++)
+        System.out.println("  " + lines.get(i));
+      return;
+    }
+
+    try {
+      PrintWriter out = new PrintWriter( new FileWriter(logFnm));
+      for (int i=0; i < lines.size(); i++)
+        out.println(lines.get(i));
+      out.close();
+      System.out.println("Audio log written to " + logFnm);
+    }
+    catch (IOException e)
+    { System.out.println("Could not write audio log " + logFnm + ": " + e);  }
+  }  // end of close()
+
+}  // end of RecordingAudioBackend class
@@ -0,0 +1,471 @@
+
+// RenderHarness.java
+
+/* Measure the cost of drawing the game by running JackPanel's
+   update and render code as fast as possible for a number of
+   seconds, drawing into an offscreen image instead of a window.
+
+     java RenderHarness [options]
+
+   Options:
+     -s <secs>         measured time for each run (default RUN_SECS)
+     -w <secs>         warmup time before each run (default WARMUP_SECS)
+     -target <name>    the image drawn into:
+                         buffered    a TYPE_INT_RGB BufferedImage (default)
+                         compatible  a screen-compatible BufferedImage
+                         volatile    a VolatileImage (may be accelerated)
+                         raster      a TYPE_INT_RGB BufferedImage, with the
+                                     background and sprites drawn by a
+                                     RasterBlitter
+                         tiled       the same, with the blitter's draws
+                                     split into bands, drawn in parallel
+                         all
+     -bands <n>        the number of bands for the tiled target
+                       (default: the number of processors, at least 2)
+     -scenario <name>  still, scrolling, explosion, help, swarm, or
+                       all (default)
+     -pipeline <name>  the Java2D pipeline: default, software, opengl,
+                       xrender, or d3d
+     -o <fnm>          also write the results as JSON
+     -check <ticks>    check that the game update and rendering
+                       don't allocate
+
+   The scenarios are scripted by pressing keys on the panel:
+     still      jack stands still, with the fireball moving
+     scrolling  jack runs left and right, jumping now and then
+     explosion  a new explosion starts every frame, in a different
+                place, so about a dozen are being shown at once
+     help       the help screen is shown over the paused game
+     swarm      extra fireballs are spawned at SWARM_RATE a second,
+                so thousands are on the panel at once
+
+   For each run, the sustained frames/sec, the median, 99th
+   percentile and maximum frame times, the bytes allocated
+   by the rendering thread per frame, the average overdraw of
+   the ribbons (see RibbonsManager), and the collision pairs tested
+   and hits per frame (see CollisionWorld), are reported. Running with
+   -Djj.cull=false draws the ribbons whole, for comparison.
+
+   -check runs all the scenarios' actions together (running,
+   jumping, explosions, a swarm of fireballs, and new games when
+   one is over) for the given number of ticks after a warmup,
+   without rendering, and then the same with rendering. Neither
+   may allocate any bytes, or the exit code is 1, so garbage
+   collections caused by the game update or drawing can be caught
+   in a build. The warmup is always CHECK_WARMUP frames, however
+   many ticks are checked, so the JIT has finished compiling the
+   code (and removing its short-lived allocations) before
+   the check starts.
+
+   The compatible and volatile targets need a display, so they
+   are skipped in a headless JVM. The JVM is made headless if only
+   targets which don't need one are used, and java.awt.headless
+   isn't set.
+   The pipeline must be chosen before AWT starts, so it's done
+   by setting the sun.java2d properties at the start of main().
+*/
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.*;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+
+public class RenderHarness
+{
+  private final static String[] TARGETS = {"buffered", "raster", "tiled",
+                                           "compatible", "volatile"};
+  private final static String[] SCENARIOS = {"still", "scrolling", "explosion",
+                                             "help", "swarm"};
+
+  private final static double RUN_SECS = 5.0;
+  private final static double WARMUP_SECS = 2.0;
+
+  private final static int PWIDTH = 500;   // same as JackPanel
+  private final static int PHEIGHT = 360;
+  private final static long PERIOD = 1000000000L/30;   // 30 FPS, in ns
+
+  private final static int TURN_FRAMES = 200;
+    // frames before jack changes direction while scrolling
+  private final static int JUMP_FRAMES = 25;   // frames between jumps
+  private final static double SWARM_RATE = 2400;
+    // fireballs spawned a second in the swarm scenario; one takes about
+    // 50 frames to cross the panel, so about 4000 are on it at once
+  private final static int CHECK_WARMUP = 20000;
+    // frames run by -check before measuring, so that the JIT has
+    // compiled (and removed the allocations from) all the code
+
+  private static PrintStream out;   // the real System.out
+  private static com.sun.management.ThreadMXBean threadBean = null;
+    // for the number of bytes allocated by a thread
+
+  private static GraphicsConfiguration gc = null;
+  private static VolatileImage volIm = null;   // the volatile target
+  private static String pipeline = "default";
+  private static int numBands =
+            Math.max(2, Runtime.getRuntime().availableProcessors());
+
+
+
+  public static void main(String args[])
+  {
+    double runSecs = RUN_SECS;
+    double warmupSecs = WARMUP_SECS;
+    String target = "buffered";
+    String scenario = "all";
+    String jsonFnm = null;
+    int checkTicks = 0;
+
+    try {
+      for (int i=0; i < args.length; i++) {
+        if (args[i].equals("-s"))
+          runSecs = Double.parseDouble(args[++i]);
+        else if (args[i].equals("-w"))
+          warmupSecs = Double.parseDouble(args[++i]);
+        else if (args[i].equals("-target"))
+          target = args[++i];
+        else if (args[i].equals("-scenario"))
+          scenario = args[++i];
+        else if (args[i].equals("-pipeline"))
+          pipeline = args[++i];
+        else if (args[i].equals("-bands"))
+          numBands = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-o"))
+          jsonFnm = args[++i];
+        else if (args[i].equals("-check"))
+          checkTicks = Integer.parseInt(args[++i]);
+        else
+          throw new IllegalArgumentException(args[i]);
+      }
+    }
+    catch (Exception e) {
+      System.out.println("Usage: java RenderHarness [-s <secs>] [-w <secs>] " +
+            "[-target buffered|compatible|volatile|raster|tiled|all] " +
+            "[-bands <n>] " +
+            "[-scenario still|scrolling|explosion|help|swarm|all] " +
+            "[-pipeline default|software|opengl|xrender|d3d] [-o <fnm>] " +
+            "[-check <ticks>]");
+      System.exit(1);
+    }
+
+    setPipeline(pipeline);
+    if (!target.equals("all") && !needsDisplay(target) &&
+        (System.getProperty("java.awt.headless") == null))
+      System.setProperty("java.awt.headless", "true");
+
+    out = System.out;
+    ThreadMXBean tb = ManagementFactory.getThreadMXBean();
+    if (tb instanceof com.sun.management.ThreadMXBean)
+      threadBean = (com.sun.management.ThreadMXBean) tb;
+    else
+      System.out.println("Allocated bytes can't be measured on this JVM");
+
+    if (checkTicks > 0)
+      System.exit( checkAllocation(checkTicks) ? 0 : 1 );
+
+    if (!GraphicsEnvironment.isHeadless())
+      gc = GraphicsEnvironment.getLocalGraphicsEnvironment().
+                  getDefaultScreenDevice().getDefaultConfiguration();
+
+    String[] targets = target.equals("all") ? TARGETS : new String[] {target};
+    String[] scenarios = scenario.equals("all") ? SCENARIOS : new String[] {scenario};
+    StringBuffer json = new StringBuffer("[");
+
+    out.println("Pipeline: " + pipeline + "; " + runSecs + " secs per run");
+    for (int t=0; t < targets.length; t++) {
+      if (needsDisplay(targets[t]) && (gc == null)) {
+        out.println(targets[t] + ": needs a display, skipped");
+        continue;
+      }
+      for (int s=0; s < scenarios.length; s++) {
+        if (json.length() > 1)
+          json.append(",");
+        json.append( run(targets[t], scenarios[s], warmupSecs, runSecs) );
+      }
+    }
+    json.append("\n]\n");
+
+    if (jsonFnm != null)
+      writeFile(jsonFnm, json.toString());
+    System.exit(0);   // stop the game's threads
+  }  // end of main()
+
+
+  private static void setPipeline(String name)
+  // choose the Java2D rendering pipeline, before AWT is started
+  {
+    if (name.equals("software")) {
+      System.setProperty("sun.java2d.opengl", "false");
+      System.setProperty("sun.java2d.xrender", "false");
+      System.setProperty("sun.java2d.d3d", "false");
+    }
+    else if (name.equals("opengl"))
+      System.setProperty("sun.java2d.opengl", "true");
+    else if (name.equals("xrender"))
+      System.setProperty("sun.java2d.xrender", "true");
+    else if (name.equals("d3d"))
+      System.setProperty("sun.java2d.d3d", "true");
+    else if (!name.equals("default"))
+      System.out.println("Unknown pipeline " + name + "; using the default");
+  }  // end of setPipeline()
+
+
+
+  // ------------------------ a run ----------------------------
+
+
+  private static String run(String target, String scenario,
+                            double warmupSecs, double runSecs)
+  /* Run the scenario, drawing into the target, and report the
+     results. They're also returned as a JSON object. */
+  {
+    hideOutput(true);
+    JackPanel panel = new JackPanel(null, PERIOD, new NullAudioBackend());
+    panel.pressKey(KeyEvent.VK_H);    // hide the help, and start
+    if (scenario.equals("help"))
+      panel.pressKey(KeyEvent.VK_H);  // show it again (the game pauses)
+    else if (scenario.equals("swarm"))
+      panel.setFireballRate(SWARM_RATE);
+
+    Image im = makeTarget(target);
+    if (target.equals("raster") || target.equals("tiled"))
+      panel.setBlitTarget( (BufferedImage) im );
+    if (target.equals("tiled"))
+      panel.setBands(numBands);
+    Graphics g = im.getGraphics();
+
+    int frame = 0;
+    long endTime = System.nanoTime() + (long)(warmupSecs*1000000000L);
+    while (System.nanoTime() < endTime)
+      g = drawFrame(panel, scenario, frame++, target, g);
+
+    int capacity = (int) (frame/Math.max(warmupSecs, 0.1) * runSecs * 2) + 1024;
+    long[] frameTimes = new long[capacity];
+        // big enough not to be grown (allocating) while measuring
+    int numFrames = 0;
+    long testedStart = panel.getPairsTested();
+    long hitsStart = panel.getCollisionHits();
+    long allocStart = allocatedBytes();
+    long startTime = System.nanoTime();
+    endTime = startTime + (long)(runSecs*1000000000L);
+    long before = startTime;
+    long after;
+    double overdrawSum = 0;
+    do {
+      g = drawFrame(panel, scenario, frame++, target, g);
+      after = System.nanoTime();
+      overdrawSum += panel.getOverdraw();
+      if (numFrames == frameTimes.length)
+        frameTimes = Arrays.copyOf(frameTimes, numFrames*2);
+      frameTimes[numFrames++] = after - before;
+      before = after;
+    } while (after < endTime);
+    long allocBytes = allocatedBytes() - allocStart;
+    hideOutput(false);
+
+    double fps = numFrames / ((after - startTime)/1000000000.0);
+    Arrays.sort(frameTimes, 0, numFrames);
+    double p50 = toMillis( frameTimes[numFrames/2] );
+    double p99 = toMillis( frameTimes[(int)(numFrames*0.99)] );
+    double max = toMillis( frameTimes[numFrames-1] );
+    long bytesPerFrame = (allocStart < 0) ? -1 : allocBytes/numFrames;
+    double overdraw = overdrawSum/numFrames;
+    double tested = (panel.getPairsTested() - testedStart)/(double) numFrames;
+    double hits = (panel.getCollisionHits() - hitsStart)/(double) numFrames;
+
+    panel.setBands(0);    // stop the compositor's threads
+    out.println(target + "/" + scenario + ": " + numFrames + " frames; " +
+           round(fps) + " FPS; frame p50 " + round(p50) + " p99 " +
+           round(p99) + " max " + round(max) + " ms; " +
+           ((bytesPerFrame < 0) ? "?" : "" + bytesPerFrame) + " bytes/frame; " +
+           "overdraw " + round(overdraw) + "; pairs tested " + round(tested) +
+           " hits " + round(hits) + " per frame");
+    g.dispose();
+
+    return "\n  {\n" +
+           "    \"target\" : \"" + target + "\",\n" +
+           "    \"scenario\" : \"" + scenario + "\",\n" +
+           "    \"pipeline\" : \"" + pipeline + "\",\n" +
+           "    \"frames\" : " + numFrames + ",\n" +
+           "    \"fps\" : " + fps + ",\n" +
+           "    \"p50Ms\" : " + p50 + ",\n" +
+           "    \"p99Ms\" : " + p99 + ",\n" +
+           "    \"maxMs\" : " + max + ",\n" +
+           "    \"bytesPerFrame\" : " + bytesPerFrame + ",\n" +
+           "    \"overdraw\" : " + overdraw + ",\n" +
+           "    \"pairsTested\" : " + tested + ",\n" +
+           "    \"hits\" : " + hits + "\n" +
+           "  }";
+  }  // end of run()
+
+
+  private static Graphics drawFrame(JackPanel panel, String scenario,
+                                   int frame, String target, Graphics g)
+  /* Script the scenario, update the game, and draw it. A volatile
+     image is checked first, in case its contents have been lost,
+     and rendering is synced so its cost is included. The graphics
+     context is returned, since it changes if the image is remade. */
+  {
+    script(panel, scenario, frame);
+    panel.tick();
+
+    if (target.equals("volatile")) {
+      if (volIm.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+        g.dispose();
+        g = makeTarget(target).getGraphics();
+      }
+      panel.renderFrame(g);
+      Toolkit.getDefaultToolkit().sync();
+    }
+    else
+      panel.renderFrame(g);
+    return g;
+  }  // end of drawFrame()
+
+
+  private static void script(JackPanel panel, String scenario, int frame)
+  // carry out the scenario's actions for this frame
+  {
+    if (panel.isGameOver())
+      panel.newGame();
+
+    boolean isCheck = scenario.equals("check");   // all the actions
+    if (scenario.equals("scrolling") || isCheck) {
+      if ((frame % TURN_FRAMES) == 0)
+        panel.pressKey( ((frame/TURN_FRAMES) % 2 == 0) ?
+                              KeyEvent.VK_RIGHT : KeyEvent.VK_LEFT );
+      else if ((frame % JUMP_FRAMES) == 0)
+        panel.pressKey(KeyEvent.VK_UP);
+    }
+    if (scenario.equals("explosion") || isCheck)
+      panel.showExplosion(PWIDTH/4 + (frame*37) % (PWIDTH/2),
+                          PHEIGHT/4 + (frame*23) % (PHEIGHT/2));
+  }  // end of script()
+
+
+  private static boolean needsDisplay(String target)
+  {  return target.equals("compatible") || target.equals("volatile");  }
+
+
+  private static Image makeTarget(String target)
+  {
+    if (target.equals("compatible"))
+      return gc.createCompatibleImage(PWIDTH, PHEIGHT);
+    else if (target.equals("volatile")) {
+      volIm = gc.createCompatibleVolatileImage(PWIDTH, PHEIGHT);
+      return volIm;
+    }
+    else
+      return new BufferedImage(PWIDTH, PHEIGHT, BufferedImage.TYPE_INT_RGB);
+  }  // end of makeTarget()
+
+
+
+  // --------------------- allocation check -------------------------
+
+
+  private static boolean checkAllocation(int ticks)
+  /* Run the "check" scenario, updating the game for the number of
+     ticks after a warmup of CHECK_WARMUP frames, and then updating
+     and drawing it for the same number of frames. Return true if
+     no bytes were allocated by either. */
+  {
+    if (threadBean == null)
+      return false;
+
+    hideOutput(true);
+    JackPanel panel = new JackPanel(null, PERIOD, new NullAudioBackend());
+    panel.pressKey(KeyEvent.VK_H);    // hide the help, and start
+    panel.setFireballRate(SWARM_RATE);
+    BufferedImage im = new BufferedImage(PWIDTH, PHEIGHT, BufferedImage.TYPE_INT_RGB);
+    Graphics g = im.getGraphics();
+
+    int frame = 0;
+    for (int i=0; i < CHECK_WARMUP; i++) {    // warm up, including rendering
+      script(panel, "check", frame++);
+      panel.tick();
+      panel.renderFrame(g);
+    }
+
+    long overhead = allocatedBytes();
+    overhead = allocatedBytes() - overhead;   // of allocatedBytes() itself
+
+    long start = allocatedBytes();
+    for (int i=0; i < ticks; i++) {
+      script(panel, "check", frame++);
+      panel.tick();
+    }
+    long tickBytes = allocatedBytes() - start - overhead;
+
+    start = allocatedBytes();
+    for (int i=0; i < ticks; i++) {
+      script(panel, "check", frame++);
+      panel.tick();
+      panel.renderFrame(g);
+    }
+    long frameBytes = allocatedBytes() - start - overhead;
+    hideOutput(false);
+    g.dispose();
+
+    out.println("Update: " + tickBytes + " bytes in " + ticks + " ticks");
+    out.println("Update and render: " + frameBytes + " bytes in " + ticks +
+                   " frames (" + round((double)frameBytes/ticks) + " bytes/frame)");
+    if (tickBytes > 0) {
+      out.println("FAILED: the game update allocates");
+      return false;
+    }
+    if (frameBytes > 0) {
+      out.println("FAILED: the rendering allocates");
+      return false;
+    }
+    out.println("OK");
+    return true;
+  }  // end of checkAllocation()
+
+
+
+  // ------------------------ utilities ----------------------------
+
+
+  private static long allocatedBytes()
+  // bytes allocated so far by this thread, or -1 if unknown
+  {
+    if (threadBean == null)
+      return -1;
+    return threadBean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+  }  // end of allocatedBytes()
+
+
+  private static void hideOutput(boolean hide)
+  // hide the output of the game's classes while they run
+  {
+    if (hide)
+      System.setOut( new PrintStream( new OutputStream() {
+                       public void write(int b) {}  } ));
+    else
+      System.setOut(out);
+  }  // end of hideOutput()
+
+
+  private static double toMillis(long nanos)
+  {  return nanos/1000000.0;  }
+
+  private static double round(double d)
+  {  return Math.round(d*100)/100.0;  }   // 2 dp
+
+
+  private static void writeFile(String fnm, String text)
+  {
+    try {
+      Writer w = new FileWriter(fnm);
+      w.write(text);
+      w.close();
+      out.println("Results written to " + fnm);
+    }
+    catch (IOException e)
+    { System.out.println("Could not write " + fnm + ": " + e);  }
+  }  // end of writeFile()
+
+}  // end of RenderHarness class
@@ -1,20 +1,40 @@
-
 // Ribbon.java
 // Andrew Davison, April 2005, ad@fivedots.coe.psu.ac.th
 
-/* A ribbon manages an image which is wider than the game panel's
-   width: width >= pWidth
+/* A ribbon manages an image which scrolls horizontally across
+   the game panel.
 
-   When a sprite is instructed to move left or right, the 
+   When a sprite is instructed to move left or right, the
    sprite doesn't actually move, instead the ribbon moves in
-   the _opposite_direction (right or left). The amount of movement 
-   is specified in moveSize.
+   the _opposite_direction (right or left). The amount of movement
+   is specified in moveSize, which may be a fraction of a pixel.
+   The ribbon's position is kept in fixed point, with FP_SHIFT
+   fractional bits, so a slow ribbon still moves, just not on
+   every update.
+
+   The ribbon's image is repeated every 'period' pixels:
+     - a wrapped ribbon repeats it side by side (the period is the
+       image width), so at a given moment the tail of the image,
+       followed by its head may be visible in the panel. The image
+       can be narrower than the panel, in which case it is drawn
+       several times.
+     - an unwrapped ribbon leaves a gap as wide as the panel after
+       the image, so the image moves completely off the panel before
+       it reappears on the other side.
 
-   The image is wrapped around the panel, so at a given moment
-   the tail of the image, followed by its head may be visible 
-   in the panel.
+   The image's top is drawn at yOffset in the panel, and only the
+   rows which fall inside the panel are drawn.
 
    A collection of ribbons are managed by a RibbonsManager object.
+
+   When the ribbon is created, analyseImage() finds which rows of
+   each image column are worth drawing: the rows holding any
+   non-transparent pixels (its content), and the longest run of
+   fully opaque pixels, which hides whatever is behind it.
+   RibbonsManager queries these for vertical strips of the panel
+   (getContentRows(), getCoveredRows()), and draws only the parts
+   of a ribbon which aren't hidden, with drawRegion(). A ribbon
+   which can't be seen at all (see isVisible()) isn't drawn.
 */
 
 import java.awt.*;
@@ -25,41 +45,129 @@ import java.awt.image.*;
 
 public class Ribbon
 {
+  private final static int FP_SHIFT = 8;   // 1/256 pixel positions
+
   private BufferedImage im;
-  private int width;      // the width of the image (>= pWidth)
+  private int width;      // the width of the image
   private int pWidth, pHeight;    // dimensions of display panel
+  private int yOffset;    // the y-coord in the panel of the image's top
+  private boolean isWrapped;
+  private int period;     // the image is repeated every period pixels
 
-  private int moveSize;       // size of the image move (in pixels)
+  private int moveSize;       // size of the image move (fixed point)
   private boolean isMovingRight;  // movement flags
   private boolean isMovingLeft;
 
-  private int xImHead;   
-     /* The x-coord in the panel where the start of the image
-        (its head) should be drawn. 
-        It can range between -width to width (exclusive), so can
+  private int xHead;     // xImHead in fixed point
+  private int xImHead;
+     /* The x-coord in the panel where the start of a copy of the
+        image (its head) should be drawn.
+        It can range between 0 and period (exclusive), so can
         have a value beyond the confines of the panel (0-pWidth).
 
         As xImHead varies, the on-screen ribbon will usually
         be a combination of its tail followed by its head.
      */
- 
+
+  private int yTop, yBottom;    // the panel rows drawn: [yTop, yBottom)
+
+  // panel rows [top, bottom) of each image column, found by analyseImage()
+  private int[] contentTops, contentBottoms;   // non-transparent pixels
+  private int[] opaqueTops, opaqueBottoms;     // the longest opaque run
+  private boolean isOpaque;     // are all the drawn rows opaque?
+
+  private RasterBlitter blitter = null;   // draw with this, if not null
+  private BlitImage blitIm = null;        // the image, for the blitter
+
 
   public Ribbon(int w, int h, BufferedImage im, int moveSz)
+  // a wrapped ribbon at the top of the panel
+  {  this(w, h, im, moveSz, 0, true);  }
+
+
+  public Ribbon(int w, int h, BufferedImage im, double moveSz,
+                              int yOffset, boolean isWrapped)
   {
     pWidth = w; pHeight = h;
-    
+
     this.im = im;
-    width = im.getWidth();    // no need to store the height
-    if (width < pWidth) 
-      System.out.println("Ribbon width < panel width");
+    width = im.getWidth();
+    this.yOffset = yOffset;
+    this.isWrapped = isWrapped;
+    period = isWrapped ? width : width + pWidth;
 
-    moveSize = moveSz;
+    moveSize = (int) Math.round(moveSz * (1 << FP_SHIFT));
     isMovingRight = false;   // no movement at start
     isMovingLeft = false;
+    xHead = 0;
     xImHead = 0;
+
+    analyseImage();
   }  // end of Ribbon()
 
 
+  private void analyseImage()
+  /* Find the content rows and the longest opaque run of every image
+     column, in the panel rows which are drawn. A transparent column
+     has empty ranges (top == bottom). */
+  {
+    yTop = Math.max(yOffset, 0);
+    yBottom = Math.min(yOffset + im.getHeight(), pHeight);
+    contentTops = new int[width];
+    contentBottoms = new int[width];
+    opaqueTops = new int[width];
+    opaqueBottoms = new int[width];
+    isOpaque = false;
+    if (yTop >= yBottom)    // the image is above or below the panel
+      return;
+
+    if (im.getTransparency() == Transparency.OPAQUE) {
+      for (int x=0; x < width; x++) {
+        contentTops[x] = yTop;
+        contentBottoms[x] = yBottom;
+        opaqueTops[x] = yTop;
+        opaqueBottoms[x] = yBottom;
+      }
+      isOpaque = true;
+      return;
+    }
+
+    int numRows = yBottom - yTop;
+    int[] pixels = im.getRGB(0, yTop-yOffset, width, numRows, null, 0, width);
+    int alpha, runStart;
+    isOpaque = true;
+    for (int x=0; x < width; x++) {
+      contentTops[x] = yBottom;    // empty until a pixel is found
+      contentBottoms[x] = yTop;
+      opaqueTops[x] = yTop;
+      opaqueBottoms[x] = yTop;
+      runStart = -1;
+      for (int y=yTop; y < yBottom; y++) {
+        alpha = pixels[(y-yTop)*width + x] >>> 24;
+        if (alpha != 0) {
+          if (contentTops[x] == yBottom)
+            contentTops[x] = y;
+          contentBottoms[x] = y+1;
+        }
+        if (alpha == 0xff) {
+          if (runStart == -1)
+            runStart = y;
+          if (y+1 - runStart > opaqueBottoms[x] - opaqueTops[x]) {
+            opaqueTops[x] = runStart;
+            opaqueBottoms[x] = y+1;
+          }
+        }
+        else
+          runStart = -1;
+      }
+      if (contentBottoms[x] == yTop)    // a transparent column
+        contentTops[x] = yTop;
+      if ((opaqueTops[x] != yTop) || (opaqueBottoms[x] != yBottom))
+        isOpaque = false;
+    }
+  }  // end of analyseImage()
+
+
 
   public void moveRight()
   // move the ribbon image to the right on the next update
@@ -80,57 +188,155 @@ public class Ribbon
     isMovingLeft = false;
   }
 
-  
+
   public void update()
-  /* Increment the xImHead value depending on the movement flags.
-     It can range between -width to width (exclusive), which is
-     the width of the image.
+  /* Change the xHead position depending on the movement flags.
+     It stays between 0 and period (exclusive), in fixed point,
+     and xImHead is its whole number of pixels.
   */
-  { if (isMovingRight)
-      xImHead = (xImHead + moveSize) % width;
-    else if (isMovingLeft)
-      xImHead = (xImHead - moveSize) % width;
+  { int fpPeriod = period << FP_SHIFT;
+    if (isMovingRight)
+      xHead = (xHead + moveSize) % fpPeriod;
+    else if (isMovingLeft) {
+      xHead = (xHead - moveSize) % fpPeriod;
+      if (xHead < 0)
+        xHead += fpPeriod;
+    }
+    xImHead = xHead >> FP_SHIFT;
 
     // System.out.println("xImHead is " + xImHead);
   } // end of update()
 
 
   public void display(Graphics g)
-  /* Consider 5 cases: 
-       when xImHead == 0, draw only the im head
-       when xImHead > 0, draw the im tail and im head, or only the im tail.
-       when xImHead < 0, draw the im tail, or the im tail and im head
+  // draw the ribbon across the whole panel
+  {  drawRegion(g, 0, pWidth, yTop, yBottom);  }
 
-     xImHead can range between -width to width (exclusive)
-  */
+
+  public void setBlitter(RasterBlitter b)
+  /* Draw the ribbon with b, or with Graphics if b is null. The
+     image is prepared for the blitter the first time. */
+  { blitter = b;
+    if ((blitter != null) && (blitIm == null))
+      blitIm = new BlitImage(im);
+  }  // end of setBlitter()
+
+
+
+  public int drawRegion(Graphics g, int xScr1, int xScr2, int yScr1, int yScr2)
+  /* Draw the part of the ribbon in the panel rectangle from
+     (xScr1,yScr1) to (xScr2,yScr2), a piece at a time: the image's
+     tail, then the gap after it (for an unwrapped ribbon), then its
+     head, and so on. Return the number of pixels drawn. */
   {
-    if (xImHead == 0)   // draw im head at (0,0)
-      draw(g, im, 0, pWidth, 0, pWidth);
-    else if ((xImHead > 0) && (xImHead < pWidth)) {  
-       // draw im tail at (0,0) and im head at (xImHead,0) 
-      draw(g, im, 0, xImHead, width-xImHead, width);   // im tail
-      draw(g, im, xImHead, pWidth, 0, pWidth-xImHead);  // im head
-    }
-    else if (xImHead >= pWidth)   // only draw im tail at (0,0)
-      draw(g, im, 0, pWidth, 
-                  width-xImHead, width-xImHead+pWidth);  // im tail
-    else if ((xImHead < 0) && (xImHead >= pWidth-width))
-      draw(g, im, 0, pWidth, -xImHead, pWidth-xImHead);  // im body
-    else if (xImHead < pWidth-width) {
-       // draw im tail at (0,0) and im head at (width+xImHead,0)
-      draw(g, im, 0, width+xImHead, -xImHead, width);  // im tail
-      draw(g, im, width+xImHead, pWidth, 
-                  0, pWidth-width-xImHead);  // im head
+    if (yScr1 < yTop)
+      yScr1 = yTop;
+    if (yScr2 > yBottom)
+      yScr2 = yBottom;
+    if ((xScr1 >= xScr2) || (yScr1 >= yScr2))
+      return 0;
+
+    int pixels = 0;
+    int p = toPeriodX(xScr1);   // position in the period
+    int x = xScr1;
+    int w;
+    while (x < xScr2) {
+      if (p < width) {   // draw part of the image
+        w = Math.min(width - p, xScr2 - x);
+        if (blitter != null)
+          blitter.draw(blitIm, p, yScr1-yOffset, x, yScr1, w, yScr2-yScr1);
+        else
+          g.drawImage(im, x, yScr1, x+w, yScr2,
+                          p, yScr1-yOffset, p+w, yScr2-yOffset, null);
+        pixels += w*(yScr2-yScr1);
+      }
+      else    // skip the gap
+        w = Math.min(period - p, xScr2 - x);
+      x += w;
+      p += w;
+      if (p == period)
+        p = 0;
     }
-  } // end of display()
+    return pixels;
+  }  // end of drawRegion()
 
 
-  private void draw(Graphics g, BufferedImage im, 
-                        int scrX1, int scrX2, int imX1, int imX2)
-  /* The y-coords of the image always starts at 0 and ends at
-     pHeight (the height of the panel), so are hardwired. */
-  { g.drawImage(im, scrX1, 0, scrX2, pHeight, 
-                     imX1, 0,  imX2, pHeight, null);
+
+  // ----------------- culling support ---------------------
+
+
+  private int toPeriodX(int xScr)
+  /* The position in the period drawn at panel x-coord xScr;
+     it's an image column if it's less than width. */
+  { int p = (xScr - xImHead) % period;
+    return (p < 0) ? p + period : p;
   }
 
+
+  public boolean isVisible()
+  // can any of the ribbon be seen in the panel?
+  {
+    if (yTop >= yBottom)
+      return false;
+    if (isWrapped)
+      return true;
+    int p = toPeriodX(0);
+    return (p < width) || (p + pWidth > period);
+  }  // end of isVisible()
+
+
+  public boolean coversPanel()
+  // is the whole panel hidden by this ribbon?
+  {  return isOpaque && isWrapped && (yTop == 0) && (yBottom == pHeight);  }
+
+
+  public void getContentRows(int xScr1, int xScr2, int[] rows)
+  /* Set rows[0] and rows[1] to the range of rows [top, bottom)
+     which has non-transparent pixels in any of the panel columns
+     xScr1 to xScr2-1. The range is empty if top >= bottom. */
+  {
+    int top = yBottom;
+    int bottom = yTop;
+    int p = toPeriodX(xScr1);
+    for (int x = xScr1; x < xScr2; x++) {
+      if ((p < width) && (contentTops[p] < contentBottoms[p])) {
+        if (contentTops[p] < top)
+          top = contentTops[p];
+        if (contentBottoms[p] > bottom)
+          bottom = contentBottoms[p];
+      }
+      p++;
+      if (p == period)
+        p = 0;
+    }
+    rows[0] = top;
+    rows[1] = bottom;
+  }  // end of getContentRows()
+
+
+  public void getCoveredRows(int xScr1, int xScr2, int[] rows)
+  /* Set rows[0] and rows[1] to the range of rows [top, bottom)
+     which are opaque in every panel column from xScr1 to xScr2-1.
+     The range is empty if top >= bottom. */
+  {
+    int top = yTop;
+    int bottom = yBottom;
+    int p = toPeriodX(xScr1);
+    for (int x = xScr1; (x < xScr2) && (top < bottom); x++) {
+      if (p >= width)    // in the gap, so nothing is hidden
+        bottom = top;
+      else {
+        if (opaqueTops[p] > top)
+          top = opaqueTops[p];
+        if (opaqueBottoms[p] < bottom)
+          bottom = opaqueBottoms[p];
+      }
+      p++;
+      if (p == period)
+        p = 0;
+    }
+    rows[0] = top;
+    rows[1] = bottom;
+  }  // end of getCoveredRows()
+
 }  // end of Ribbon
@@ -12,41 +12,218 @@
    sprite doesn't actually move, instead the ribbons move in
    the _opposite_direction (right or left).
 
+   The ribbons are listed in a configuration file in Images/
+   (RIBBONS_INFO by default), from the back of the scene to the
+   front. The format of a line is:
+        <image name> <move factor> [<y offset> [wrap | once]]
+
+   The image must have been loaded by the ImagesLoader. The move
+   factor is applied to the bricks' moveSize, and may give a
+   fractional move (see Ribbon); a factor of 0 makes a ribbon
+   stationary. The y offset is where the image's top is drawn in
+   the panel (default 0). A 'wrap' ribbon repeats its image side
+   by side (the default); a 'once' ribbon shows it once, and lets
+   it scroll off the panel before it comes round again.
+   Blank lines and comment lines (starting with //) are ignored.
+
+   Since the scene is drawn from back to front, much of the panel
+   is drawn more than once. To reduce this overdraw, display()
+   divides the panel into vertical strips, STRIP_WIDTH pixels wide.
+   For each strip it works out which rows of each ribbon are hidden
+   by the opaque parts of the ribbons in front of it, and by the
+   bottom line of bricks (see setFloorY()), and draws only the rest
+   of the ribbon's rows which have something in them. Ribbons which
+   are entirely off the panel are skipped. getOverdraw() reports the
+   number of ribbon pixels drawn in the last frame as a fraction of
+   the panel area.
+
+   Culling can be switched off with setCulling(false), so that
+   the ribbons are drawn whole, as before.
 */
 
 import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+import java.io.*;
 
 
 public class RibbonsManager
 {
-  /* Background ribbons images, and their movement factors.
-     Ribbons 'further back' are specified first in ribImages[], 
-     and have smaller move factors so they will move slower.
-  */
-  private String ribImages[] = {"mountains", "houses", "trees"};
-  private double moveFactors[] = {0.1, 0.5, 1.0};  // applied to moveSize
-     // a move factor of 0 would make a ribbon stationary
-
-  private Ribbon[] ribbons;
+  private final static String IMAGE_DIR = "Images/";
+  private final static String RIBBONS_INFO = "ribbonsInfo.txt";
+
+  private final static int STRIP_WIDTH = 50;   // of a culling strip
+
+  private Ribbon[] ribbons;   // from the back of the scene to the front
   private int numRibbons;
   private int moveSize;
      // standard distance for a ribbon to 'move' each tick
 
+  private int pWidth, pHeight;
+  private int floorY;     // the rows from floorY down are hidden by bricks
+  private boolean isCulling = true;
+
+  private int numStrips;
+  private int[][] coverTops, coverBottoms;
+     /* [ribbon][strip]: the range of rows of the strip which are hidden
+        from the ribbon by the things in front of it */
+  private int[] rows = new int[2];    // filled in by the Ribbon queries
+  private boolean[] isVisible;    // the ribbons drawn in this frame
+
+  private long pixelsDrawn;    // in the last call to display()
+
 
   public RibbonsManager(int w, int h, int brickMvSz, ImagesLoader imsLd)
+  {  this(w, h, brickMvSz, RIBBONS_INFO, imsLd);  }
+
+
+  public RibbonsManager(int w, int h, int brickMvSz, String fnm,
+                                                ImagesLoader imsLd)
   {
+    pWidth = w; pHeight = h;
     moveSize = brickMvSz;
           // the basic move size is the same as the bricks ribbon
 
-    numRibbons = ribImages.length;
-    ribbons = new Ribbon[numRibbons];
+    String ribsFNm = IMAGE_DIR + fnm;
+    System.out.println("Reading ribbons file: " + ribsFNm);
+    try {
+      BufferedReader br;
+      AssetPack pack = AssetPack.getDefault();
+      if ((pack != null) && pack.contains(ribsFNm))
+        br = new BufferedReader( new InputStreamReader( pack.getStream(ribsFNm)));
+      else
+        br = new BufferedReader( new FileReader(ribsFNm));
+      readRibbons(br, imsLd);
+    }
+    catch (IOException e)
+    { System.out.println("Error reading file: " + ribsFNm);
+      System.exit(1);
+    }
+  }  // end of RibbonsManager()
+
 
-    for (int i = 0; i < numRibbons; i++)
-       ribbons[i] = new Ribbon(w, h, imsLd.getImage( ribImages[i] ),
-						(int) (moveFactors[i]*moveSize) );
+  public RibbonsManager(int w, int h, int brickMvSz, Reader ribsReader,
+                                                ImagesLoader imsLd)
+  /* Read the ribbons configuration from ribsReader instead of a file
+     in Images/; used by the Benchmarks to try many ribbons. */
+  {
+    pWidth = w; pHeight = h;
+    moveSize = brickMvSz;
+    try {
+      readRibbons( new BufferedReader(ribsReader), imsLd);
+    }
+    catch (IOException e)
+    { System.out.println("Error reading ribbons: " + e);
+      System.exit(1);
+    }
   }  // end of RibbonsManager()
 
 
+  private void readRibbons(BufferedReader br, ImagesLoader imsLd)
+                                                 throws IOException
+  // create a Ribbon for each line, and the culling arrays
+  {
+    ArrayList ribsList = new ArrayList();
+    String line;
+    Ribbon ribbon;
+    while((line = br.readLine()) != null) {
+      if (line.length() == 0)  // blank line
+        continue;
+      if (line.startsWith("//"))   // comment
+        continue;
+
+      ribbon = makeRibbon(line, imsLd);
+      if (ribbon != null)
+        ribsList.add(ribbon);
+    }
+    br.close();
+
+    numRibbons = ribsList.size();
+    if (numRibbons == 0)
+      System.out.println("No ribbons were loaded");
+    ribbons = new Ribbon[numRibbons];
+    for (int i=0; i < numRibbons; i++)
+      ribbons[i] = (Ribbon) ribsList.get(i);
+
+    floorY = pHeight;    // nothing hidden by the bricks
+    numStrips = (pWidth + STRIP_WIDTH-1)/STRIP_WIDTH;
+    coverTops = new int[numRibbons][numStrips];
+    coverBottoms = new int[numRibbons][numStrips];
+    isVisible = new boolean[numRibbons];
+  }  // end of readRibbons()
+
+
+  private Ribbon makeRibbon(String line, ImagesLoader imsLd)
+  /* Make a ribbon from a line:
+        <image name> <move factor> [<y offset> [wrap | once]]
+     or return null if the line is wrong. */
+  {
+    StringTokenizer tokens = new StringTokenizer(line);
+    int numTokens = tokens.countTokens();
+    if ((numTokens < 2) || (numTokens > 4)) {
+      System.out.println("Wrong no. of arguments for " + line);
+      return null;
+    }
+
+    String name = tokens.nextToken();
+    double moveFactor;
+    int yOffset = 0;
+    boolean isWrapped = true;
+    try {
+      moveFactor = Double.parseDouble( tokens.nextToken() );
+      if (tokens.hasMoreTokens())
+        yOffset = Integer.parseInt( tokens.nextToken() );
+    }
+    catch (NumberFormatException e) {
+      System.out.println("Incorrect number in " + line);
+      return null;
+    }
+    if (tokens.hasMoreTokens()) {
+      String mode = tokens.nextToken();
+      if (mode.equals("once"))
+        isWrapped = false;
+      else if (!mode.equals("wrap"))
+        System.out.println("Unknown repeat mode " + mode + "; using wrap");
+    }
+
+    BufferedImage im = imsLd.getImage(name);
+    if (im == null)
+      return null;
+    System.out.println("-- " + name + " " + moveFactor + " " + yOffset +
+                                     (isWrapped ? " wrap" : " once"));
+    return new Ribbon(pWidth, pHeight, im, moveFactor*moveSize,
+                                               yOffset, isWrapped);
+  }  // end of makeRibbon()
+
+
+  public void setFloorY(int y)
+  /* The panel rows from y down are always hidden by the bricks, which
+     are drawn in front of the ribbons (see
+     BricksManager.getOpaqueFloorY()). */
+  {  floorY = y;  }
+
+
+  public void setCulling(boolean b)
+  {  isCulling = b;  }
+
+
+  public void setBlitter(RasterBlitter b)
+  // draw the ribbons with b, or with Graphics if b is null
+  { for (int i=0; i < numRibbons; i++)
+      ribbons[i].setBlitter(b);
+  }
+
+
+  public boolean coversPanel()
+  /* Is the whole panel hidden by an opaque ribbon? If it is, the
+     panel doesn't need to be cleared before the ribbons are drawn. */
+  { for (int i=0; i < numRibbons; i++)
+      if (ribbons[i].coversPanel())
+        return true;
+    return false;
+  }  // end of coversPanel()
+
+
   public void moveRight()
   { for (int i=0; i < numRibbons; i++)
       ribbons[i].moveRight();
@@ -71,9 +248,91 @@ public class RibbonsManager
   public void display(Graphics g)
   /* The display order is important.
      Display ribbons from the back to the front of the scene. */
-  { for (int i=0; i < numRibbons; i++)
-      ribbons[i].display(g);
-  }
+  { 
+    pixelsDrawn = 0;
+    if (!isCulling) {
+      for (int i=0; i < numRibbons; i++)
+        pixelsDrawn += ribbons[i].drawRegion(g, 0, pWidth, 0, pHeight);
+      return;
+    }
+
+    for (int i=0; i < numRibbons; i++)
+      isVisible[i] = ribbons[i].isVisible();
+    findCovers();
+
+    int x1, x2, top, bottom;
+    for (int i=0; i < numRibbons; i++) {
+      if (!isVisible[i])   // entirely off the panel
+        continue;
+      for (int s=0; s < numStrips; s++) {
+        x1 = s*STRIP_WIDTH;
+        x2 = Math.min(x1 + STRIP_WIDTH, pWidth);
+        ribbons[i].getContentRows(x1, x2, rows);
+        top = rows[0];
+        bottom = rows[1];
+        if (coverTops[i][s] >= coverBottoms[i][s])   // nothing hidden
+          drawStrip(g, ribbons[i], x1, x2, top, bottom);
+        else {   // draw above and below the hidden rows
+          drawStrip(g, ribbons[i], x1, x2, top, 
+                           Math.min(bottom, coverTops[i][s]));
+          drawStrip(g, ribbons[i], x1, x2, 
+                           Math.max(top, coverBottoms[i][s]), bottom);
+        }
+      }
+    }
+  }  // end of display()
+
+
+  private void findCovers()
+  /* Working from the front of the scene to the back, find the rows
+     of each strip hidden from each ribbon by the bricks and the
+     ribbons in front of it. Only a single range of rows is kept:
+     when a ribbon's opaque rows don't touch the range found so far,
+     the bigger of the two is used. */
+  {
+    int x1, x2, top, bottom;
+    for (int s=0; s < numStrips; s++) {
+      x1 = s*STRIP_WIDTH;
+      x2 = Math.min(x1 + STRIP_WIDTH, pWidth);
+      top = floorY;    // the range is empty if floorY >= pHeight
+      bottom = pHeight;
+      for (int i=numRibbons-1; i >= 0; i--) {
+        coverTops[i][s] = top;
+        coverBottoms[i][s] = bottom;
+        if (!isVisible[i])
+          continue;
+
+        ribbons[i].getCoveredRows(x1, x2, rows);
+        if (rows[0] >= rows[1])    // nothing opaque
+          continue;
+        if ((top < bottom) && (rows[0] <= bottom) && (rows[1] >= top)) {
+          top = Math.min(top, rows[0]);   // join the ranges
+          bottom = Math.max(bottom, rows[1]);
+        }
+        else if (rows[1]-rows[0] > bottom-top) {
+          top = rows[0];
+          bottom = rows[1];
+        }
+      }
+    }
+  }  // end of findCovers()
+
+
+  private void drawStrip(Graphics g, Ribbon ribbon, 
+                               int x1, int x2, int y1, int y2)
+  { if (y1 < y2)
+      pixelsDrawn += ribbon.drawRegion(g, x1, x2, y1, y2);
+  }  // end of drawStrip()
+
+
+  public long getPixelsDrawn()
+  // the number of ribbon pixels drawn by the last display()
+  {  return pixelsDrawn;  }
+
+
+  public double getOverdraw()
+  // the ribbon pixels drawn by the last display() / the panel area
+  {  return ((double) pixelsDrawn)/(pWidth*pHeight);  }
 
 } // end of RibbonsManager
 
@@ -0,0 +1,56 @@
+
+// ScalarKernels.java
+
+/* The collision kernels as plain loops, one word or int at a
+   time. These are always available, and are used when the
+   VectorKernels can't be loaded (see KernelsLoader).
+*/
+
+public class ScalarKernels implements CollisionKernels
+{
+
+  public boolean anyOverlap(long[] a, int aStart, long[] hi, int hiStart,
+                      long[] lo, int loStart, int n, int shift, long colMask)
+  {
+    long bits;
+    for (int i=0; i < n; i++) {
+      bits = (hi == null) ? 0 : hi[hiStart+i] << shift;
+      if ((shift != 0) && (lo != null))
+        bits |= lo[loStart+i] >>> (64-shift);
+      if ((a[aStart+i] & colMask & bits) != 0)
+        return true;
+    }
+    return false;
+  }  // end of anyOverlap()
+
+
+  public boolean anyBits(long[] bits, int start, int n, long firstMask, long lastMask)
+  {
+    if (n == 1)
+      return (bits[start] & firstMask & lastMask) != 0;
+    if (((bits[start] & firstMask) != 0) || ((bits[start+n-1] & lastMask) != 0))
+      return true;
+    for (int i = start+1; i < start+n-1; i++)
+      if (bits[i] != 0)
+        return true;
+    return false;
+  }  // end of anyBits()
+
+
+  public void findCells(int[] los, int[] his, int n, int cellSize, int maxCell,
+                                                int[] loCells, int[] hiCells)
+  {
+    int c;
+    for (int i=0; i < n; i++) {
+      c = los[i]/cellSize;
+      loCells[i] = (c < 0) ? 0 : ((c > maxCell) ? maxCell : c);
+      c = (his[i]-1)/cellSize;
+      hiCells[i] = (c < 0) ? 0 : ((c > maxCell) ? maxCell : c);
+    }
+  }  // end of findCells()
+
+
+  public String getName()
+  {  return "scalar";  }
+
+}  // end of ScalarKernels class
@@ -0,0 +1,63 @@
+// SilentClip.java
+
+/* A SoundClip which plays nothing. If it has a
+   RecordingAudioBackend, each request is logged there.
+
+   Since nothing plays, a watcher is only told about a clip
+   ending when stop() is called.
+*/
+
+public class SilentClip implements SoundClip
+{
+  private String name;
+  private RecordingAudioBackend recorder;   // may be null
+  private SoundsWatcher watcher = null;
+  private boolean isPlaying = false;
+
+
+  public SilentClip(String nm, RecordingAudioBackend rec)
+  {  name = nm;
+     recorder = rec;
+  }
+
+
+  public void play(boolean toLoop)
+  {  play(toLoop, ClipInfo.DEFAULT_PRIORITY);  }
+
+  public void play(boolean toLoop, int priority)
+  { isPlaying = true;
+    if (recorder != null)
+      recorder.record(name, toLoop ? "loop" : "play", priority);
+  }
+
+  public void stop()
+  { if (recorder != null)
+      recorder.record(name, "stop", 0);
+    if ((watcher != null) && isPlaying)
+      watcher.atSequenceEnd(name, SoundsWatcher.STOPPED);
+    isPlaying = false;
+  }  // end of stop()
+
+  public void pause()
+  { if (recorder != null)
+      recorder.record(name, "pause", 0);
+  }
+
+  public void resume()
+  { if (recorder != null)
+      recorder.record(name, "resume", 0);
+  }
+
+  public void close()
+  { if (recorder != null)
+      recorder.record(name, "close", 0);
+  }
+
+
+  public void setWatcher(SoundsWatcher sw)
+  {  watcher = sw;  }
+
+  public String getName()
+  {  return name;  }
+
+}  // end of SilentClip class
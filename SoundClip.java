@@ -0,0 +1,18 @@
+// SoundClip.java
+
+/* The operations ClipsLoader uses on a loaded sound, whichever
+   way it is played. ClipInfo plays it with a pool of Clip lines,
+   MixerClip plays it through a SoundMixer.
+*/
+
+public interface SoundClip
+{
+  void play(boolean toLoop);
+  void play(boolean toLoop, int priority);
+  void stop();
+  void pause();
+  void resume();
+  void close();
+  void setWatcher(SoundsWatcher sw);
+  String getName();
+}
@@ -0,0 +1,376 @@
+// SoundMixer.java
+
+/* A software mixer which plays any number of sounds through
+   a single SourceDataLine, instead of opening a Clip line for
+   every sound (as ClipInfo does). This avoids running out of
+   lines on systems with a small number of them (e.g. ALSA), and
+   the per-line overheads.
+
+   The sounds are MixerClip objects, which are decoded to the
+   mixer's PCM format once, when they are loaded.
+
+   A playing instance of a sound is a voice. There are at most
+   MAX_VOICES voices, and each MixerClip limits how many of them
+   it can use. When no voice is available for a play request, a
+   busy voice is stolen: the lowest priority one, and the oldest
+   of those with equal priority.
+
+   The voices are mixed on a high-priority thread, half the
+   line's buffer at a time, and written to the line. The line's buffer size
+   (in ms) sets the output latency; it can be supplied to the
+   constructor, or with the "jj.mixer.buffer" system property.
+
+   The measured latency, from a play request to its first
+   sample reaching the speaker, is available from
+   getLatencyReport(), and is printed when the mixer is closed.
+*/
+
+import javax.sound.sampled.*;
+
+
+public class SoundMixer implements Runnable
+{
+  public final static float SAMPLE_RATE = 22050.0f;
+  public final static int CHANNELS = 2;      // output is stereo
+
+  private final static int DEFAULT_BUFFER_MS = 40;
+  private final static int MAX_VOICES = 32;
+
+  private AudioFormat format;
+  private SourceDataLine line = null;
+  private int chunkFrames;       // number of frames mixed at a time
+  private int[] mixBuf;          // the mixed samples of a chunk
+  private byte[] outBuf;         // the chunk as 16-bit little-endian PCM
+
+  private Thread mixThread;
+  private volatile boolean running = false;
+  private long framesWritten = 0;
+
+  // the voices; the arrays are indexed by voice number
+  private MixerClip[] voiceClips;    // null if the voice is free
+  private int[] voicePosns;          // next frame to play
+  private boolean[] voiceLooping;
+  private boolean[] voicePaused;
+  private int[] voicePriorities;
+  private long[] voiceStarts;        // when each voice was started (ns)
+  private boolean[] voiceHeard;      // has the voice been mixed yet?
+
+  // clips whose voices ended or looped in the last chunk
+  private MixerClip[] endedClips;
+  private int[] endedStatus;
+  private int numEnded;
+
+  // latency statistics (in ns)
+  private long latencyTotal = 0;
+  private long latencyMax = 0;
+  private int latencyCount = 0;
+
+
+  public SoundMixer()
+  {  this( Integer.getInteger("jj.mixer.buffer", DEFAULT_BUFFER_MS).intValue() );  }
+
+
+  public SoundMixer(int bufferMillis)
+  {
+    format = new AudioFormat(SAMPLE_RATE, 16, CHANNELS, true, false);
+                                   // signed, little endian
+    voiceClips = new MixerClip[MAX_VOICES];
+    voicePosns = new int[MAX_VOICES];
+    voiceLooping = new boolean[MAX_VOICES];
+    voicePaused = new boolean[MAX_VOICES];
+    voicePriorities = new int[MAX_VOICES];
+    voiceStarts = new long[MAX_VOICES];
+    voiceHeard = new boolean[MAX_VOICES];
+    endedClips = new MixerClip[MAX_VOICES];
+    endedStatus = new int[MAX_VOICES];
+
+    openLine(bufferMillis);
+  }  // end of SoundMixer()
+
+
+  private void openLine(int bufferMillis)
+  /* The line's buffer holds bufferMillis of sound, and is
+     filled a half at a time. */
+  {
+    if (bufferMillis < 5) {
+      System.out.println("Mixer buffer too small; using 5 ms");
+      bufferMillis = 5;
+    }
+    int bufferFrames = (int) (SAMPLE_RATE * bufferMillis / 1000);
+    chunkFrames = Math.max(bufferFrames/2, 32);
+    mixBuf = new int[chunkFrames * CHANNELS];
+    outBuf = new byte[chunkFrames * format.getFrameSize()];
+
+    try {
+      line = AudioSystem.getSourceDataLine(format);
+      line.open(format, 2 * chunkFrames * format.getFrameSize());
+      line.start();
+      System.out.println("Mixer line opened: " + format + "; buffer: " +
+                  (line.getBufferSize() / format.getFrameSize() * 1000 /
+                                             (int) SAMPLE_RATE) + " ms");
+    }
+    catch (Exception e) {   // LineUnavailableException, IllegalArgumentException
+      System.out.println("No audio line available for the mixer: " + e);
+      line = null;
+      return;
+    }
+
+    running = true;
+    mixThread = new Thread(this, "SoundMixer");
+    mixThread.setPriority(Thread.MAX_PRIORITY);
+    mixThread.setDaemon(true);
+    mixThread.start();
+  }  // end of openLine()
+
+
+  public AudioFormat getFormat()
+  {  return format;  }
+
+
+  public void close()
+  /* Stop the mixing thread, which closes the line when it leaves
+     run(). The line is never closed here, since the thread may
+     still be inside line.write() if the join times out. */
+  { running = false;
+    if (mixThread != null) {
+      try {
+        mixThread.join(1000);
+      }
+      catch (InterruptedException e) {}
+    }
+    System.out.println(getLatencyReport());
+  }  // end of close()
+
+
+  // ---------------- voice control (called by MixerClip) -----------
+
+
+  public synchronized void startVoice(MixerClip clip, boolean toLoop,
+                                              int priority, int maxVoices)
+  /* Start a voice for the clip. If the clip is using all its
+     voices, one of them is stolen. Otherwise a free voice is used,
+     or another clip's voice is stolen. Nothing happens if the only
+     candidates have higher priorities. */
+  {
+    if (line == null)
+      return;
+
+    int v;
+    if (countVoices(clip) >= maxVoices)
+      v = chooseVictim(clip, priority);    // must be one of the clip's
+    else {
+      v = findFreeVoice();
+      if (v == -1)
+        v = chooseVictim(null, priority);  // can be anyone's
+    }
+    if (v == -1)
+      return;
+
+    voiceClips[v] = clip;
+    voicePosns[v] = 0;
+    voiceLooping[v] = toLoop;
+    voicePaused[v] = false;
+    voicePriorities[v] = priority;
+    voiceStarts[v] = System.nanoTime();
+    voiceHeard[v] = false;
+  }  // end of startVoice()
+
+
+  private int countVoices(MixerClip clip)
+  { int count = 0;
+    for (int i=0; i < MAX_VOICES; i++)
+      if (voiceClips[i] == clip)
+        count++;
+    return count;
+  }
+
+  private int findFreeVoice()
+  { for (int i=0; i < MAX_VOICES; i++)
+      if (voiceClips[i] == null)
+        return i;
+    return -1;
+  }
+
+
+  private int chooseVictim(MixerClip clip, int priority)
+  /* Find the lowest priority, oldest voice, only considering
+     clip's voices if clip isn't null. Return -1 if there are
+     none with a priority <= priority. */
+  {
+    int victim = -1;
+    for (int i=0; i < MAX_VOICES; i++) {
+      if ((voiceClips[i] == null) || ((clip != null) && (voiceClips[i] != clip)))
+        continue;
+      if ((victim == -1) || (voicePriorities[i] < voicePriorities[victim]) ||
+          ((voicePriorities[i] == voicePriorities[victim]) &&
+           (voiceStarts[i] < voiceStarts[victim])))
+        victim = i;
+    }
+    if ((victim != -1) && (voicePriorities[victim] > priority))
+      return -1;
+    return victim;
+  }  // end of chooseVictim()
+
+
+  public synchronized boolean stopVoices(MixerClip clip)
+  // free all the clip's voices, reporting if any were busy
+  { boolean wasBusy = false;
+    for (int i=0; i < MAX_VOICES; i++)
+      if (voiceClips[i] == clip) {
+        voiceClips[i] = null;
+        wasBusy = true;
+      }
+    return wasBusy;
+  }  // end of stopVoices()
+
+
+  public synchronized void pauseVoices(MixerClip clip, boolean paused)
+  { for (int i=0; i < MAX_VOICES; i++)
+      if (voiceClips[i] == clip)
+        voicePaused[i] = paused;
+  }
+
+
+  // ------------------------- mixing ---------------------------
+
+
+  public void run()
+  /* Mix a chunk, tell the watchers about any voices which have
+     ended or looped, then write the chunk to the line. write()
+     blocks until there's room in the line's buffer, which paces
+     the thread. The line is closed when close() stops the thread. */
+  {
+    while (running) {
+      synchronized(this) {
+        mixChunk();
+      }
+      for (int i=0; i < numEnded; i++) {
+        endedClips[i].voiceEnded(endedStatus[i]);
+        endedClips[i] = null;
+      }
+      numEnded = 0;
+
+      line.write(outBuf, 0, outBuf.length);
+      framesWritten += chunkFrames;
+    }
+    line.stop();
+    line.close();
+  }  // end of run()
+
+
+  private void mixChunk()
+  {
+    for (int i=0; i < mixBuf.length; i++)
+      mixBuf[i] = 0;
+
+    long now = System.nanoTime();
+    for (int v=0; v < MAX_VOICES; v++) {
+      if ((voiceClips[v] == null) || voicePaused[v])
+        continue;
+      if (!voiceHeard[v]) {
+        recordLatency(now - voiceStarts[v]);
+        voiceHeard[v] = true;
+      }
+      mixVoice(v);
+    }
+
+    // clamp the mix to 16-bit samples, stored little endian
+    int sample;
+    for (int i=0, j=0; i < mixBuf.length; i++) {
+      sample = mixBuf[i];
+      if (sample > Short.MAX_VALUE)
+        sample = Short.MAX_VALUE;
+      else if (sample < Short.MIN_VALUE)
+        sample = Short.MIN_VALUE;
+      outBuf[j++] = (byte) sample;
+      outBuf[j++] = (byte) (sample >> 8);
+    }
+  }  // end of mixChunk()
+
+
+  private void mixVoice(int v)
+  // add the next chunk of voice v to mixBuf
+  {
+    MixerClip clip = voiceClips[v];
+    short[] samples = clip.getSamples();
+    int numFrames = clip.getNumFrames();
+    int posn = voicePosns[v];
+    if (numFrames == 0) {   // nothing to play
+      voiceClips[v] = null;
+      return;
+    }
+
+    int frame = 0;
+    while (frame < chunkFrames) {
+      int n = Math.min(chunkFrames - frame, numFrames - posn);
+      int src = posn * CHANNELS;
+      int dst = frame * CHANNELS;
+      for (int i=0; i < n*CHANNELS; i++)
+        mixBuf[dst+i] += samples[src+i];
+      frame += n;
+      posn += n;
+
+      if (posn >= numFrames) {   // at the end of the sound
+        if (voiceLooping[v]) {
+          posn = 0;
+          addEnded(clip, SoundsWatcher.REPLAYED);
+        }
+        else {
+          voiceClips[v] = null;
+          addEnded(clip, SoundsWatcher.STOPPED);
+          return;
+        }
+      }
+    }
+    voicePosns[v] = posn;
+  }  // end of mixVoice()
+
+
+  private void addEnded(MixerClip clip, int status)
+  { if (numEnded < endedClips.length) {
+      endedClips[numEnded] = clip;
+      endedStatus[numEnded] = status;
+      numEnded++;
+    }
+  }
+
+
+  // --------------------- latency ----------------------------
+
+
+  private void recordLatency(long waitTime)
+  /* A voice is about to be mixed for the first time, waitTime ns
+     after it was requested. Its first sample will be heard once
+     the frames already in the line have been played. */
+  {
+    long queuedFrames = framesWritten - line.getLongFramePosition();
+    if (queuedFrames < 0)
+      queuedFrames = 0;
+    long latency = waitTime + (long) (queuedFrames * 1000000000L / SAMPLE_RATE);
+
+    latencyTotal += latency;
+    latencyCount++;
+    if (latency > latencyMax)
+      latencyMax = latency;
+  }  // end of recordLatency()
+
+
+  public synchronized double getAverageLatency()
+  // in ms
+  { if (latencyCount == 0)
+      return 0;
+    return latencyTotal / (latencyCount * 1000000.0);
+  }
+
+  public synchronized double getMaxLatency()
+  // in ms
+  {  return latencyMax / 1000000.0;  }
+
+
+  public synchronized String getLatencyReport()
+  {  return "Mixer latency: average " + Math.round(getAverageLatency()) +
+            " ms, max " + Math.round(getMaxLatency()) + " ms over " +
+            latencyCount + " sounds";
+  }
+
+}  // end of SoundMixer class
@@ -6,11 +6,16 @@
    an image, and can be deactivated.
 
    The sprite's image is managed with an ImagesLoader object,
-   and an ImagesPlayer object for looping.
+   and an AnimClip for looping.
 
    The images stored until the image 'name' can be looped
-   through by calling loopImage(), which uses an
-   ImagesPlayer object.
+   through by calling loopImage(). The sprite only stores the
+   AnimClip (which the ImagesLoader shares between all the
+   sprites looping those images) and the AnimClock tick when the
+   loop started; its current image is looked up in the clip's
+   frame table from the ticks since then. So starting a loop
+   (e.g. on every key press) doesn't create objects, and updating
+   the sprite doesn't have to do anything for the animation.
 
 */
 
@@ -34,7 +39,8 @@ public class Sprite
   private BufferedImage image;
   private int width, height;     // image dimensions
 
-  private ImagesPlayer player;  // for playing a loop of images
+  private AnimClip clip;         // for playing a loop of images
+  private long startTick;        // when the loop started (see AnimClock)
   private boolean isLooping;
 
   private int pWidth, pHeight;   // panel dimensions
@@ -74,7 +80,7 @@ public class Sprite
       height = image.getHeight();
     }
     // no image loop playing 
-    player = null;
+    clip = null;
     isLooping = false;
   }  // end of setImage()
 
@@ -85,9 +91,8 @@ public class Sprite
      panel) is animPeriod ms. */
   {
     if (imsLoader.numImages(imageName) > 1) {
-      player = null;   // to encourage garbage collection of previous player
-      player = new ImagesPlayer(imageName, animPeriod, seqDuration,
-                                       true, imsLoader);
+      clip = imsLoader.getClip(imageName, animPeriod, seqDuration, true);
+      startTick = AnimClock.getTick();   // start from the first image
       isLooping = true;
     }
     else
@@ -96,14 +101,20 @@ public class Sprite
 
 
   public void stopLooping()
+  // stay on the current image of the loop
   {
     if (isLooping) {
-      player.stop();
+      image = getLoopImage();
       isLooping = false;
     }
   }  // end of stopLooping()
 
 
+  private BufferedImage getLoopImage()
+  // the loop's image for the current tick
+  {  return clip.getImage( AnimClock.getTick() - startTick );  }
+
+
   public int getWidth()    // of the sprite's image
   {  return width;  }
 
@@ -149,15 +160,31 @@ public class Sprite
   public Rectangle getMyRectangle()
   {  return  new Rectangle(locx, locy, width, height);  }
 
+  public Rectangle getMyRectangle(Rectangle r)
+  // store the sprite's bounding box in r, instead of a new Rectangle
+  {  r.setBounds(locx, locy, width, height);
+     return r;
+  }
+
+
+  public CollisionMask getMask()
+  // the collision mask of the sprite's current image, or null
+  {
+    if (image == null)
+      return null;
+    if (isLooping)
+      return imsLoader.getMask( getLoopImage() );
+    return imsLoader.getMask(image);
+  }  // end of getMask()
+
 
   public void updateSprite()
-  // move the sprite
+  /* Move the sprite. A loop moves on with the AnimClock, so
+     nothing is done for it here. */
   {
     if (isActive()) {
       locx += dx;
       locy += dy;
-      if (isLooping)
-        player.updateTick();  // update the player
     }
   } // end of updateSprite()
 
@@ -173,10 +200,24 @@ public class Sprite
       }
       else {
         if (isLooping)
-          image = player.getCurrentImage();
+          image = getLoopImage();
         g.drawImage(image, locx, locy, null);
       }
     }
   } // end of drawSprite()
 
+
+  public void drawSprite(Graphics g, RasterBlitter blitter)
+  /* Draw the sprite's image with blitter if it's not null.
+     A sprite without an image is still drawn with g. */
+  {
+    if ((blitter == null) || (image == null))
+      drawSprite(g);
+    else if (isActive()) {
+      if (isLooping)
+        image = getLoopImage();
+      blitter.draw(image, locx, locy);
+    }
+  } // end of drawSprite()
+
 }  // end of Sprite class
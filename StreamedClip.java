@@ -0,0 +1,382 @@
+// StreamedClip.java
+
+/* A long sound (e.g. music or background ambience) which is
+   streamed from its file instead of being loaded into a Clip.
+
+   The sound is decoded a small piece at a time into a buffer,
+   which is reused for every piece and written to the clip's
+   SourceDataLine. So the memory used doesn't depend on the
+   length of the sound.
+
+   The streaming is done by the clip's own thread. When a looping
+   sound reaches its end, the file is reopened and writing carries
+   on without draining the line, so there's no gap at the loop.
+   setLoopEnd() can make a looping sound restart before the end
+   of its file (e.g. to skip a silent tail).
+
+   Only one instance of the sound plays at a time; play() while
+   it is playing restarts it. Each play() or stop() starts a new
+   generation of the clip. The streamer reads and writes the sound
+   outside the lock, so it drops a piece read in an older
+   generation (and flushes the line again before restarting, in
+   case one was written after play() flushed it), and only reports
+   the end of the sound if no play() or stop() came after it. The line is opened once, when the
+   clip is created.
+
+   ClipsLoader uses a StreamedClip for sounds whose decoded size
+   is at least its streaming threshold (see isLong()). MidisLoader
+   uses one to play a MIDI sequence rendered to a WAV file by
+   MidiRenderer, which is streamed from that file; it can be
+   started part-way through with playFrom(), to take over from
+   the sequencer.
+*/
+
+import java.io.*;
+import javax.sound.sampled.*;
+
+
+public class StreamedClip implements SoundClip, Runnable
+{
+  private final static String SOUND_DIR = "Sounds/";
+  private final static int BUFFER_MS = 250;   // size of the line's buffer
+
+  private String name, filename;
+  private File file = null;    // if not streaming from Sounds/
+  private SourceDataLine line = null;
+  private AudioFormat format;
+  private byte[] buf;       // reused for every piece of the sound
+  private SoundsWatcher watcher = null;
+
+  private Thread streamer;
+  private AudioInputStream stream = null;   // only used by streamer
+  private long posn = 0;    // bytes read from stream; only used by streamer
+
+  // playing state, shared by the streamer and the callers
+  private boolean isPlaying = false;
+  private boolean isLooping = false;
+  private boolean isPaused = false;
+  private boolean needsRestart = false;
+  private boolean isClosed = false;
+  private long startFrame = 0;     // where a restart begins
+  private long loopFrames = -1;    // the frames played by a loop, or -1 for all
+  private int playGen = 0;     // incremented by every play() and stop()
+
+
+  public StreamedClip(String nm, String fnm)
+  {
+    name = nm;
+    filename = SOUND_DIR + fnm;
+    openLine();
+  }  // end of StreamedClip()
+
+
+  public StreamedClip(String nm, File f)
+  // stream the sound in the file f
+  {
+    name = nm;
+    filename = f.getPath();
+    file = f;
+    openLine();
+  }  // end of StreamedClip()
+
+
+  public static boolean isLong(String fnm, long threshold)
+  /* Is the decoded (PCM) size of the sound in Sounds/fnm at least
+     threshold bytes? A sound of unknown length is treated as long. */
+  {
+    try {
+      AudioInputStream s = openStream(SOUND_DIR + fnm);
+      long numFrames = s.getFrameLength();
+      long size = numFrames * s.getFormat().getFrameSize();
+      s.close();
+      return ((numFrames == AudioSystem.NOT_SPECIFIED) || (size >= threshold));
+    }
+    catch (Exception e) {
+      return false;    // let the non-streaming loader report the problem
+    }
+  }  // end of isLong()
+
+
+  private static AudioInputStream openStream(String fnm)
+                  throws UnsupportedAudioFileException, IOException
+  // open the sound as PCM, converting ULAW/ALAW formats
+  {
+    AudioInputStream s;
+    AssetPack pack = AssetPack.getDefault();
+    if ((pack != null) && pack.contains(fnm))
+      s = AudioSystem.getAudioInputStream( pack.getStream(fnm) );
+    else
+      s = AudioSystem.getAudioInputStream(
+                         StreamedClip.class.getResource(fnm) );
+
+    AudioFormat fmt = s.getFormat();
+    if ( (fmt.getEncoding() == AudioFormat.Encoding.ULAW) ||
+         (fmt.getEncoding() == AudioFormat.Encoding.ALAW) ) {
+      AudioFormat newFormat =
+           new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                                fmt.getSampleRate(),
+                                fmt.getSampleSizeInBits()*2,
+                                fmt.getChannels(),
+                                fmt.getFrameSize()*2,
+                                fmt.getFrameRate(), true);  // big endian
+      s = AudioSystem.getAudioInputStream(newFormat, s);
+    }
+    return s;
+  }  // end of openStream()
+
+
+  private AudioInputStream openMyStream()
+                  throws UnsupportedAudioFileException, IOException
+  // open the clip's file, or its sound in Sounds/
+  { if (file != null)
+      return AudioSystem.getAudioInputStream(file);
+    return openStream(filename);
+  }  // end of openMyStream()
+
+
+  private void openLine()
+  {
+    try {
+      AudioInputStream s = openMyStream();
+      format = s.getFormat();
+      s.close();
+
+      int frameSize = format.getFrameSize();
+      int bufFrames = (int) (format.getFrameRate() * BUFFER_MS / 1000);
+      buf = new byte[(bufFrames/4) * frameSize];  // a quarter of the line's buffer
+
+      line = AudioSystem.getSourceDataLine(format);
+      line.open(format, bufFrames * frameSize);
+      System.out.println(filename + ": streamed; buffer " + BUFFER_MS + " ms");
+    }
+    catch (UnsupportedAudioFileException audioException) {
+      System.out.println("Unsupported audio file: " + filename);
+      return;
+    }
+    catch (LineUnavailableException noLineException) {
+      System.out.println("No audio line available for : " + filename);
+      return;
+    }
+    catch (IOException ioException) {
+      System.out.println("Could not read: " + filename);
+      return;
+    }
+    catch (Exception e) {
+      System.out.println("Problem with " + filename);
+      return;
+    }
+
+    streamer = new Thread(this, "Stream " + name);
+    streamer.setDaemon(true);
+    streamer.start();
+  }  // end of openLine()
+
+
+  // ------------------ the streamer thread --------------------
+
+  public void run()
+  /* Wait until the sound is playing, then keep copying pieces of
+     it to the line. write() blocks while the line's buffer is full,
+     which paces the loop. */
+  {
+    long limit;    // the most bytes to read next
+    int gen;       // the generation the piece is read for
+    while (true) {
+      synchronized(this) {
+        while (!isClosed && (!isPlaying || isPaused)) {
+          try {
+            wait();
+          }
+          catch (InterruptedException e) {}
+        }
+        if (isClosed)
+          break;
+        if (needsRestart) {
+          needsRestart = false;
+          line.flush();    // in case an old piece was written after play()
+          if (!reopen(startFrame))
+            continue;
+        }
+        gen = playGen;
+        limit = buf.length;
+        if (isLooping && (loopFrames >= 0))   // stop at the loop's end
+          limit = Math.min(limit, loopFrames*format.getFrameSize() - posn);
+      }
+
+      int n = (limit > 0) ? read((int) limit) : -1;
+      synchronized(this) {
+        if (gen != playGen)
+          continue;     // read for an older play(); drop it
+      }
+      if (n > 0)
+        line.write(buf, 0, n);
+      else
+        atEnd(gen);
+    }
+    closeStream();
+  }  // end of run()
+
+
+  private int read(int len)
+  { try {
+      int n = stream.read(buf, 0, len);
+      if (n > 0)
+        posn += n;
+      return n;
+    }
+    catch (IOException e) {
+      System.out.println("Could not read: " + filename);
+      return -1;
+    }
+  }  // end of read()
+
+
+  private void atEnd(int gen)
+  /* At the end of the sound played by generation gen: loop it, or
+     finish playing. The watcher isn't told about a finish if there
+     has been a play() or stop() since. */
+  {
+    boolean replayed;
+    synchronized(this) {
+      if (gen != playGen)
+        return;
+      replayed = isLooping && isPlaying;
+      if (replayed)
+        replayed = reopen(0);    // keep on writing to the line
+      else
+        isPlaying = false;
+    }
+    if (!replayed) {
+      line.drain();     // let the last piece play out
+      synchronized(this) {
+        if (gen != playGen)
+          return;    // played or stopped again while draining
+      }
+    }
+
+    if (watcher != null)
+      watcher.atSequenceEnd(name, replayed ? SoundsWatcher.REPLAYED :
+                                             SoundsWatcher.STOPPED);
+  }  // end of atEnd()
+
+
+  private boolean reopen(long frame)
+  // start reading the sound from the given frame
+  {
+    closeStream();
+    try {
+      stream = openMyStream();
+      posn = 0;
+      long skipBytes = frame * format.getFrameSize();
+      long n;
+      while (posn < skipBytes) {
+        n = stream.skip(skipBytes - posn);
+        if (n <= 0)
+          break;      // past the end; the next read() will find it
+        posn += n;
+      }
+      return true;
+    }
+    catch (Exception e) {
+      System.out.println("Could not reopen: " + filename);
+      isPlaying = false;
+      return false;
+    }
+  }  // end of reopen()
+
+
+  private void closeStream()
+  { if (stream != null) {
+      try {
+        stream.close();
+      }
+      catch (IOException e) {}
+      stream = null;
+    }
+  }  // end of closeStream()
+
+
+  // ----------------- SoundClip methods ---------------------
+
+  public void play(boolean toLoop)
+  {  play(toLoop, ClipInfo.DEFAULT_PRIORITY);  }
+
+  public void play(boolean toLoop, int priority)
+  // start (or restart) the sound; the priority is ignored
+  {  playFrom(0, toLoop);  }
+
+
+  public synchronized void playFrom(long frame, boolean toLoop)
+  /* Start (or restart) the sound at the given frame. Looping
+     restarts it from the beginning. */
+  { if (line != null) {
+      playGen++;
+      line.flush();
+      startFrame = Math.max(frame, 0);
+      isLooping = toLoop;
+      isPlaying = true;
+      isPaused = false;
+      needsRestart = true;
+      line.start();
+      notifyAll();
+    }
+  }  // end of playFrom()
+
+
+  public void stop()
+  { boolean wasPlaying;
+    synchronized(this) {
+      wasPlaying = isPlaying;
+      isPlaying = false;
+      isLooping = false;
+      playGen++;
+      if (line != null) {
+        line.stop();
+        line.flush();
+      }
+    }
+    if ((watcher != null) && wasPlaying)
+      watcher.atSequenceEnd(name, SoundsWatcher.STOPPED);
+  }  // end of stop()
+
+
+  public synchronized void pause()
+  { if (line != null) {
+      isPaused = true;
+      line.stop();
+    }
+  }
+
+  public synchronized void resume()
+  { if ((line != null) && isPaused) {
+      isPaused = false;
+      line.start();
+      notifyAll();
+    }
+  }
+
+
+  public synchronized void close()
+  { isClosed = true;
+    isPlaying = false;
+    notifyAll();
+    if (line != null) {
+      line.stop();
+      line.close();
+    }
+  }  // end of close()
+
+
+  public synchronized void setLoopEnd(long frames)
+  /* A looping sound restarts after frames frames, rather than at
+     the end of its file; -1 loops over the whole file. */
+  {  loopFrames = frames;  }
+
+
+  public void setWatcher(SoundsWatcher sw)
+  {  watcher = sw;  }
+
+  public String getName()
+  {  return name;  }
+
+}  // end of StreamedClip class
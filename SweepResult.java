@@ -0,0 +1,69 @@
+
+// SweepResult.java
+
+/* The result of sweeping a box across the bricks map with
+   BricksManager.sweepBox(): whether the box hit a brick, the time
+   of the impact (as a fraction of the move, 0 to 1), the contact
+   normal (which side of the brick was hit), and how far the box
+   can move before it touches the brick.
+
+   A SweepResult is passed to sweepBox() to be filled in, so the
+   same object can be reused for every sweep.
+*/
+
+public class SweepResult
+{
+  private boolean isHit;
+  private double time;             // 0 to 1; 1 if nothing was hit
+  private int normalX, normalY;    // -1, 0 or 1
+  private int moveX, moveY;        // the allowed move, in pixels
+  private int mapX, mapY;          // the brick that was hit
+
+
+  public void setMiss(int dx, int dy)
+  // nothing was hit, so all of the move (dx,dy) is allowed
+  { isHit = false;
+    time = 1.0;
+    normalX = 0;  normalY = 0;
+    moveX = dx;   moveY = dy;
+    mapX = -1;    mapY = -1;
+  }  // end of setMiss()
+
+
+  public void setHit(double t, int nx, int ny, int dx, int dy, int mx, int my)
+  /* The move (dx,dy) hit brick (mx,my) at time t, on the side
+     facing (nx,ny). The allowed move is rounded towards 0. */
+  { isHit = true;
+    time = t;
+    normalX = nx;  normalY = ny;
+    moveX = (int)(t*dx);
+    moveY = (int)(t*dy);
+    mapX = mx;     mapY = my;
+  }  // end of setHit()
+
+
+  public boolean isHit()
+  {  return isHit;  }
+
+  public double getTime()
+  {  return time;  }
+
+  public int getNormalX()
+  {  return normalX;  }
+
+  public int getNormalY()
+  {  return normalY;  }
+
+  public int getMoveX()
+  {  return moveX;  }
+
+  public int getMoveY()
+  {  return moveY;  }
+
+  public int getMapX()
+  {  return mapX;  }
+
+  public int getMapY()
+  {  return mapY;  }
+
+}  // end of SweepResult class
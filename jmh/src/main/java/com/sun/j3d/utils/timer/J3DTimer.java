@@ -0,0 +1,22 @@
+// J3DTimer.java
+package com.sun.j3d.utils.timer;
+
+/* A stand-in for Java 3D's J3DTimer, so the benchmarks can create a
+   JackPanel (which reads the timer) without Java 3D's native library.
+   The game itself is still compiled against, and run with, the
+   real one. Like it, getValue() returns the time in nanoseconds.
+*/
+
+
+public class J3DTimer
+{
+  private J3DTimer() {}
+
+
+  public static long getValue()
+  {  return System.nanoTime();  }
+
+  public static long getResolution()
+  {  return 1;  }   // ns
+
+}  // end of J3DTimer class
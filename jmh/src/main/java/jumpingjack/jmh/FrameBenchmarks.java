@@ -0,0 +1,51 @@
+// FrameBenchmarks.java
+package jumpingjack.jmh;
+
+/* The benchmarks whose operation takes from a microsecond to a few
+   milliseconds (rendering, updating the projectiles and particles,
+   batches of brick tests, loading images). Each call of run() does
+   one of them.
+
+   The value returned by runOps() goes to JMH's Blackhole, so the
+   results can't be removed as dead code.
+*/
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FrameBenchmarks
+{
+  @Param({"bricks.batch1024.small", "bricks.batch1024.huge",
+          "render.ribbon.mountains", "render.ribbon.trees",
+          "render.ribbons.game", "render.ribbons.layers12",
+          "render.tiled.4k.serial", "render.tiled.4k.parallel",
+          "render.bricks.small", "render.bricks.huge",
+          "render.frame",
+          "projectiles.update", "render.projectiles", "collide.grid",
+          "particles.update", "render.particles.raster", "anim.clip1024",
+          "kernels.findCells",
+          "load.image", "load.strip", "load.imsInfo"})
+  public String name;
+
+
+  @Setup(Level.Trial)
+  public void setUp()
+  {  GameOps.setUp(name);  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {  GameOps.tearDown();  }
+
+
+  @Benchmark
+  public long run()
+  {  return GameOps.runOps(name, 1);  }
+
+}  // end of FrameBenchmarks class
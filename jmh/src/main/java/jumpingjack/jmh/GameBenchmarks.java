@@ -0,0 +1,211 @@
+// GameBenchmarks.java
+package jumpingjack.jmh;
+
+/* Runs the game's benchmarks under JMH, with the same options as
+   the plain Benchmarks runner:
+
+     java -jar jmh/target/benchmarks.jar [options] [<name prefix>]*
+
+   Options:
+     -l              list the benchmark names
+     -f <forks>      number of forked JVMs for each benchmark
+                     (default FORKS; 0 runs them in this JVM)
+     -wi <n>         warmup iterations (default WARMUP_ITERS)
+     -i <n>          measured iterations (default MEASURE_ITERS)
+     -r <ms>         length of an iteration (default ITER_MS)
+     -o <fnm>        JSON results file (default RESULTS_FNM)
+     -b <fnm>        baseline JSON results file to compare with
+     -t <fraction>   allowed slow-down against the baseline
+                     (default TOLERANCE)
+
+   The selected benchmarks are run by JMH from OpsBenchmarks and
+   FrameBenchmarks, with their names as the "name" parameter. The
+   scores of every measured iteration of every fork are collected,
+   and passed to Benchmarks' writeJSON() and compare(), so the JSON
+   results and baseline files have the same layout as Benchmarks'.
+   (But only compare against a baseline from the same runner: the
+   plain loops of Benchmarks give different scores to JMH's.)
+   The exit code is 1 if a benchmark is more than TOLERANCE slower
+   than in the baseline.
+
+   Run it from the top directory, since the game reads its bricks
+   maps from Images/ there.
+*/
+
+import java.util.*;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.results.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+
+public class GameBenchmarks
+{
+  private final static Class[] BENCHMARKS =
+                  { OpsBenchmarks.class, FrameBenchmarks.class };
+
+  private final static int FORKS = 1;
+  private final static int WARMUP_ITERS = 5;
+  private final static int MEASURE_ITERS = 10;
+  private final static int ITER_MS = 200;
+  private final static double TOLERANCE = 0.10;   // 10% slower
+  private final static String RESULTS_FNM = "benchmarks.json";
+
+
+
+  public static void main(String args[]) throws RunnerException
+  {
+    if (System.getProperty("java.awt.headless") == null)
+      System.setProperty("java.awt.headless", "true");   // for -f 0
+
+    int forks = FORKS;
+    int warmups = WARMUP_ITERS;
+    int iters = MEASURE_ITERS;
+    int iterMs = ITER_MS;
+    String resultsFnm = RESULTS_FNM;
+    String baselineFnm = null;
+    double tolerance = TOLERANCE;
+    ArrayList prefixes = new ArrayList();
+
+    String[] allNames = GameOps.getNames();
+    try {
+      for (int i=0; i < args.length; i++) {
+        if (args[i].equals("-l")) {
+          for (int j=0; j < allNames.length; j++)
+            System.out.println(allNames[j]);
+          return;
+        }
+        else if (args[i].equals("-f"))
+          forks = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-wi"))
+          warmups = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-i"))
+          iters = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-r"))
+          iterMs = Integer.parseInt(args[++i]);
+        else if (args[i].equals("-o"))
+          resultsFnm = args[++i];
+        else if (args[i].equals("-b"))
+          baselineFnm = args[++i];
+        else if (args[i].equals("-t"))
+          tolerance = Double.parseDouble(args[++i]);
+        else
+          prefixes.add(args[i]);
+      }
+    }
+    catch (Exception e) {
+      System.out.println("Usage: java -jar benchmarks.jar [-l] [-f <forks>] " +
+               "[-wi <n>] [-i <n>] [-r <ms>] [-o <fnm>] [-b <fnm>] " +
+               "[-t <fraction>] [<name prefix>]*");
+      System.exit(1);
+    }
+
+    ArrayList names = selectNames(allNames, prefixes);
+    if (names.size() == 0) {
+      System.out.println("No benchmarks match " + prefixes);
+      System.exit(1);
+    }
+
+    HashMap scores = new HashMap();   // name --> double[fork][iteration]
+    for (int i=0; i < BENCHMARKS.length; i++)
+      run(BENCHMARKS[i], names, forks, warmups, iters, iterMs, scores);
+
+    // keep the names' order; drop any which weren't run
+    ArrayList doneNames = new ArrayList();
+    ArrayList results = new ArrayList();
+    String name;
+    for (int i=0; i < names.size(); i++) {
+      name = (String) names.get(i);
+      if (scores.containsKey(name)) {
+        doneNames.add(name);
+        results.add( scores.get(name) );
+      }
+      else
+        System.out.println(name + " is not run by any JMH benchmark");
+    }
+    double[][][] resultsArr =
+               (double[][][]) results.toArray(new double[results.size()][][]);
+
+    GameOps.writeJSON(resultsFnm, doneNames, resultsArr, forks, warmups, iters);
+    if (baselineFnm != null) {
+      if (!GameOps.compare(baselineFnm, doneNames, resultsArr, tolerance))
+        System.exit(1);
+    }
+    System.exit(0);   // stop the game's threads (when -f 0)
+  }  // end of main()
+
+
+  private static ArrayList selectNames(String[] allNames, ArrayList prefixes)
+  // the benchmarks whose names start with one of the prefixes
+  {
+    ArrayList names = new ArrayList();
+    for (int i=0; i < allNames.length; i++) {
+      if (prefixes.size() == 0)
+        names.add(allNames[i]);
+      else {
+        for (int j=0; j < prefixes.size(); j++)
+          if (allNames[i].startsWith((String) prefixes.get(j))) {
+            names.add(allNames[i]);
+            break;
+          }
+      }
+    }
+    return names;
+  }  // end of selectNames()
+
+
+  private static void run(Class c, ArrayList names, int forks, int warmups,
+               int iters, int iterMs, HashMap scores) throws RunnerException
+  /* Run the benchmark class c with those names which are among
+     the values of its "name" parameter. Store each benchmark's
+     iteration scores (one row per fork) in scores. */
+  {
+    String[] values = getNameValues(c);
+    ArrayList selected = new ArrayList();
+    for (int i=0; i < values.length; i++)
+      if (names.contains(values[i]))
+        selected.add(values[i]);
+    if (selected.size() == 0)
+      return;
+
+    Options opts = new OptionsBuilder()
+          .include( c.getName().replace(".", "\\.") + "\\." )
+          .param("name", (String[]) selected.toArray(new String[selected.size()]))
+          .forks(forks)
+          .warmupIterations(warmups)
+          .warmupTime( TimeValue.milliseconds(iterMs) )
+          .measurementIterations(iters)
+          .measurementTime( TimeValue.milliseconds(iterMs) )
+          .build();
+    Collection runResults = new Runner(opts).run();
+
+    Iterator it = runResults.iterator();
+    while (it.hasNext()) {
+      RunResult rr = (RunResult) it.next();
+      Collection forkResults = rr.getBenchmarkResults();
+      double[][] data = new double[forkResults.size()][];
+      Iterator fit = forkResults.iterator();
+      for (int f=0; fit.hasNext(); f++) {
+        Collection iterResults = ((BenchmarkResult) fit.next()).getIterationResults();
+        data[f] = new double[iterResults.size()];
+        Iterator iit = iterResults.iterator();
+        for (int j=0; iit.hasNext(); j++)
+          data[f][j] = ((IterationResult) iit.next()).getPrimaryResult().getScore();
+      }
+      scores.put( rr.getParams().getParam("name"), data);
+    }
+  }  // end of run()
+
+
+  private static String[] getNameValues(Class c)
+  // the values of the "name" @Param of the benchmark class c
+  {
+    try {
+      Param p = (Param) c.getField("name").getAnnotation(Param.class);
+      return p.value();
+    }
+    catch (NoSuchFieldException e)
+    { return new String[0];  }
+  }  // end of getNameValues()
+
+}  // end of GameBenchmarks class
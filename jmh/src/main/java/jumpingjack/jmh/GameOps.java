@@ -0,0 +1,140 @@
+// GameOps.java
+package jumpingjack.jmh;
+
+/* Calls the private methods of the game's Benchmarks class, which
+   sets up and runs the operations being measured. Benchmarks is in
+   the default package, so it can't be named from here: its methods
+   are found by reflection once, and called through MethodHandles
+   held in static finals, which the JIT inlines like direct calls.
+
+   The game's output is hidden while a benchmark runs (as in
+   Benchmarks.measure()).
+*/
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+
+public class GameOps
+{
+  private final static Class BENCHMARKS = findClass("Benchmarks");
+
+  private final static MethodHandle SET_UP =
+                  findMethod("setUp", new Class[] {String.class});
+  private final static MethodHandle RUN_OPS =
+                  findMethod("runOps", new Class[] {String.class, long.class});
+  private final static MethodHandle WRITE_JSON =
+                  findMethod("writeJSON", new Class[] {String.class,
+                     ArrayList.class, double[][][].class, int.class,
+                     int.class, int.class});
+  private final static MethodHandle COMPARE =
+                  findMethod("compare", new Class[] {String.class,
+                     ArrayList.class, double[][][].class, double.class});
+
+  private static PrintStream out = System.out;   // the real System.out
+
+
+
+  private static Class findClass(String nm)
+  {
+    try {
+      return Class.forName(nm);
+    }
+    catch (ClassNotFoundException e)
+    { throw new IllegalStateException("No " + nm + " class in the game jar");  }
+  }  // end of findClass()
+
+
+  private static MethodHandle findMethod(String nm, Class[] paramTypes)
+  {
+    try {
+      Method m = BENCHMARKS.getDeclaredMethod(nm, paramTypes);
+      m.setAccessible(true);
+      return MethodHandles.lookup().unreflect(m);
+    }
+    catch (Exception e)
+    { throw new IllegalStateException("No Benchmarks." + nm + "(): " + e);  }
+  }  // end of findMethod()
+
+
+  public static String[] getNames()
+  // the names of all of Benchmarks' benchmarks
+  {
+    try {
+      Field f = BENCHMARKS.getDeclaredField("NAMES");
+      f.setAccessible(true);
+      return (String[]) f.get(null);
+    }
+    catch (Exception e)
+    { throw new IllegalStateException("No Benchmarks.NAMES: " + e);  }
+  }  // end of getNames()
+
+
+
+  // ------------------ called by the benchmarks ---------------------
+
+
+  public static void setUp(String name)
+  /* Create the data used by the named benchmark, and hide the
+     game's output until tearDown(). */
+  {
+    out = System.out;
+    System.setOut( new PrintStream( new OutputStream() {
+                     public void write(int b) {}  } ));
+    try {
+      SET_UP.invokeExact(name);
+    }
+    catch (Throwable t)
+    { throw new IllegalStateException("Could not set up " + name + ": " + t);  }
+  }  // end of setUp()
+
+
+  public static void tearDown()
+  {  System.setOut(out);  }
+
+
+  public static long runOps(String name, long numOps)
+  // run the named operation numOps times
+  {
+    try {
+      return (long) RUN_OPS.invokeExact(name, numOps);
+    }
+    catch (RuntimeException e)
+    { throw e;  }
+    catch (Throwable t)
+    { throw new IllegalStateException(name + ": " + t);  }
+  }  // end of runOps()
+
+
+
+  // ------------------ reporting the results ---------------------
+
+
+  public static void writeJSON(String fnm, ArrayList names,
+              double[][][] results, int forks, int warmups, int iters)
+  {
+    try {
+      WRITE_JSON.invokeExact(fnm, names, results, forks, warmups, iters);
+    }
+    catch (Throwable t)
+    { System.out.println("Could not write " + fnm + ": " + t);  }
+  }  // end of writeJSON()
+
+
+  public static boolean compare(String baselineFnm, ArrayList names,
+                            double[][][] results, double tolerance)
+  // false if any score is more than tolerance slower than the baseline
+  {
+    try {
+      return (boolean) COMPARE.invokeExact(baselineFnm, names,
+                                           results, tolerance);
+    }
+    catch (Throwable t) {
+      System.out.println("Could not compare with " + baselineFnm + ": " + t);
+      return false;
+    }
+  }  // end of compare()
+
+}  // end of GameOps class
@@ -0,0 +1,55 @@
+// OpsBenchmarks.java
+package jumpingjack.jmh;
+
+/* The benchmarks whose operation takes well under a microsecond
+   (the bricks map tests, the collision kernels, a game tick).
+   Each call of run() does OPS of them, to keep the cost of the
+   call and of timing it small, and JMH divides the time by OPS.
+   Benchmarks.runOps() steps through its NUM_COORDS inputs, so OPS
+   uses each of them once.
+
+   The sum returned by runOps() goes to JMH's Blackhole, so the
+   results can't be removed as dead code.
+*/
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class OpsBenchmarks
+{
+  public final static int OPS = 1024;   // same as Benchmarks.NUM_COORDS
+
+  @Param({"bricks.insideBrick.small", "bricks.insideBrick.huge",
+          "bricks.checkBrickTop.small", "bricks.checkBrickTop.huge",
+          "bricks.checkBrickBase.small", "bricks.checkBrickBase.huge",
+          "bricks.findFloor.small", "bricks.findFloor.huge",
+          "bricks.hitsBrick.small", "bricks.hitsBrick.huge",
+          "bricks.sweepBox.small", "bricks.sweepBox.huge",
+          "collide.mask",
+          "kernels.anyOverlap", "kernels.anyBits",
+          "game.tick"})
+  public String name;
+
+
+  @Setup(Level.Trial)
+  public void setUp()
+  {  GameOps.setUp(name);  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {  GameOps.tearDown();  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(OPS)
+  public long run()
+  {  return GameOps.runOps(name, OPS);  }
+
+}  // end of OpsBenchmarks class
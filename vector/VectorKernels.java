@@ -0,0 +1,138 @@
+
+// VectorKernels.java
+
+/* The collision kernels written with the (incubating) Vector API,
+   so each loop step works on as many longs or ints as the CPU's
+   vector registers hold (e.g. 4 longs with AVX2). The last few
+   elements, which don't fill a vector, are done one at a time.
+
+   This class is kept apart from the others (in vector/), since it
+   needs the jdk.incubator.vector module to compile and run:
+
+     javac --add-modules jdk.incubator.vector -d . vector/VectorKernels.java
+     java --add-modules jdk.incubator.vector JumpingJack
+
+   If it hasn't been compiled, or the module isn't added, then
+   KernelsLoader uses ScalarKernels instead.
+*/
+
+import jdk.incubator.vector.*;
+
+
+public class VectorKernels implements CollisionKernels
+{
+  private final static VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+  private final static VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+
+  public boolean anyOverlap(long[] a, int aStart, long[] hi, int hiStart,
+                      long[] lo, int loStart, int n, int shift, long colMask)
+  {
+    if (hi == null) {
+      if ((lo == null) || (shift == 0))
+        return false;     // b's words are all 0
+    }
+    boolean useLo = (shift != 0) && (lo != null);
+    int i = 0;
+    int bound = LONGS.loopBound(n);
+    LongVector bits;
+    for (; i < bound; i += LONGS.length()) {
+      if (hi != null)
+        bits = LongVector.fromArray(LONGS, hi, hiStart+i)
+                         .lanewise(VectorOperators.LSHL, shift);
+      else
+        bits = LongVector.zero(LONGS);
+      if (useLo)
+        bits = bits.or( LongVector.fromArray(LONGS, lo, loStart+i)
+                        .lanewise(VectorOperators.LSHR, 64-shift) );
+      bits = bits.and( LongVector.fromArray(LONGS, a, aStart+i) ).and(colMask);
+      if (bits.compare(VectorOperators.NE, 0).anyTrue())
+        return true;
+    }
+
+    long b;
+    for (; i < n; i++) {   // the tail
+      b = (hi == null) ? 0 : hi[hiStart+i] << shift;
+      if (useLo)
+        b |= lo[loStart+i] >>> (64-shift);
+      if ((a[aStart+i] & colMask & b) != 0)
+        return true;
+    }
+    return false;
+  }  // end of anyOverlap()
+
+
+  public boolean anyBits(long[] bits, int start, int n, long firstMask, long lastMask)
+  {
+    if (n == 1)
+      return (bits[start] & firstMask & lastMask) != 0;
+    if (((bits[start] & firstMask) != 0) || ((bits[start+n-1] & lastMask) != 0))
+      return true;
+
+    // the words in between, ORed together a vector at a time
+    int i = start+1;
+    int end = start+n-1;
+    int bound = i + LONGS.loopBound(end-i);
+    LongVector acc = LongVector.zero(LONGS);
+    for (; i < bound; i += LONGS.length())
+      acc = acc.or( LongVector.fromArray(LONGS, bits, i) );
+    if (acc.compare(VectorOperators.NE, 0).anyTrue())
+      return true;
+    for (; i < end; i++)
+      if (bits[i] != 0)
+        return true;
+    return false;
+  }  // end of anyBits()
+
+
+  public void findCells(int[] los, int[] his, int n, int cellSize, int maxCell,
+                                                int[] loCells, int[] hiCells)
+  {
+    /* CPUs have no vector integer divide, so a power of 2 cellSize
+       is done with a shift instead. The shift rounds negative
+       values down rather than towards 0, but they're all clamped
+       to 0 anyway. */
+    int i = 0;
+    int bound = INTS.loopBound(n);
+    if ((cellSize & (cellSize-1)) == 0) {
+      int shift = Integer.numberOfTrailingZeros(cellSize);
+      for (; i < bound; i += INTS.length()) {
+        IntVector.fromArray(INTS, los, i)
+                 .lanewise(VectorOperators.ASHR, shift)
+                 .max(0).min(maxCell)
+                 .intoArray(loCells, i);
+        IntVector.fromArray(INTS, his, i)
+                 .sub(1)
+                 .lanewise(VectorOperators.ASHR, shift)
+                 .max(0).min(maxCell)
+                 .intoArray(hiCells, i);
+      }
+    }
+    else {
+      for (; i < bound; i += INTS.length()) {
+        IntVector.fromArray(INTS, los, i)
+                 .lanewise(VectorOperators.DIV, cellSize)
+                 .max(0).min(maxCell)
+                 .intoArray(loCells, i);
+        IntVector.fromArray(INTS, his, i)
+                 .sub(1)
+                 .lanewise(VectorOperators.DIV, cellSize)
+                 .max(0).min(maxCell)
+                 .intoArray(hiCells, i);
+      }
+    }
+
+    int c;
+    for (; i < n; i++) {   // the tail
+      c = los[i]/cellSize;
+      loCells[i] = (c < 0) ? 0 : ((c > maxCell) ? maxCell : c);
+      c = (his[i]-1)/cellSize;
+      hiCells[i] = (c < 0) ? 0 : ((c > maxCell) ? maxCell : c);
+    }
+  }  // end of findCells()
+
+
+  public String getName()
+  {  return "vector (" + LONGS.length() + " longs)";  }
+
+}  // end of VectorKernels class